@@ -0,0 +1,64 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Class BenchmarkInstances
+ * @author Shalini Israni
+ * The input files the benchmarks run on. An instance is either test-large, for
+ * tests/test-large.txt, or jugglers:circuits:preferences, optionally followed by :s, for a
+ * festival made up by a FestivalGenerator with a fixed seed: that many jugglers and circuits,
+ * every juggler ranking that many different circuits, picked with a Zipf exponent of s (0,
+ * every circuit as likely, if it is left out). Made up files are written once to
+ * jugglefest-bench in the temporary directory and reused, since the big ones take longer to
+ * write than to load.
+ * The tests directory is found relative to the working directory, or where the system
+ * property jugglefest.tests says.
+ */
+final class BenchmarkInstances {
+	private static final long SEED = 42;
+
+	private BenchmarkInstances() {
+	}
+
+	/**
+	 *
+	 * @param instance
+	 * @return Path
+	 * The input file for the instance, made up first if need be.
+	 * @throws IOException
+	 */
+	static Path path(String instance) throws IOException {
+		if (instance.equals("test-large")) {
+			Path file = Paths.get(System.getProperty("jugglefest.tests", "tests"), "test-large.txt");
+			if (!Files.isRegularFile(file))
+				throw new IOException("No " + file.toAbsolutePath() + "; run from the project directory or set -Djugglefest.tests");
+			return file;
+		}
+		String[] sizes = instance.split(":");
+		if (sizes.length != 3 && sizes.length != 4)
+			throw new IllegalArgumentException("Instance must be test-large or jugglers:circuits:preferences[:zipf], not " + instance);
+		int jugglers = Integer.parseInt(sizes[0]);
+		int circuits = Integer.parseInt(sizes[1]);
+		int preferences = Math.min(Integer.parseInt(sizes[2]), circuits);
+		double zipf = sizes.length == 4 ? Double.parseDouble(sizes[3]) : 0;
+		Path directory = Paths.get(System.getProperty("java.io.tmpdir"), "jugglefest-bench");
+		Files.createDirectories(directory);
+		Path file = directory.resolve("j" + jugglers + "-c" + circuits + "-p" + preferences
+				+ (zipf > 0 ? "-z" + zipf : "") + ".txt");
+		if (!Files.isRegularFile(file)) {
+			//written under another name first, so an interrupted run does not leave half a file.
+			Path partial = directory.resolve(file.getFileName() + ".partial");
+			FestivalGenerator generator = new FestivalGenerator(SEED, circuits, jugglers);
+			generator.setPreferences(preferences, preferences);
+			generator.setZipfExponent(zipf);
+			generator.write(partial);
+			Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		return file;
+	}
+}
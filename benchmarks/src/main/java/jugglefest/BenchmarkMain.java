@@ -0,0 +1,34 @@
+package jugglefest;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Class BenchmarkMain
+ * @author Shalini Israni
+ * Runs the benchmarks like JMH's own main, with the same command line, but always with the
+ * GC profiler on, so every result comes with the allocation rate and the number of
+ * collections next to the time.
+ * Sample call: java -jar benchmarks/target/benchmarks.jar
+ *              java -jar benchmarks/target/benchmarks.jar makeAssignments -p instance=test-large
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions command = new CommandLineOptions(args);
+		if (command.shouldHelp() || command.shouldList() || command.shouldListWithParams()
+				|| command.shouldListProfilers() || command.shouldListResultFormats()) {
+			Main.main(args);
+			return;
+		}
+		Options options = new OptionsBuilder()
+				.parent(command)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,112 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class PhaseBenchmark
+ * @author Shalini Israni
+ * Times the three phases of a JuggleFest run separately: loadFile, makeAssignments and
+ * outputAssignments. Each is measured both as throughput and as average time per run.
+ * The instances go from tests/test-large.txt up to 10 million made up jugglers, with fewer or
+ * more circuits, shorter or longer preference lists, and a few popular circuits everyone
+ * ranks (see BenchmarkInstances). Pick some with -p instance=..., and the number of threads
+ * with -p threads=....
+ * The output is written to a stream that throws it away, so the write phase is the
+ * formatting and not the disk.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+public class PhaseBenchmark {
+
+	/**
+	 * The input file and the number of threads to run with.
+	 */
+	@State(Scope.Benchmark)
+	public static class Instance {
+		@Param({"test-large",
+				"10000:100:3", "10000:100:10", "10000:1000:10",
+				"100000:1000:5", "100000:1000:20", "100000:10000:10",
+				"1000000:1000:10", "1000000:10000:10",
+				"10000000:10000:10",
+				"100000:1000:10:1.2", "1000000:10000:10:1.2"})
+		public String instance;
+		@Param({"1"})
+		public int threads;
+		String file;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			file = BenchmarkInstances.path(instance).toString();
+		}
+	}
+
+	/**
+	 * The instance, loaded, to make assignments for.
+	 */
+	@State(Scope.Benchmark)
+	public static class Loaded {
+		JuggleFest juggleFest;
+
+		@Setup(Level.Trial)
+		public void setUp(Instance instance) {
+			juggleFest = load(instance);
+		}
+	}
+
+	/**
+	 * The instance, loaded and assigned, to write out.
+	 */
+	@State(Scope.Benchmark)
+	public static class Assigned {
+		JuggleFest juggleFest;
+
+		@Setup(Level.Trial)
+		public void setUp(Instance instance) {
+			juggleFest = load(instance);
+			juggleFest.makeAssignments(instance.threads);
+		}
+	}
+
+	@Benchmark
+	public JuggleFest loadFile(Instance instance) {
+		return load(instance);
+	}
+
+	//makeAssignments starts over from the loaded festival every time, so the same
+	//JuggleFest can be assigned again and again.
+	@Benchmark
+	public JuggleFest makeAssignments(Instance instance, Loaded loaded) {
+		loaded.juggleFest.makeAssignments(instance.threads);
+		return loaded.juggleFest;
+	}
+
+	@Benchmark
+	public void outputAssignments(Instance instance, Assigned assigned) throws IOException {
+		assigned.juggleFest.outputAssignments(OutputStream.nullOutputStream(), instance.threads);
+	}
+
+	private static JuggleFest load(Instance instance) {
+		JuggleFest juggleFest = new JuggleFest();
+		if (!juggleFest.loadFile(instance.file, instance.threads))
+			throw new IllegalStateException("Could not load " + instance.file);
+		return juggleFest;
+	}
+}
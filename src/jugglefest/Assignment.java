@@ -0,0 +1,190 @@
+package jugglefest;
+
+import java.util.Arrays;
+
+/**
+ * Class Assignment
+ * @author Shalini Israni
+ * The result of makeAssignments, for code in the same process that wants to know which circuit
+ * a juggler is on, or who the best jugglers on a circuit are, without writing the output file
+ * and reading it back. It is a copy, taken when the assignments are made: later changes to the
+ * matching, such as jugglers added after makeAssignments, make a new Assignment and leave this
+ * one as it is, so it can be handed to other threads and read from all of them at once.
+ * Each juggler's circuit and match value for it are kept in two arrays by juggler index, so
+ * looking a juggler up takes O(1). The rosters are kept one after the other in one int array,
+ * each in the order its jugglers joined the circuit, which is the order the output file lists
+ * them in and how AssignmentWriter writes them, with the time each juggler joined, which
+ * orders ties.
+ * The rosters sorted best first are only worked out the first time one is asked for, since
+ * writing the file doesn't need them; then all of them are sorted at once.
+ * The festival is kept for the names and preference lists of the jugglers, which don't change
+ * once they are loaded.
+ */
+final class Assignment {
+	private final Festival festival;
+	private final int jugglerCount;
+	//circuit of each juggler, by juggler index, or -1; and his match value for it.
+	private final int[] circuits;
+	private final float[] scores;
+	//circuit c's jugglers are listed[rosterStarts[c] .. rosterStarts[c + 1])
+	private final int[] rosterStarts;
+	private final int[] listed;
+	private final int[] joined;
+	//the number of jugglers each circuit takes.
+	private final int[] capacities;
+	//the same, best first; sorted on the first call to getRanked.
+	private volatile int[] ranked;
+
+	/**
+	 * Constructor. Copies the rosters of the matching.
+	 * @param matching
+	 */
+	Assignment(Matching matching) {
+		this.festival = matching.getFestival();
+		CircuitRosters rosters = matching.getRosters();
+		this.jugglerCount = festival.getJugglerCount();
+		int circuitCount = rosters.getCircuitCount();
+		this.circuits = new int[jugglerCount];
+		this.scores = new float[jugglerCount];
+		Arrays.fill(circuits, -1);
+		Arrays.fill(scores, Float.NaN);
+		this.rosterStarts = new int[circuitCount + 1];
+		this.capacities = new int[circuitCount];
+		for (int c = 0; c < circuitCount; c++) {
+			rosterStarts[c + 1] = rosterStarts[c] + rosters.size(c);
+			capacities[c] = rosters.capacity(c);
+		}
+		this.listed = new int[rosterStarts[circuitCount]];
+		this.joined = new int[listed.length];
+		for (int c = 0; c < circuitCount; c++) {
+			int[] slots = rosters.joinOrder(c);
+			for (int i = 0; i < slots.length; i++) {
+				int j = rosters.get(c, slots[i]);
+				listed[rosterStarts[c] + i] = j;
+				joined[rosterStarts[c] + i] = rosters.getJoined(c, slots[i]);
+				circuits[j] = c;
+				scores[j] = rosters.getScore(c, slots[i]);
+			}
+		}
+	}
+
+	Festival getFestival() {
+		return festival;
+	}
+	public int getCircuitCount() {
+		return rosterStarts.length - 1;
+	}
+	//jugglers loaded when the assignments were made, withdrawn ones included.
+	public int getJugglerCount() {
+		return jugglerCount;
+	}
+	//jugglers on a circuit.
+	public int getAssignedCount() {
+		return listed.length;
+	}
+	public String getCircuitName(int c) {
+		return festival.getCircuits().getName(c);
+	}
+	public String getJugglerName(int j) {
+		return festival.getJugglerName(j);
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return int
+	 * The index of juggler j's circuit, or -1 if he is on none.
+	 */
+	public int getCircuit(int j) {
+		return circuits[j];
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return float
+	 * Juggler j's match value for his circuit, or NaN if he is on none.
+	 */
+	public float getScore(int j) {
+		return scores[j];
+	}
+
+	/**
+	 *
+	 * @return double
+	 * The match values of every juggler on a circuit, added up.
+	 */
+	public double getTotalScore() {
+		double total = 0;
+		for (int j = 0; j < jugglerCount; j++) {
+			if (circuits[j] >= 0)
+				total += scores[j];
+		}
+		return total;
+	}
+
+	public int getRosterSize(int c) {
+		return rosterStarts[c + 1] - rosterStarts[c];
+	}
+	public int getCapacity(int c) {
+		return capacities[c];
+	}
+
+	/**
+	 *
+	 * @param c
+	 * @param i
+	 * @return int
+	 * The i-th juggler on circuit c, in the order they joined it, which is the order the output
+	 * file lists them in.
+	 */
+	public int getJuggler(int c, int i) {
+		return listed[rosterStarts[c] + i];
+	}
+
+	/**
+	 *
+	 * @param c
+	 * @param rank
+	 * @return int
+	 * The juggler on circuit c with the given rank, 0 being the best match for it. Of two with
+	 * the same match value, the one that joined later ranks higher, since he is the one the
+	 * circuit would keep.
+	 */
+	public int getRanked(int c, int rank) {
+		return ranked()[rosterStarts[c] + rank];
+	}
+
+	/**
+	 *
+	 * @param c
+	 * @param count
+	 * @return int[]
+	 * The best count jugglers on circuit c, best first, or all of them if it has fewer.
+	 */
+	public int[] getTop(int c, int count) {
+		int start = rosterStarts[c];
+		return Arrays.copyOfRange(ranked(), start, start + Math.min(count, getRosterSize(c)));
+	}
+
+	//sorts the rosters the first time they are wanted; a race sorts them twice, the same way.
+	private int[] ranked() {
+		int[] sorted = ranked;
+		if (sorted == null) {
+			sorted = new int[listed.length];
+			for (int c = 0; c < getCircuitCount(); c++)
+				rank(c, sorted);
+			ranked = sorted;
+		}
+		return sorted;
+	}
+
+	private void rank(int c, int[] sorted) {
+		int start = rosterStarts[c], end = rosterStarts[c + 1];
+		int[] roster = Arrays.copyOfRange(listed, start, end);
+		float[] score = new float[roster.length];
+		for (int i = 0; i < roster.length; i++)
+			score[i] = scores[roster[i]];
+		CircuitRosters.rank(roster, score, Arrays.copyOfRange(joined, start, end), sorted, start);
+	}
+}
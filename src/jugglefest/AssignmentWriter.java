@@ -0,0 +1,223 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class AssignmentWriter
+ * @author Shalini Israni
+ * Writes an Assignment in the output format, one line per circuit in the order the circuits
+ * were loaded, each listing its jugglers in the order they joined it:
+ * C0 J1 C0:119.0 C2:74.0 C1:18.0 ,J5 C0:161.0 C2:112.0 C1:26.0
+ * The first version of the solver kept its circuits in a HashMap by name, so its lines came in
+ * the map's order; the lines themselves are the same.
+ * Instead of building each line in a StringBuilder out of concatenated Strings, names and match
+ * values are formatted straight into byte arrays that are reused from one batch of circuits to
+ * the next. The circuits of a batch are split between the threads of a ForkJoinPool, each
+ * formatting its share into its own buffer, and the buffers are then written in order with a
+ * single gathering write to a FileChannel, or one after the other to an OutputStream.
+ * Whole-number match values, which is what integer skills give, are formatted without making
+ * any objects; others go through Float.toString so that they come out exactly as before.
+ */
+final class AssignmentWriter {
+	//circuits handed to each thread at a time.
+	private static final int CIRCUITS_PER_TASK = 256;
+
+	private final Assignment assignment;
+	private final Festival festival;
+	private final ForkJoinPool pool;
+	private final LineBuffer[] buffers;
+	private long scoresWritten;
+
+	/**
+	 * Constructor
+	 * @param assignment
+	 * @param pool threads to format on, or null to format on the calling thread.
+	 */
+	public AssignmentWriter(Assignment assignment, ForkJoinPool pool) {
+		this.assignment = assignment;
+		this.festival = assignment.getFestival();
+		this.pool = pool;
+		this.buffers = new LineBuffer[pool == null ? 1 : pool.getParallelism()];
+		for (int i = 0; i < buffers.length; i++)
+			buffers[i] = new LineBuffer();
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of match values written so far, all of them read from the festival's cache.
+	 */
+	public long getScoresWritten() {
+		return scoresWritten;
+	}
+
+	/**
+	 * Write the assignment to a file, replacing what was in it.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			int circuitCount = assignment.getCircuitCount();
+			ByteBuffer[] batch = new ByteBuffer[buffers.length];
+			for (int from = 0; from < circuitCount; from += buffers.length * CIRCUITS_PER_TASK) {
+				int used = format(from, circuitCount);
+				for (int i = 0; i < used; i++)
+					batch[i] = buffers[i].asByteBuffer();
+				long left = 0;
+				for (int i = 0; i < used; i++)
+					left += batch[i].remaining();
+				while (left > 0)
+					left -= channel.write(batch, 0, used);
+			}
+		}
+	}
+
+	/**
+	 * Write the assignment to a stream. The stream is not closed.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws IOException {
+		int circuitCount = assignment.getCircuitCount();
+		for (int from = 0; from < circuitCount; from += buffers.length * CIRCUITS_PER_TASK) {
+			int used = format(from, circuitCount);
+			for (int i = 0; i < used; i++)
+				out.write(buffers[i].bytes, 0, buffers[i].size);
+		}
+		out.flush();
+	}
+
+	//Formats the next batch of circuits, starting at from, into the buffers. Returns how many
+	//buffers were used.
+	private int format(int from, int circuitCount) {
+		int used = 0;
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for (int i = 0; i < buffers.length; i++) {
+			final int start = from + i * CIRCUITS_PER_TASK;
+			if (start >= circuitCount)
+				break;
+			final int end = Math.min(start + CIRCUITS_PER_TASK, circuitCount);
+			final LineBuffer buffer = buffers[i];
+			buffer.size = 0;
+			if (pool == null)
+				formatCircuits(buffer, start, end);
+			else
+				tasks.add(pool.submit(() -> formatCircuits(buffer, start, end)));
+			used++;
+		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+		for (int i = 0; i < used; i++)
+			scoresWritten += buffers[i].scores;
+		return used;
+	}
+
+	private void formatCircuits(LineBuffer buffer, int start, int end) {
+		CircuitCatalog circuits = festival.getCircuits();
+		buffer.scores = 0;
+		for (int c = start; c < end; c++) {
+			putCircuit(buffer, circuits, c);
+			if (assignment.getRosterSize(c) == 0) {
+				buffer.put('\n');
+				continue;
+			}
+			buffer.put(' ');
+			for (int i = 0; i < assignment.getRosterSize(c); i++) {
+				int j = assignment.getJuggler(c, i);
+				if (i > 0)
+					buffer.put(',');
+				int number = festival.getJugglerNumber(j);
+				if (number >= 0)
+					buffer.putName('J', number);
+				else
+					buffer.putText(festival.getJugglerName(j));
+				buffer.put(' ');
+				for (int k = festival.getPreferenceStart(j); k < festival.getPreferenceEnd(j); k++) {
+					putCircuit(buffer, circuits, festival.getPreferenceCircuit(k));
+					buffer.put(':');
+					buffer.putFloat(festival.getPreferenceScore(k));
+					buffer.put(' ');
+					buffer.scores++;
+				}
+			}
+			buffer.put('\n');
+		}
+	}
+
+	//the name of circuit c, from its number unless it has none.
+	private static void putCircuit(LineBuffer buffer, CircuitCatalog circuits, int c) {
+		int number = circuits.getNumber(c);
+		if (number >= 0)
+			buffer.putName('C', number);
+		else
+			buffer.putText(circuits.getName(c));
+	}
+
+	/**
+	 * A growable byte array that lines are formatted into.
+	 */
+	private static final class LineBuffer {
+		private byte[] bytes = new byte[1 << 16];
+		private int size;
+		private long scores;
+
+		ByteBuffer asByteBuffer() {
+			return ByteBuffer.wrap(bytes, 0, size);
+		}
+
+		void put(char c) {
+			if (size == bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			bytes[size++] = (byte) c;
+		}
+
+		void putName(char prefix, int number) {
+			put(prefix);
+			putDigits(number);
+		}
+
+		void putText(String text) {
+			for (int i = 0; i < text.length(); i++)
+				put(text.charAt(i));
+		}
+
+		//digits of a number that is not negative
+		void putDigits(int number) {
+			if (size + 10 > bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			int digits = 1;
+			for (int rest = number / 10; rest > 0; rest /= 10)
+				digits++;
+			for (int i = size + digits - 1; i >= size; i--) {
+				bytes[i] = (byte) ('0' + number % 10);
+				number /= 10;
+			}
+			size += digits;
+		}
+
+		//same characters as Float.toString
+		void putFloat(float value) {
+			if (value == (int) value && Math.abs(value) < 1e7f) {
+				if (value < 0 || Float.floatToRawIntBits(value) == Integer.MIN_VALUE)
+					put('-');
+				putDigits(Math.abs((int) value));
+				put('.');
+				put('0');
+				return;
+			}
+			putText(Float.toString(value));
+		}
+	}
+}
@@ -0,0 +1,568 @@
+package jugglefest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class AuctionEngine
+ * @author Shalini Israni
+ * Assigns jugglers to circuits so that their match values add up to as much as possible, for
+ * JuggleFest.makeBestAssignments, instead of by ranking. Each circuit takes up to its capacity,
+ * and a juggler can also be left without a circuit, which adds nothing to the total.
+ * It is Bertsekas's auction algorithm. Every place on a circuit has a price, which starts at 0.
+ * A juggler without a place bids for the circuit where his match value less the price of its
+ * cheapest place is the most, and raises that price by how much better it is than his next best
+ * choice, plus epsilon. The place goes to him, and whoever had it bids again. This ends when
+ * every juggler has a place, each within epsilon of his best choice at the final prices, and
+ * then the total is within one epsilon per juggler of the best possible. Each circuit's places
+ * are a heap on their prices, cheapest first.
+ * The auction only works if every juggler is sure to end up with a place, so the jugglers that
+ * don't fit on the circuits get places on one more circuit, NONE, worth nothing to anyone. When
+ * jugglers only go to circuits on their lists, the circuits that aren't on a juggler's list are
+ * worth nothing to him too, so that he can still take a place on one, and that counts as having
+ * no circuit. The best total comes out the same either way.
+ * The bids are made in rounds: every juggler without a place works out his bid at the prices of
+ * the round, in parallel, and then the bids for each circuit are settled, the circuits in
+ * parallel. Jugglers whose bids lose, or who are bumped, bid in the next round. Each bid only
+ * depends on the prices at the start of its round, so the assignment is the same with any
+ * number of threads.
+ * Epsilon starts large and is cut by a factor of EPSILON_FACTOR after each run of rounds, with
+ * the prices kept and only the jugglers more than the new epsilon from their best choice made to
+ * bid again, until it is down to the tolerance times the largest match value.
+ * Jugglers can bid for every circuit, whose match values are worked out a block at a time by the
+ * ScoreKernel, or only for the circuits on their lists, whose values the festival already has,
+ * and the cheapest few of the others.
+ * Once done, each juggler's best match value less price at the final prices, and the prices of
+ * all the places, add up to an upper bound on the total of any assignment (the dual of the
+ * linear program), so the difference from the total it found is how far from the best it can
+ * be at most.
+ */
+final class AuctionEngine {
+	static final double DEFAULT_TOLERANCE = 1e-5;
+	private static final double EPSILON_FACTOR = 5;
+	//jugglers per task handed to the pool.
+	private static final int CHUNK_SIZE = 1024;
+
+	private final Festival festival;
+	private final int[] capacities;
+	private final boolean listedOnly;
+	private final double tolerance;
+	private final int circuitCount;
+	private final int jugglerCount;
+	//index of the circuit for jugglers left without one, after the festival's circuits.
+	private final int none;
+	//the places of circuit c are slotStarts[c] up to slotStarts[c + 1], a heap on their prices,
+	//with the juggler on each or -1.
+	private final int[] slotStarts;
+	private final double[] slotPrices;
+	private final int[] slotJugglers;
+	//price of the cheapest place on each circuit, infinite for a circuit that takes no one, and
+	//of the next cheapest, so a bid doesn't have to look in the heap.
+	private final double[] circuitPrices;
+	private final double[] nextPrices;
+	//when jugglers only go to circuits on their lists: the circuits with the cheapest places,
+	//cheapest first, enough that two of them are not on any juggler's list.
+	private final int[] cheapest;
+	//which circuits are in cheapest, and whether one of their prices has gone up since.
+	private final boolean[] ranked;
+	private boolean stale = true;
+	//the circuit each juggler has a place on, or -1, and its match value.
+	private final int[] circuitOf;
+	private final float[] scoreOf;
+	private ForkJoinPool pool;
+
+	private long bids;
+	private long acceptances;
+	private long bumps;
+	private int rounds;
+	private int phases;
+	private double totalScore;
+	private double upperBound;
+
+	/**
+	 * Constructor
+	 * @param festival
+	 * @param capacities the number of jugglers each circuit takes, by circuit index
+	 * @param listedOnly whether jugglers only go to circuits on their lists
+	 * @param tolerance the last epsilon, as a fraction of the largest match value
+	 */
+	AuctionEngine(Festival festival, int[] capacities, boolean listedOnly, double tolerance) {
+		this.festival = festival;
+		this.capacities = capacities;
+		this.listedOnly = listedOnly;
+		this.tolerance = tolerance;
+		this.circuitCount = capacities.length;
+		this.jugglerCount = festival.getJugglerCount();
+		this.none = circuitCount;
+		this.slotStarts = new int[circuitCount + 2];
+		for (int c = 0; c < circuitCount; c++)
+			slotStarts[c + 1] = slotStarts[c] + capacities[c];
+		slotStarts[none + 1] = slotStarts[none] + Math.max(0, festival.getActiveJugglerCount() - slotStarts[none]);
+		this.slotPrices = new double[slotStarts[none + 1]];
+		this.slotJugglers = new int[slotPrices.length];
+		Arrays.fill(slotJugglers, -1);
+		this.circuitPrices = new double[circuitCount + 1];
+		this.nextPrices = new double[circuitCount + 1];
+		for (int c = 0; c <= circuitCount; c++) {
+			int places = slotStarts[c + 1] - slotStarts[c];
+			circuitPrices[c] = places > 0 ? 0 : Double.POSITIVE_INFINITY;
+			nextPrices[c] = places > 1 ? 0 : Double.POSITIVE_INFINITY;
+		}
+		int longest = 0;
+		if (listedOnly) {
+			for (int j = 0; j < jugglerCount; j++)
+				longest = Math.max(longest, festival.getPreferenceEnd(j) - festival.getPreferenceStart(j));
+		}
+		this.cheapest = new int[listedOnly ? Math.min(longest + 2, circuitCount + 1) : 0];
+		this.ranked = new boolean[listedOnly ? circuitCount + 1 : 0];
+		this.circuitOf = new int[jugglerCount];
+		Arrays.fill(circuitOf, -1);
+		this.scoreOf = new float[jugglerCount];
+	}
+
+	/**
+	 * Run the auction on the given number of threads.
+	 * @param threads
+	 */
+	void run(int threads) {
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try {
+			double largest = largestScore();
+			double last = Math.max(tolerance * largest, Double.MIN_NORMAL);
+			double epsilon = Math.max(largest / EPSILON_FACTOR, last);
+			int[] bidders = new int[festival.getActiveJugglerCount()];
+			int count = 0;
+			for (int j = 0; j < jugglerCount; j++) {
+				if (!festival.isWithdrawn(j))
+					bidders[count++] = j;
+			}
+			while (true) {
+				phases++;
+				auction(bidders, epsilon);
+				if (epsilon <= last)
+					break;
+				epsilon = Math.max(epsilon / EPSILON_FACTOR, last);
+				bidders = release(epsilon);
+			}
+			bound();
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+
+	/**
+	 *
+	 * @return Matching
+	 * A matching with the jugglers on the circuits the auction gave them, in the order they were
+	 * loaded, for an Assignment or the output. The jugglers without a circuit are on its
+	 * remaining list.
+	 */
+	Matching toMatching() {
+		Matching matching = new Matching(festival, capacities);
+		matching.getUnassigned().clear();
+		CircuitRosters rosters = matching.getRosters();
+		for (int j = 0; j < jugglerCount; j++) {
+			int c = circuitOf[j];
+			if (c >= 0 && c != none && (!listedOnly || isListed(j, c))) {
+				rosters.add(c, j, scoreOf[j]);
+				matching.setAssignedCircuit(j, c);
+			} else if (!festival.isWithdrawn(j)) {
+				matching.getRemaining().add(j);
+			}
+		}
+		return matching;
+	}
+
+	/**
+	 *
+	 * @return double
+	 * The total match value of the assignment found.
+	 */
+	double getTotalScore() {
+		return totalScore;
+	}
+
+	/**
+	 *
+	 * @return double
+	 * No assignment can have a total match value more than this.
+	 */
+	double getUpperBound() {
+		return upperBound;
+	}
+
+	long getBids() {
+		return bids;
+	}
+	long getAcceptances() {
+		return acceptances;
+	}
+	long getBumps() {
+		return bumps;
+	}
+	int getRounds() {
+		return rounds;
+	}
+	int getPhases() {
+		return phases;
+	}
+
+	//Bids in rounds until the bidders, and everyone they bump, have places.
+	private void auction(int[] bidders, double epsilon) {
+		int count = bidders.length;
+		int[] bidCircuits = new int[count];
+		double[] bidPrices = new double[count];
+		float[] bidScores = new float[count];
+		int[] next = new int[count];
+		long[] keys = new long[count];
+		int[] groupStarts = new int[count + 1];
+		while (count > 0) {
+			rounds++;
+			bids += count;
+			rankPrices();
+			final int[] jugglers = bidders;
+			parallel(count, (from, to) -> {
+				Choice choice = new Choice();
+				for (int i = from; i < to; i++) {
+					int c = choose(jugglers[i], choice);
+					bidCircuits[i] = c;
+					bidScores[i] = choice.score;
+					bidPrices[i] = choice.score - choice.next + epsilon;
+				}
+			});
+			//the bids for each circuit, in the order of the bidders.
+			int bidCount = 0;
+			for (int i = 0; i < count; i++) {
+				if (bidCircuits[i] >= 0)
+					keys[bidCount++] = (long) bidCircuits[i] << 32 | i;
+				else
+					next[i] = -1;
+			}
+			if (pool != null)
+				Arrays.parallelSort(keys, 0, bidCount);
+			else
+				Arrays.sort(keys, 0, bidCount);
+			int groups = 0;
+			for (int k = 0; k < bidCount; k++) {
+				if (k == 0 || keys[k] >>> 32 != keys[k - 1] >>> 32)
+					groupStarts[groups++] = k;
+			}
+			groupStarts[groups] = bidCount;
+			final int[] left = next;
+			parallel(groups, (from, to) -> {
+				for (int g = from; g < to; g++)
+					settle(keys, groupStarts[g], groupStarts[g + 1], jugglers, bidPrices, bidScores, left);
+			});
+			//everyone bumped or outbid bids in the next round.
+			int nextCount = 0;
+			for (int i = 0; i < count; i++) {
+				if (bidCircuits[i] < 0)
+					continue;
+				if (next[i] != jugglers[i])
+					acceptances++;
+				if (next[i] >= 0 && next[i] != jugglers[i])
+					bumps++;
+				if (next[i] >= 0)
+					next[nextCount++] = next[i];
+			}
+			int[] swap = bidders;
+			bidders = next;
+			next = swap;
+			count = nextCount;
+		}
+	}
+
+	//Settles the bids keys[from] up to keys[to], all for the same circuit, in order. A bid higher
+	//than the circuit's cheapest place takes it; next[i] is the juggler bid i leaves without a
+	//place: the one bumped, the bidder if he was outbid, or -1.
+	private void settle(long[] keys, int from, int to, int[] jugglers, double[] bidPrices, float[] bidScores,
+			int[] next) {
+		int c = (int) (keys[from] >>> 32);
+		int start = slotStarts[c], end = slotStarts[c + 1];
+		for (int k = from; k < to; k++) {
+			int i = (int) keys[k];
+			int j = jugglers[i];
+			if (bidPrices[i] <= slotPrices[start]) {
+				next[i] = j;
+				continue;
+			}
+			int bumped = slotJugglers[start];
+			if (bumped >= 0)
+				circuitOf[bumped] = -1;
+			slotPrices[start] = bidPrices[i];
+			slotJugglers[start] = j;
+			siftDown(start, end);
+			circuitOf[j] = c;
+			scoreOf[j] = bidScores[i];
+			next[i] = bumped;
+		}
+		if (listedOnly && ranked[c] && slotPrices[start] != circuitPrices[c])
+			stale = true;
+		circuitPrices[c] = slotPrices[start];
+		//the next cheapest place is one of the children of the root
+		double second = Double.POSITIVE_INFINITY;
+		if (start + 1 < end)
+			second = slotPrices[start + 1];
+		if (start + 2 < end)
+			second = Math.min(second, slotPrices[start + 2]);
+		nextPrices[c] = second;
+	}
+
+	//Takes off their places the jugglers that are more than epsilon from their best choice at
+	//the current prices, to bid again, in the order they were loaded. The places keep their
+	//prices.
+	private int[] release(double epsilon) {
+		rankPrices();
+		boolean[] releasing = new boolean[jugglerCount];
+		parallel(none + 1, (from, to) -> {
+			Choice choice = new Choice();
+			for (int s = slotStarts[from]; s < slotStarts[to]; s++) {
+				int j = slotJugglers[s];
+				if (j < 0)
+					continue;
+				choose(j, choice);
+				if (scoreOf[j] - slotPrices[s] < choice.best - epsilon) {
+					releasing[j] = true;
+					slotJugglers[s] = -1;
+				}
+			}
+		});
+		int[] released = new int[jugglerCount];
+		int count = 0;
+		for (int j = 0; j < jugglerCount; j++) {
+			if (releasing[j]) {
+				circuitOf[j] = -1;
+				released[count++] = j;
+			}
+		}
+		return Arrays.copyOf(released, count);
+	}
+
+	//Adds up the total match value, and the upper bound: each juggler's best match value less
+	//price at the final prices, plus the price of every place.
+	private void bound() {
+		rankPrices();
+		int chunks = (jugglerCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		double[] totals = new double[chunks];
+		double[] bests = new double[chunks];
+		parallel(jugglerCount, (from, to) -> {
+			Choice choice = new Choice();
+			double total = 0, best = 0;
+			for (int j = from; j < to; j++) {
+				if (circuitOf[j] < 0)
+					continue;
+				choose(j, choice);
+				best += choice.best;
+				total += scoreOf[j];
+			}
+			totals[from / CHUNK_SIZE] = total;
+			bests[from / CHUNK_SIZE] = best;
+		});
+		totalScore = 0;
+		upperBound = 0;
+		for (int k = 0; k < chunks; k++) {
+			totalScore += totals[k];
+			upperBound += bests[k];
+		}
+		for (double price : slotPrices)
+			upperBound += price;
+		//the two are added up separately, so rounding can put the bound a hair under the total
+		upperBound = Math.max(upperBound, totalScore);
+	}
+
+	//juggler j's best choice at the current prices, and the two values a bid needs.
+	private static final class Choice {
+		//match value less the price of the cheapest place, of the best circuit.
+		double best;
+		//the same of the next best place: on another circuit, or the second cheapest on the
+		//same circuit.
+		double next;
+		//match value of the best circuit.
+		float score;
+		//match values of every circuit, when jugglers can bid for every circuit.
+		float[] scores;
+	}
+
+	//Finds juggler j's best circuit at the current prices, and fills in choice. Returns -1 if
+	//no circuit has a place at all.
+	private int choose(int j, Choice choice) {
+		int best = none;
+		double bestValue = -circuitPrices[none], nextValue = Double.NEGATIVE_INFINITY;
+		float bestScore = 0;
+		if (listedOnly) {
+			int start = festival.getPreferenceStart(j), end = festival.getPreferenceEnd(j);
+			for (int k = start; k < end; k++) {
+				int c = festival.getPreferenceCircuit(k);
+				float score = festival.getPreferenceScore(k);
+				double value = score - circuitPrices[c];
+				if (value > bestValue) {
+					if (c != best)
+						nextValue = bestValue;
+					best = c;
+					bestValue = value;
+					bestScore = score;
+				} else if (value > nextValue && c != best) {
+					nextValue = value;
+				}
+			}
+			//the two cheapest circuits not on his list, worth nothing to him
+			int found = 0;
+			for (int r = 0; r < cheapest.length && found < 2; r++) {
+				int c = cheapest[r];
+				if (c == none || isListed(j, c))
+					continue;
+				found++;
+				double value = -circuitPrices[c];
+				if (value > bestValue) {
+					nextValue = bestValue;
+					best = c;
+					bestValue = value;
+					bestScore = 0;
+				} else if (value > nextValue) {
+					nextValue = value;
+				}
+			}
+		} else {
+			CircuitCatalog catalog = festival.getCircuits();
+			if (choice.scores == null)
+				choice.scores = new float[circuitCount];
+			float[] scores = choice.scores;
+			ScoreKernel.get().scoreJugglers(festival.getHandEyeCoord(j), festival.getEndurance(j), festival.getPizzazz(j),
+					catalog.getHandEyeCoordColumn(), catalog.getEnduranceColumn(), catalog.getPizzazzColumn(),
+					0, circuitCount, scores, 0);
+			for (int c = 0; c < circuitCount; c++) {
+				double value = scores[c] - circuitPrices[c];
+				if (value > nextValue) {
+					if (value > bestValue) {
+						nextValue = bestValue;
+						best = c;
+						bestValue = value;
+					} else {
+						nextValue = value;
+					}
+				}
+			}
+			if (best != none)
+				bestScore = scores[best];
+		}
+		if (bestValue == Double.NEGATIVE_INFINITY) {
+			choice.best = bestValue;
+			return -1;
+		}
+		nextValue = Math.max(nextValue, bestScore - nextPrices[best]);
+		choice.best = bestValue;
+		//with nothing else to go to, the least bid will do
+		choice.next = nextValue == Double.NEGATIVE_INFINITY ? bestValue : nextValue;
+		choice.score = bestScore;
+		return best;
+	}
+
+	//true if circuit c is on juggler j's list.
+	private boolean isListed(int j, int c) {
+		for (int k = festival.getPreferenceStart(j); k < festival.getPreferenceEnd(j); k++) {
+			if (festival.getPreferenceCircuit(k) == c)
+				return true;
+		}
+		return false;
+	}
+
+	//Finds the circuits with the cheapest places, for jugglers that only go to circuits on
+	//their lists. Prices only go up, so they only change when one of theirs has.
+	private void rankPrices() {
+		int length = cheapest.length;
+		if (length == 0 || !stale)
+			return;
+		stale = false;
+		for (int r = 0; r < length; r++)
+			ranked[cheapest[r]] = false;
+		int found = 0;
+		for (int c = 0; c <= circuitCount; c++) {
+			double price = circuitPrices[c];
+			if (price == Double.POSITIVE_INFINITY || found == length && price >= circuitPrices[cheapest[length - 1]])
+				continue;
+			int i = Math.min(found, length - 1);
+			while (i > 0 && circuitPrices[cheapest[i - 1]] > price) {
+				cheapest[i] = cheapest[i - 1];
+				i--;
+			}
+			cheapest[i] = c;
+			found = Math.min(found + 1, length);
+		}
+		//fewer circuits with places than there is room for
+		for (int r = found; r < length; r++)
+			cheapest[r] = none;
+		for (int r = 0; r < length; r++)
+			ranked[cheapest[r]] = true;
+	}
+
+	//moves the place at the root of the heap in [start, end) down to where its price belongs.
+	private void siftDown(int start, int end) {
+		int i = 0, size = end - start;
+		double price = slotPrices[start];
+		int juggler = slotJugglers[start];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && slotPrices[start + child + 1] < slotPrices[start + child])
+				child++;
+			if (slotPrices[start + child] >= price)
+				break;
+			slotPrices[start + i] = slotPrices[start + child];
+			slotJugglers[start + i] = slotJugglers[start + child];
+			i = child;
+		}
+		slotPrices[start + i] = price;
+		slotJugglers[start + i] = juggler;
+	}
+
+	//the largest match value a juggler could bid with, or a bound on it.
+	private double largestScore() {
+		double largest = 0;
+		if (listedOnly) {
+			for (int k = 0; k < festival.getPreferenceCount(); k++)
+				largest = Math.max(largest, Math.abs(festival.getPreferenceScore(k)));
+			return largest;
+		}
+		CircuitCatalog catalog = festival.getCircuits();
+		double h = 0, e = 0, p = 0;
+		for (int c = 0; c < circuitCount; c++) {
+			h = Math.max(h, Math.abs(catalog.getHandEyeCoord(c)));
+			e = Math.max(e, Math.abs(catalog.getEndurance(c)));
+			p = Math.max(p, Math.abs(catalog.getPizzazz(c)));
+		}
+		double jh = 0, je = 0, jp = 0;
+		for (int j = 0; j < jugglerCount; j++) {
+			jh = Math.max(jh, Math.abs(festival.getHandEyeCoord(j)));
+			je = Math.max(je, Math.abs(festival.getEndurance(j)));
+			jp = Math.max(jp, Math.abs(festival.getPizzazz(j)));
+		}
+		return h * jh + e * je + p * jp;
+	}
+
+	//a run over a range of indexes.
+	private interface Range {
+		void run(int from, int to);
+	}
+
+	//Runs range over [0, count) in chunks of CHUNK_SIZE, in parallel on the pool if there is one,
+	//and returns when they are all done.
+	private void parallel(int count, Range range) {
+		if (pool == null || count <= CHUNK_SIZE) {
+			for (int from = 0; from < count; from += CHUNK_SIZE)
+				range.run(from, Math.min(count, from + CHUNK_SIZE));
+			return;
+		}
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for (int from = 0; from < count; from += CHUNK_SIZE) {
+			final int start = from, end = Math.min(count, from + CHUNK_SIZE);
+			tasks.add(pool.submit(() -> range.run(start, end)));
+		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+	}
+}
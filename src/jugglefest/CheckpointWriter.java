@@ -0,0 +1,119 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class CheckpointWriter
+ * @author Shalini Israni
+ * Saves SolverCheckpoints of a Matching every so often while the pairing by ranking and the
+ * fill phase run, without holding them up. The proposal loop calls offer() between proposals,
+ * and the fill phase between one circuit and the next; when a checkpoint
+ * is due, the matching is copied, which is a few array copies, and the copy is written to disk
+ * on a thread of its own while the proposals carry on. If the last checkpoint is still being
+ * written when the next one is due, that one is skipped rather than waited for.
+ * A checkpoint that can't be written is reported, and the solve carries on without it.
+ */
+final class CheckpointWriter {
+	private final Path file;
+	private final long intervalNanos;
+	private final Festival festival;
+	private final ExecutorService executor;
+	private Future<?> pending;
+	private long due;
+	private int written;
+	//calculated on the writer's thread with the first checkpoint; the festival doesn't change
+	//while the proposals run.
+	private long fingerprint;
+	private boolean fingerprinted;
+
+	/**
+	 * Constructor. The first checkpoint is due one interval from now.
+	 * @param file
+	 * @param intervalMillis
+	 * @param festival
+	 */
+	CheckpointWriter(Path file, long intervalMillis, Festival festival) {
+		this.file = file;
+		this.intervalNanos = intervalMillis * 1_000_000L;
+		this.festival = festival;
+		this.due = System.nanoTime() + intervalNanos;
+		//a daemon thread, so a checkpoint being written doesn't keep the JVM up.
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jugglefest-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Start a checkpoint of the matching if one is due and the last one has been written.
+	 * Called between proposals, when the matching is consistent.
+	 * @param matching
+	 */
+	void offer(Matching matching) {
+		long now = System.nanoTime();
+		if (now - due < 0 || (pending != null && !pending.isDone()))
+			return;
+		Matching copy = matching.copy();
+		due = now + intervalNanos;
+		pending = executor.submit(() -> write(copy));
+	}
+
+	/**
+	 *
+	 * @return int
+	 * Number of checkpoints written so far.
+	 */
+	synchronized int getCheckpointsWritten() {
+		return written;
+	}
+
+	/**
+	 * Wait for the checkpoint being written, if any, and stop the writer's thread.
+	 */
+	void close() {
+		try {
+			if (pending != null)
+				pending.get();
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException executionException) {
+			//write reports its own failures.
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Close, and delete the checkpoint, once the solve it was for is done.
+	 */
+	void delete() {
+		close();
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException ioException) {
+			System.out.println("Could not delete checkpoint " + file + ": " + ioException.getMessage());
+		}
+	}
+
+	private void write(Matching copy) {
+		try {
+			if (!fingerprinted) {
+				fingerprint = SolverCheckpoint.fingerprint(festival);
+				fingerprinted = true;
+			}
+			SolverCheckpoint.write(copy, fingerprint, file);
+			synchronized (this) {
+				written++;
+			}
+		} catch (IOException ioException) {
+			System.out.println("Could not write checkpoint " + file + ": " + ioException.getMessage());
+		}
+	}
+}
@@ -1,6 +1,6 @@
 package jugglefest;
 
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Class Circuit
@@ -13,9 +13,9 @@ public class Circuit {
 	private float handEyeCoord;
 	private float endurance;
 	private float pizzazz;
-	//List of jugglers assigned to this circuit. This list could keep changing based on preferences
-	//and match values.
-	private LinkedList<Juggler> jugglers;
+	//Jugglers assigned to this circuit. This roster could keep changing based on preferences
+	//and match values, so it is kept as a heap with the weakest match on top.
+	private Roster roster;
 	
 	public String getName() {
 		return name;
@@ -43,11 +43,16 @@ public class Circuit {
 	}
 	
 	
-	public LinkedList<Juggler> getJugglers() {
-		return jugglers;
+	/**
+	 * Read-only list of the jugglers assigned to this circuit, in the order they joined it. Use
+	 * getRoster() to change them.
+	 * @return List
+	 */
+	public List<Juggler> getJugglers() {
+		return roster.asList();
 	}
-	public void setJugglers(LinkedList<Juggler> jugglers) {
-		this.jugglers = jugglers;
+	public Roster getRoster() {
+		return roster;
 	}
 	/**
 	 * Constructor
@@ -62,7 +67,7 @@ public class Circuit {
 		this.handEyeCoord = handEyeCoord;
 		this.endurance = endurance;
 		this.pizzazz = pizzazz;
-		this.jugglers = new LinkedList<Juggler>();
+		this.roster = new Roster(8);
 	}
 	@Override
 	// print friendly. 
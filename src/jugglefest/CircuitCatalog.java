@@ -0,0 +1,229 @@
+package jugglefest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class CircuitCatalog
+ * @author Shalini Israni
+ * The circuits of a festival, stored column by column: one float array each for H, E and P,
+ * indexed by a dense circuit index (the order in which the circuits were loaded).
+ * Circuit names are nearly always a 'C' followed by a number, so instead of keeping a String
+ * per circuit and a HashMap to find it, I keep the number, and an IntIntMap to go from the
+ * number to the index. A name written any other way, such as C007 or C12b, is kept as it is,
+ * with -1 for its number, in a HashMap of its own; so every name is written out the way it
+ * was read, and C007 and C7 are different circuits, as they always were.
+ */
+final class CircuitCatalog {
+	private int count;
+	private int[] numbers;
+	private float[] handEyeCoord;
+	private float[] endurance;
+	private float[] pizzazz;
+	//circuit number -> index.
+	private IntIntMap indexByNumber;
+	//names of the circuits without a number, by index, and the other way around. Made when
+	//the first one is added.
+	private Map<Integer, String> names;
+	private Map<String, Integer> indexByName;
+
+	/**
+	 * Constructor
+	 */
+	public CircuitCatalog() {
+		this(16);
+	}
+
+	/**
+	 * Constructor
+	 * @param expectedCircuits
+	 */
+	public CircuitCatalog(int expectedCircuits) {
+		int capacity = Math.max(expectedCircuits, 1);
+		this.numbers = new int[capacity];
+		this.handEyeCoord = new float[capacity];
+		this.endurance = new float[capacity];
+		this.pizzazz = new float[capacity];
+		this.indexByNumber = new IntIntMap(capacity);
+	}
+
+	/**
+	 * Constructor for circuits that were loaded before, such as from a FestivalSnapshot: the
+	 * first count entries of the arrays are the circuits, by index, and every number is
+	 * different, or -1 for a circuit whose name setName gives next. The arrays are kept, not
+	 * copied.
+	 * @param count
+	 * @param numbers
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 */
+	CircuitCatalog(int count, int[] numbers, float[] handEyeCoord, float[] endurance, float[] pizzazz) {
+		this.count = count;
+		this.numbers = numbers;
+		this.handEyeCoord = handEyeCoord;
+		this.endurance = endurance;
+		this.pizzazz = pizzazz;
+		this.indexByNumber = new IntIntMap(count);
+		for (int c = 0; c < count; c++) {
+			if (numbers[c] >= 0)
+				indexByNumber.put(numbers[c], c);
+		}
+		//add() doubles the arrays when they are full, which needs them to have a length.
+		if (numbers.length == 0)
+			grow(1);
+	}
+
+	/**
+	 *
+	 * @param number
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @return int the index of the circuit.
+	 * Adds a circuit. A circuit that is loaded twice keeps its index and takes the new values,
+	 * the same way putting it into a HashMap again would have.
+	 */
+	public int add(int number, float handEyeCoord, float endurance, float pizzazz) {
+		int index = indexOf(number);
+		if (index < 0) {
+			index = append(number);
+			indexByNumber.put(number, index);
+		}
+		this.handEyeCoord[index] = handEyeCoord;
+		this.endurance[index] = endurance;
+		this.pizzazz[index] = pizzazz;
+		return index;
+	}
+
+	/**
+	 * The same, by name, for a name that may not be a 'C' and a number written the usual way.
+	 * @param name
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @return int the index of the circuit.
+	 */
+	public int add(String name, float handEyeCoord, float endurance, float pizzazz) {
+		int number = numberOf(name, 'C');
+		if (number >= 0)
+			return add(number, handEyeCoord, endurance, pizzazz);
+		int index = indexOf(name);
+		if (index < 0) {
+			index = append(-1);
+			setName(index, name);
+		}
+		this.handEyeCoord[index] = handEyeCoord;
+		this.endurance[index] = endurance;
+		this.pizzazz[index] = pizzazz;
+		return index;
+	}
+
+	/**
+	 * Give circuit c, which has no number, its name.
+	 * @param c
+	 * @param name
+	 */
+	void setName(int c, String name) {
+		if (names == null) {
+			names = new HashMap<Integer, String>();
+			indexByName = new HashMap<String, Integer>();
+		}
+		names.put(c, name);
+		indexByName.put(name, c);
+	}
+
+	/**
+	 *
+	 * @param number
+	 * @return int
+	 * The index of circuit C<number>, or -1 if there is no such circuit.
+	 */
+	public int indexOf(int number) {
+		return indexByNumber.get(number);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @return int
+	 * The index of the circuit with the name, or -1 if there is no such circuit.
+	 */
+	public int indexOf(String name) {
+		int number = numberOf(name, 'C');
+		if (number >= 0)
+			return indexOf(number);
+		Integer index = indexByName == null ? null : indexByName.get(name);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param prefix
+	 * @return int
+	 * The number in a name like C12 or J3, if it is the prefix followed by the number written
+	 * the usual way, with no leading zeros and at most nine digits; otherwise -1.
+	 */
+	static int numberOf(String name, char prefix) {
+		int length = name == null ? 0 : name.length();
+		if (length < 2 || length > 10 || name.charAt(0) != prefix || (name.charAt(1) == '0' && length > 2))
+			return -1;
+		int number = 0;
+		for (int i = 1; i < length; i++) {
+			int digit = name.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			number = number * 10 + digit;
+		}
+		return number;
+	}
+
+	public int size() {
+		return count;
+	}
+	//-1 if the circuit's name is not a 'C' and a number.
+	public int getNumber(int c) {
+		return numbers[c];
+	}
+	public String getName(int c) {
+		return numbers[c] >= 0 ? "C" + numbers[c] : names.get(c);
+	}
+	public float getHandEyeCoord(int c) {
+		return handEyeCoord[c];
+	}
+	public float getEndurance(int c) {
+		return endurance[c];
+	}
+	public float getPizzazz(int c) {
+		return pizzazz[c];
+	}
+
+	//the columns themselves, by circuit index, for a ScoreKernel to read. Adding circuits can
+	//replace them with longer ones, so they are not kept.
+	float[] getHandEyeCoordColumn() {
+		return handEyeCoord;
+	}
+	float[] getEnduranceColumn() {
+		return endurance;
+	}
+	float[] getPizzazzColumn() {
+		return pizzazz;
+	}
+
+	//a new circuit at the end, with the number, and its index.
+	private int append(int number) {
+		if (count == numbers.length)
+			grow(count * 2);
+		numbers[count] = number;
+		return count++;
+	}
+
+	private void grow(int capacity) {
+		numbers = Arrays.copyOf(numbers, capacity);
+		handEyeCoord = Arrays.copyOf(handEyeCoord, capacity);
+		endurance = Arrays.copyOf(endurance, capacity);
+		pizzazz = Arrays.copyOf(pizzazz, capacity);
+	}
+}
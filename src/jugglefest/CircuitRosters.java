@@ -0,0 +1,335 @@
+package jugglefest;
+
+import java.util.Arrays;
+
+/**
+ * Class CircuitRosters
+ * @author Shalini Israni
+ * The rosters of all circuits of a Festival, by circuit index. Each roster is the same min-heap
+ * as Roster, weakest match on top and ties ordered by join time, but holds juggler indexes
+ * in int arrays instead of Juggler objects.
+ * Every circuit has its own capacity, which defaults to the same number for all of them.
+ */
+final class CircuitRosters {
+	private int[][] jugglers;
+	private float[][] scores;
+	private int[][] joined;
+	private int[] sizes;
+	private int[] capacities;
+	private int[] nextJoined;
+
+	/**
+	 * Constructor
+	 * @param circuitCount
+	 * @param capacity the number of jugglers every circuit takes
+	 */
+	public CircuitRosters(int circuitCount, int capacity) {
+		this.jugglers = new int[circuitCount][];
+		this.scores = new float[circuitCount][];
+		this.joined = new int[circuitCount][];
+		this.sizes = new int[circuitCount];
+		this.capacities = new int[circuitCount];
+		this.nextJoined = new int[circuitCount];
+		for (int c = 0; c < circuitCount; c++)
+			allocate(c, capacity);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacities the number of jugglers each circuit takes, by circuit index
+	 */
+	public CircuitRosters(int[] capacities) {
+		this(capacities.length, 0);
+		for (int c = 0; c < capacities.length; c++)
+			allocate(c, capacities[c]);
+	}
+
+	/**
+	 * Constructor for rosters saved before, such as in a SolverCheckpoint. For each circuit c,
+	 * the first sizes[c] entries of jugglers[c], scores[c] and joined[c] are its heap, slot by
+	 * slot, and nextJoined[c] is the join time the next juggler gets. The arrays are kept, not
+	 * copied, and are lengthened to the capacity if they are shorter.
+	 * @param capacities
+	 * @param sizes
+	 * @param nextJoined
+	 * @param jugglers
+	 * @param scores
+	 * @param joined
+	 */
+	CircuitRosters(int[] capacities, int[] sizes, int[] nextJoined, int[][] jugglers, float[][] scores, int[][] joined) {
+		this.capacities = capacities;
+		this.sizes = sizes;
+		this.nextJoined = nextJoined;
+		this.jugglers = jugglers;
+		this.scores = scores;
+		this.joined = joined;
+		for (int c = 0; c < capacities.length; c++) {
+			int length = Math.max(Math.max(capacities[c], sizes[c]), 1);
+			if (jugglers[c].length < length) {
+				jugglers[c] = Arrays.copyOf(jugglers[c], length);
+				scores[c] = Arrays.copyOf(scores[c], length);
+				joined[c] = Arrays.copyOf(joined[c], length);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return CircuitRosters
+	 * A copy of every roster, heap slot for heap slot, that changes independently of this one.
+	 */
+	CircuitRosters copy() {
+		int count = sizes.length;
+		int[][] jugglersCopy = new int[count][];
+		float[][] scoresCopy = new float[count][];
+		int[][] joinedCopy = new int[count][];
+		for (int c = 0; c < count; c++) {
+			jugglersCopy[c] = Arrays.copyOf(jugglers[c], sizes[c]);
+			scoresCopy[c] = Arrays.copyOf(scores[c], sizes[c]);
+			joinedCopy[c] = Arrays.copyOf(joined[c], sizes[c]);
+		}
+		return new CircuitRosters(capacities.clone(), sizes.clone(), nextJoined.clone(),
+				jugglersCopy, scoresCopy, joinedCopy);
+	}
+
+	public int getCircuitCount() {
+		return sizes.length;
+	}
+	public int size(int c) {
+		return sizes[c];
+	}
+	public int capacity(int c) {
+		return capacities[c];
+	}
+	public boolean isFull(int c) {
+		return sizes[c] >= capacities[c];
+	}
+
+	/**
+	 *
+	 * @param c
+	 * @param i
+	 * @return int
+	 * The juggler in heap slot i of circuit c. Slot 0 is the weakest juggler.
+	 */
+	public int get(int c, int i) {
+		return jugglers[c][i];
+	}
+	public float getScore(int c, int i) {
+		return scores[c][i];
+	}
+	//the join time of the juggler in heap slot i of circuit c, which orders ties.
+	int getJoined(int c, int i) {
+		return joined[c][i];
+	}
+	int getNextJoined(int c) {
+		return nextJoined[c];
+	}
+
+	/**
+	 *
+	 * @param c
+	 * @return int[]
+	 * The heap slots of circuit c in the order their jugglers joined it, first to last, which is
+	 * the order the output file lists them in.
+	 */
+	int[] joinOrder(int c) {
+		int size = sizes[c];
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++)
+			keys[i] = (long) joined[c][i] << 32 | i;
+		Arrays.sort(keys);
+		int[] slots = new int[size];
+		for (int i = 0; i < size; i++)
+			slots[i] = (int) keys[i];
+		return slots;
+	}
+	public int peekWorst(int c) {
+		return jugglers[c][0];
+	}
+	public float peekWorstScore(int c) {
+		return scores[c][0];
+	}
+
+	/**
+	 * Add juggler j to circuit c, which must not be full.
+	 * @param c
+	 * @param j
+	 * @param score
+	 */
+	public void add(int c, int j, float score) {
+		int slot = sizes[c]++;
+		jugglers[c][slot] = j;
+		scores[c][slot] = score;
+		joined[c][slot] = nextJoined[c]++;
+		siftUp(c, slot);
+	}
+
+	/**
+	 * Take the weakest juggler off circuit c and put j in its place.
+	 * @param c
+	 * @param j
+	 * @param score
+	 * @return int the juggler that was bumped off.
+	 */
+	public int replaceWorst(int c, int j, float score) {
+		int worst = jugglers[c][0];
+		jugglers[c][0] = j;
+		scores[c][0] = score;
+		joined[c][0] = nextJoined[c]++;
+		siftDown(c, 0);
+		return worst;
+	}
+
+	/**
+	 * Take the weakest juggler off circuit c, which must not be empty.
+	 * @param c
+	 * @return int the juggler that was taken off.
+	 */
+	public int removeWorst(int c) {
+		int worst = jugglers[c][0];
+		removeAt(c, 0);
+		return worst;
+	}
+
+	/**
+	 * Take juggler j off circuit c.
+	 * @param c
+	 * @param j
+	 * @return boolean false if he was not on it.
+	 */
+	public boolean remove(int c, int j) {
+		int[] roster = jugglers[c];
+		for (int i = 0; i < sizes[c]; i++) {
+			if (roster[i] == j) {
+				removeAt(c, i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Put the jugglers of a roster saved before, such as in an Assignment, into ranked from
+	 * offset on, best first: the opposite of the order removeWorst would take them off in, so
+	 * of two with the same match value the one that joined later comes first.
+	 * @param roster the jugglers, in any order
+	 * @param score their match values
+	 * @param order their join times
+	 * @param ranked
+	 * @param offset
+	 * The three arrays are sorted in place, in the process.
+	 */
+	static void rank(int[] roster, float[] score, int[] order, int[] ranked, int offset) {
+		for (int i = roster.length / 2 - 1; i >= 0; i--)
+			siftDown(roster, score, order, roster.length, i);
+		for (int last = roster.length - 1; last >= 0; last--) {
+			ranked[offset + last] = roster[0];
+			swap(roster, score, order, 0, last);
+			siftDown(roster, score, order, last, 0);
+		}
+	}
+
+	/**
+	 * Change the number of jugglers circuit c takes. Jugglers already on it stay on it, even
+	 * if there are now more of them than the new capacity.
+	 * @param c
+	 * @param capacity
+	 */
+	public void setCapacity(int c, int capacity) {
+		if (capacity > jugglers[c].length) {
+			jugglers[c] = Arrays.copyOf(jugglers[c], capacity);
+			scores[c] = Arrays.copyOf(scores[c], capacity);
+			joined[c] = Arrays.copyOf(joined[c], capacity);
+		}
+		capacities[c] = capacity;
+	}
+
+	/**
+	 * Add an empty roster for a new circuit.
+	 * @param capacity
+	 * @return int the index of the new circuit.
+	 */
+	public int addCircuit(int capacity) {
+		int c = sizes.length;
+		int count = c + 1;
+		jugglers = Arrays.copyOf(jugglers, count);
+		scores = Arrays.copyOf(scores, count);
+		joined = Arrays.copyOf(joined, count);
+		sizes = Arrays.copyOf(sizes, count);
+		capacities = Arrays.copyOf(capacities, count);
+		nextJoined = Arrays.copyOf(nextJoined, count);
+		allocate(c, capacity);
+		return c;
+	}
+
+	//moves the last juggler into slot i and restores the heap around it.
+	private void removeAt(int c, int i) {
+		int last = --sizes[c];
+		if (i == last)
+			return;
+		jugglers[c][i] = jugglers[c][last];
+		scores[c][i] = scores[c][last];
+		joined[c][i] = joined[c][last];
+		siftDown(c, i);
+		siftUp(c, i);
+	}
+
+	private void allocate(int c, int capacity) {
+		int length = Math.max(capacity, 1);
+		jugglers[c] = new int[length];
+		scores[c] = new float[length];
+		joined[c] = new int[length];
+		capacities[c] = capacity;
+	}
+
+	//true if the juggler in slot a should sit above the juggler in slot b in the heap.
+	private static boolean weaker(float[] score, int[] order, int a, int b) {
+		if (score[a] != score[b])
+			return score[a] < score[b];
+		return order[a] < order[b];
+	}
+
+	private void siftUp(int c, int i) {
+		int[] roster = jugglers[c];
+		float[] score = scores[c];
+		int[] order = joined[c];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!weaker(score, order, i, parent))
+				break;
+			swap(roster, score, order, i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int c, int i) {
+		siftDown(jugglers[c], scores[c], joined[c], sizes[c], i);
+	}
+
+	private static void siftDown(int[] roster, float[] score, int[] order, int size, int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && weaker(score, order, child + 1, child))
+				child++;
+			if (!weaker(score, order, child, i))
+				break;
+			swap(roster, score, order, i, child);
+			i = child;
+		}
+	}
+
+	private static void swap(int[] roster, float[] score, int[] order, int a, int b) {
+		int j = roster[a];
+		roster[a] = roster[b];
+		roster[b] = j;
+		float s = score[a];
+		score[a] = score[b];
+		score[b] = s;
+		int o = order[a];
+		order[a] = order[b];
+		order[b] = o;
+	}
+}
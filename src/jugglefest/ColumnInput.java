@@ -0,0 +1,81 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Class ColumnInput
+ * @author Shalini Israni
+ * Reads what a ColumnOutput wrote: maps the file a window at a time from a position on, and
+ * copies the little-endian values into arrays in bulk, adding every byte read to a checksum.
+ */
+final class ColumnInput {
+	//bytes mapped at once.
+	private static final int WINDOW_SIZE = 1 << 30;
+
+	private final FileChannel channel;
+	private final CRC32C crc;
+	private long position;
+
+	/**
+	 * Constructor
+	 * @param channel
+	 * @param crc
+	 * @param position where in the file the values start
+	 */
+	ColumnInput(FileChannel channel, CRC32C crc, long position) {
+		this.channel = channel;
+		this.crc = crc;
+		this.position = position;
+	}
+
+	int[] getInts(int count) throws IOException {
+		int[] values = new int[count];
+		for (int done = 0; done < count; ) {
+			int length = Math.min(count - done, WINDOW_SIZE / 4);
+			map(length).asIntBuffer().get(values, done, length);
+			done += length;
+		}
+		return values;
+	}
+
+	float[] getFloats(int count) throws IOException {
+		float[] values = new float[count];
+		for (int done = 0; done < count; ) {
+			int length = Math.min(count - done, WINDOW_SIZE / 4);
+			map(length).asFloatBuffer().get(values, done, length);
+			done += length;
+		}
+		return values;
+	}
+
+	/**
+	 * Go past the next bytes of the file, adding them to the checksum without copying them.
+	 * @param bytes
+	 * @throws IOException
+	 */
+	void skip(long bytes) throws IOException {
+		while (bytes > 0) {
+			long length = Math.min(bytes, WINDOW_SIZE);
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+			position += length;
+			bytes -= length;
+		}
+	}
+
+	long getPosition() {
+		return position;
+	}
+
+	//the next length values of 4 bytes.
+	private ByteBuffer map(int length) throws IOException {
+		ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * length)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		crc.update(window.duplicate());
+		position += 4L * length;
+		return window;
+	}
+}
@@ -0,0 +1,94 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Class ColumnOutput
+ * @author Shalini Israni
+ * Writes ints and floats to a file channel as little-endian values, through a direct buffer,
+ * adding every byte written to a checksum. The binary files, FestivalSnapshot and
+ * SolverCheckpoint, are written with this and read back with a ColumnInput.
+ */
+final class ColumnOutput {
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+	private final CRC32C crc;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * Constructor. Writing starts at the channel's position.
+	 * @param channel
+	 * @param crc
+	 */
+	ColumnOutput(FileChannel channel, CRC32C crc) {
+		this.channel = channel;
+		this.crc = crc;
+	}
+
+	void putInt(int value) throws IOException {
+		if (buffer.remaining() < 4)
+			flush();
+		buffer.putInt(value);
+	}
+
+	void putFloat(float value) throws IOException {
+		if (buffer.remaining() < 4)
+			flush();
+		buffer.putFloat(value);
+	}
+
+	/**
+	 * Write count entries of the array, from offset on.
+	 * @param values
+	 * @param offset
+	 * @param count
+	 * @throws IOException
+	 */
+	void putInts(int[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			if (buffer.remaining() < 4)
+				flush();
+			int length = Math.min(count, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, offset, length);
+			buffer.position(buffer.position() + 4 * length);
+			offset += length;
+			count -= length;
+		}
+	}
+
+	/**
+	 * Write count entries of the array, from offset on.
+	 * @param values
+	 * @param offset
+	 * @param count
+	 * @throws IOException
+	 */
+	void putFloats(float[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			if (buffer.remaining() < 4)
+				flush();
+			int length = Math.min(count, buffer.remaining() / 4);
+			buffer.asFloatBuffer().put(values, offset, length);
+			buffer.position(buffer.position() + 4 * length);
+			offset += length;
+			count -= length;
+		}
+	}
+
+	/**
+	 * Write out whatever is in the buffer.
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		buffer.flip();
+		crc.update(buffer.duplicate());
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -0,0 +1,341 @@
+package jugglefest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class ComponentProposalEngine
+ * @author Shalini Israni
+ * Does the pairing by ranking of makeAssignments on several threads when the festival falls
+ * apart into pieces that never meet, such as regions whose jugglers only list the circuits
+ * nearby.
+ * The jugglers and circuits are the nodes of a graph, with an edge from each juggler to each
+ * circuit on his list. Its connected components are found with a union-find over the edges,
+ * in O(number of preferences). No juggler of one component ever proposes to a circuit of
+ * another, so each component is paired on its own, with no locks, as a task on a ForkJoinPool:
+ * the biggest components first, each a task of its own, and the small ones a batch to a task.
+ * A task runs the same loop as makeAssignments on one thread, over a queue of just its
+ * component's jugglers in the order of the matching's unassigned queue. The jugglers of a
+ * component keep their order in the global queue whatever the other components do, so every
+ * circuit gets the same proposals in the same order as on one thread, and the assignment,
+ * ties and all, is exactly the same.
+ * The jugglers left over go on the matching's remaining list, for the fill phase, in the
+ * order one thread would have put them there, since that order breaks ties in the fill phase.
+ * For that, each task logs what became of every juggler it took off a queue: he found a place,
+ * he or a juggler he bumped went back on the queue, or he ran out of circuits. The one-thread
+ * queue is then replayed with just the component of each juggler on it: taking component k off
+ * the front reads k's next outcome, puts k back on the end if a juggler went back on the queue,
+ * and moves k's next left-over juggler onto the remaining list if one ran out. That is one step
+ * per proposal, without the proposals, and is skipped unless jugglers of two or more components
+ * are left over.
+ * It is only worth it if no component has most of the jugglers; split() says whether it is.
+ */
+final class ComponentProposalEngine {
+	//jugglers a task takes at least, from as many small components as it takes.
+	private static final int JUGGLERS_PER_TASK = 4096;
+	//what became of a juggler taken off a queue.
+	private static final int PLACED = 0;
+	private static final int QUEUED = 1;
+	private static final int LEFT_OVER = 2;
+
+	private final Matching matching;
+	private final Festival festival;
+	private final CircuitRosters rosters;
+	private final SolverStatistics statistics;
+	//the jugglers of the unassigned queue, component by component, each in queue order;
+	//component k's are jugglers[componentStarts[k] .. componentStarts[k + 1]).
+	private int[] jugglers;
+	private int[] componentStarts;
+	//the component of each juggler on the unassigned queue, in queue order.
+	private int[] queueComponents;
+	private int largest;
+	private long scoreCacheHits;
+
+	/**
+	 * Constructor
+	 * @param matching
+	 * @param statistics where the proposals are counted
+	 */
+	ComponentProposalEngine(Matching matching, SolverStatistics statistics) {
+		this.matching = matching;
+		this.festival = matching.getFestival();
+		this.rosters = matching.getRosters();
+		this.statistics = statistics;
+	}
+
+	/**
+	 *
+	 * @return boolean
+	 * Find the components, and which of them the jugglers on the matching's unassigned queue
+	 * are in. True if they are in more than one, and none has more than half of them, so that
+	 * run would have the work to share out; otherwise the matching is left as it was.
+	 */
+	boolean split() {
+		int[] queued = matching.getUnassigned().toArray();
+		int jugglerCount = festival.getJugglerCount();
+		//jugglers are nodes 0 .. jugglerCount - 1, circuit c is node jugglerCount + c.
+		int[] parents = new int[jugglerCount + rosters.getCircuitCount()];
+		for (int i = 0; i < parents.length; i++)
+			parents[i] = i;
+		//every juggler, not just the queued ones: one already on a circuit, such as in a
+		//matching from a checkpoint, proposes down his list again if he is bumped.
+		for (int j = 0; j < jugglerCount; j++) {
+			for (int k = festival.getPreferenceStart(j); k < festival.getPreferenceEnd(j); k++)
+				union(parents, j, jugglerCount + festival.getPreferenceCircuit(k));
+		}
+		//numbers the components in the order their first juggler is queued, and counts them.
+		int[] components = new int[parents.length];
+		Arrays.fill(components, -1);
+		int[] sizes = new int[queued.length + 1];
+		int componentCount = 0;
+		for (int j : queued) {
+			int root = find(parents, j);
+			if (components[root] < 0)
+				components[root] = componentCount++;
+			sizes[components[root]]++;
+		}
+		largest = 0;
+		for (int k = 0; k < componentCount; k++)
+			largest = Math.max(largest, sizes[k]);
+		if (componentCount < 2 || largest > queued.length / 2)
+			return false;
+		componentStarts = new int[componentCount + 1];
+		for (int k = 0; k < componentCount; k++)
+			componentStarts[k + 1] = componentStarts[k] + sizes[k];
+		int[] next = Arrays.copyOf(componentStarts, componentCount);
+		jugglers = new int[queued.length];
+		queueComponents = new int[queued.length];
+		for (int i = 0; i < queued.length; i++) {
+			int k = components[find(parents, queued[i])];
+			jugglers[next[k]++] = queued[i];
+			queueComponents[i] = k;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @return int
+	 * The number of components split found, or 0 if it found the festival doesn't split.
+	 */
+	int getComponentCount() {
+		return componentStarts == null ? 0 : componentStarts.length - 1;
+	}
+
+	/**
+	 *
+	 * @return int
+	 * The number of jugglers in the biggest component.
+	 */
+	int getLargestComponent() {
+		return largest;
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of match values read from the cache by the proposals.
+	 */
+	long getScoreCacheHits() {
+		return scoreCacheHits;
+	}
+
+	/**
+	 * Pair every component found by split on the given number of threads, and return once
+	 * every juggler has a circuit or is on the remaining list.
+	 * @param threads
+	 */
+	void run(int threads) {
+		matching.getUnassigned().clear();
+		int componentCount = getComponentCount();
+		//the biggest components first, so that they don't start last and hold up the end.
+		Integer[] order = new Integer[componentCount];
+		for (int k = 0; k < componentCount; k++)
+			order[k] = k;
+		Arrays.sort(order, (a, b) -> Integer.compare(size(b), size(a)));
+		List<int[]> batches = new ArrayList<int[]>();
+		int from = 0;
+		while (from < componentCount) {
+			int to = from, count = 0;
+			while (to < componentCount && count < JUGGLERS_PER_TASK)
+				count += size(order[to++]);
+			int[] batch = new int[to - from];
+			for (int i = from; i < to; i++)
+				batch[i - from] = order[i];
+			batches.add(batch);
+			from = to;
+		}
+		int[] chain = matching instanceof MappedMatching ? null : new int[festival.getJugglerCount()];
+		IntQueue[] remainders = new IntQueue[batches.size()];
+		OutcomeLog[] logs = new OutcomeLog[batches.size()];
+		long[][] counts = new long[batches.size()][];
+		//for each component, its task, and where its outcomes and left-over jugglers start in
+		//the task's log and remainder.
+		int[] tasksOf = new int[componentCount];
+		long[] logStarts = new long[componentCount];
+		int[] remainderStarts = new int[componentCount];
+		boolean[] leftOvers = new boolean[componentCount];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			for (int b = 0; b < remainders.length; b++) {
+				final int task = b;
+				final int[] batch = batches.get(b);
+				tasks.add(pool.submit(() -> {
+					IntQueue remaining = new IntQueue(16);
+					OutcomeLog log = new OutcomeLog();
+					//score cache hits, proposals, acceptances, bumps and longest chain of bumps.
+					long[] taskCounts = new long[5];
+					for (int k : batch) {
+						tasksOf[k] = task;
+						logStarts[k] = log.size();
+						remainderStarts[k] = remaining.size();
+						propose(k, remaining, log, chain, taskCounts);
+						leftOvers[k] = remaining.size() > remainderStarts[k];
+					}
+					remainders[task] = remaining;
+					logs[task] = log;
+					counts[task] = taskCounts;
+				}));
+			}
+			for (ForkJoinTask<?> task : tasks)
+				task.join();
+		} finally {
+			pool.shutdown();
+		}
+		int[][] left = new int[remainders.length][];
+		for (int b = 0; b < remainders.length; b++) {
+			left[b] = remainders[b].toArray();
+			scoreCacheHits += counts[b][0];
+			statistics.addProposals(counts[b][1], counts[b][2], counts[b][3], counts[b][4]);
+		}
+		int leftOverComponents = 0;
+		for (int k = 0; k < componentCount; k++) {
+			if (leftOvers[k])
+				leftOverComponents++;
+		}
+		IntQueue remaining = matching.getRemaining();
+		if (leftOverComponents < 2) {
+			for (int[] jugglersLeft : left) {
+				for (int j : jugglersLeft)
+					remaining.add(j);
+			}
+			return;
+		}
+		IntQueue queue = new IntQueue(queueComponents.length);
+		for (int k : queueComponents)
+			queue.add(k);
+		while (!queue.isEmpty()) {
+			int k = queue.poll();
+			int outcome = logs[tasksOf[k]].get(logStarts[k]++);
+			if (outcome == QUEUED)
+				queue.add(k);
+			else if (outcome == LEFT_OVER)
+				remaining.add(left[tasksOf[k]][remainderStarts[k]++]);
+		}
+	}
+
+	private int size(int k) {
+		return componentStarts[k + 1] - componentStarts[k];
+	}
+
+	//Pairs component k, the way makeAssignments does on one thread: each juggler taken off the
+	//queue makes one proposal, and goes to the back of it if he is turned down, as does any
+	//juggler he bumps. Logs what became of each, and adds to counts as ConcurrentProposalEngine
+	//does.
+	private void propose(int k, IntQueue remaining, OutcomeLog log, int[] chain, long[] counts) {
+		IntQueue unassigned = new IntQueue(Math.max(16, size(k)));
+		for (int i = componentStarts[k]; i < componentStarts[k + 1]; i++)
+			unassigned.add(jugglers[i]);
+		long hits = 0, proposals = 0, acceptances = 0, bumps = 0, longestChain = counts[4];
+		while (!unassigned.isEmpty()) {
+			int j = unassigned.poll();
+			int position = matching.getNextPreference(j);
+			if (position >= festival.getPreferenceEnd(j)) {
+				remaining.add(j);
+				log.add(LEFT_OVER);
+				continue;
+			}
+			int c = festival.getPreferenceCircuit(position);
+			float match = festival.getPreferenceScore(position);
+			hits++;
+			matching.setNextPreference(j, position + 1);
+			proposals++;
+			if (!rosters.isFull(c)) {
+				rosters.add(c, j, match);
+				matching.setAssignedCircuit(j, c);
+				acceptances++;
+				log.add(PLACED);
+			} else if (rosters.size(c) > 0 && rosters.peekWorstScore(c) <= match) {
+				hits++;
+				int jWorst = rosters.replaceWorst(c, j, match);
+				matching.setAssignedCircuit(j, c);
+				matching.setAssignedCircuit(jWorst, -1);
+				unassigned.add(jWorst);
+				log.add(QUEUED);
+				acceptances++;
+				bumps++;
+				if (chain != null) {
+					chain[jWorst] = chain[j] + 1;
+					longestChain = Math.max(longestChain, chain[jWorst]);
+				}
+			} else {
+				if (rosters.size(c) > 0)
+					hits++;
+				unassigned.add(j);
+				log.add(QUEUED);
+			}
+		}
+		counts[0] += hits;
+		counts[1] += proposals;
+		counts[2] += acceptances;
+		counts[3] += bumps;
+		counts[4] = longestChain;
+	}
+
+	//Outcomes of the jugglers a task took off its queues, PLACED, QUEUED or LEFT_OVER, in the
+	//order it took them, two bits each.
+	private static final class OutcomeLog {
+		private long[] words = new long[16];
+		private long size;
+
+		long size() {
+			return size;
+		}
+
+		void add(int outcome) {
+			int word = (int) (size >>> 5);
+			if (word == words.length)
+				words = Arrays.copyOf(words, word * 2);
+			words[word] |= (long) outcome << ((size & 31) << 1);
+			size++;
+		}
+
+		int get(long i) {
+			return (int) (words[(int) (i >>> 5)] >>> ((i & 31) << 1)) & 3;
+		}
+	}
+
+	//the root of node i's tree, halving the path on the way.
+	private static int find(int[] parents, int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	//joins the trees of nodes a and b, under the higher of their roots.
+	private static void union(int[] parents, int a, int b) {
+		int rootA = find(parents, a), rootB = find(parents, b);
+		if (rootA == rootB)
+			return;
+		if (rootA < rootB)
+			parents[rootA] = rootB;
+		else
+			parents[rootB] = rootA;
+	}
+}
@@ -0,0 +1,158 @@
+package jugglefest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class ConcurrentProposalEngine
+ * @author Shalini Israni
+ * Does the pairing by ranking of makeAssignments on several threads.
+ * Proposals to different circuits don't affect each other, so each thread takes the next
+ * unassigned juggler and has him propose down his list, locking only the circuit he proposes to.
+ * When he bumps a juggler off a circuit, the same thread carries on with the bumped juggler
+ * (McVitie and Wilson's way of doing deferred acceptance) instead of putting him back on a shared
+ * queue, until a juggler lands on a circuit with room or runs out of circuits.
+ * A juggler is only ever in the hands of one thread, and he is handed over while the circuit's
+ * lock is held, so his position in his list needs no lock of its own.
+ * Deferred acceptance ends with the same assignment whatever order the proposals are made in,
+ * as long as no circuit has to choose between two jugglers with the same match value, so on
+ * such inputs the result is the same as makeAssignments on one thread. Remaining jugglers are
+ * sorted by index, which keeps the fill phase deterministic too.
+ * Each thread counts its proposals, acceptances and bumps, and its longest chain of bumps, in
+ * local variables, and adds them to the SolverStatistics when it runs out of jugglers.
+ */
+final class ConcurrentProposalEngine {
+	private final Matching matching;
+	private final Festival festival;
+	private final CircuitRosters rosters;
+	//one lock per circuit roster.
+	private final Object[] locks;
+	private final AtomicLong scoreCacheHits = new AtomicLong();
+	private final SolverStatistics statistics;
+
+	/**
+	 * Constructor
+	 * @param matching
+	 * @param statistics where the proposals are counted
+	 */
+	public ConcurrentProposalEngine(Matching matching, SolverStatistics statistics) {
+		this.matching = matching;
+		this.statistics = statistics;
+		this.festival = matching.getFestival();
+		this.rosters = matching.getRosters();
+		this.locks = new Object[rosters.getCircuitCount()];
+		for (int c = 0; c < locks.length; c++)
+			locks[c] = new Object();
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of match values read from the cache by the proposals.
+	 */
+	public long getScoreCacheHits() {
+		return scoreCacheHits.get();
+	}
+
+	/**
+	 * Propose for every juggler on the matching's unassigned queue, on the given number of
+	 * threads, and return once they all have a circuit or are on the remaining list.
+	 * @param threads
+	 */
+	public void run(int threads) {
+		IntQueue unassigned = matching.getUnassigned();
+		final int[] jugglers = unassigned.toArray();
+		unassigned.clear();
+		final AtomicInteger next = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<IntQueue>> workers = new ArrayList<Future<IntQueue>>();
+		try {
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit(() -> {
+					IntQueue remaining = new IntQueue(16);
+					//score cache hits, proposals, acceptances, bumps and longest chain of bumps.
+					long[] counts = new long[5];
+					for (int i = next.getAndIncrement(); i < jugglers.length; i = next.getAndIncrement())
+						propose(jugglers[i], remaining, counts);
+					scoreCacheHits.addAndGet(counts[0]);
+					statistics.addProposals(counts[1], counts[2], counts[3], counts[4]);
+					return remaining;
+				}));
+			}
+			List<int[]> remainders = new ArrayList<int[]>();
+			int total = 0;
+			for (Future<IntQueue> worker : workers) {
+				int[] remainder = worker.get().toArray();
+				remainders.add(remainder);
+				total += remainder.length;
+			}
+			int[] remaining = new int[total];
+			int count = 0;
+			for (int[] remainder : remainders) {
+				System.arraycopy(remainder, 0, remaining, count, remainder.length);
+				count += remainder.length;
+			}
+			Arrays.sort(remaining);
+			for (int j : remaining)
+				matching.getRemaining().add(j);
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while making assignments", interruptedException);
+		} catch (ExecutionException executionException) {
+			throw new IllegalStateException("Proposal thread failed", executionException.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	//Has juggler j propose down his list, then every juggler he bumps, and so on, until one of
+	//them finds a circuit with room or runs out of circuits. Adds the number of cached match
+	//values read, proposals, acceptances and bumps to counts, and keeps the longest chain of
+	//bumps in counts[4].
+	private void propose(int j, IntQueue remaining, long[] counts) {
+		long hits = 0, proposals = 0, acceptances = 0, chain = 0;
+		while (j >= 0) {
+			int position = matching.getNextPreference(j);
+			if (position >= festival.getPreferenceEnd(j)) {
+				remaining.add(j);
+				break;
+			}
+			int c = festival.getPreferenceCircuit(position);
+			float match = festival.getPreferenceScore(position);
+			hits++;
+			proposals++;
+			matching.setNextPreference(j, position + 1);
+			synchronized (locks[c]) {
+				if (!rosters.isFull(c)) {
+					rosters.add(c, j, match);
+					matching.setAssignedCircuit(j, c);
+					acceptances++;
+					j = -1;
+				} else if (rosters.size(c) > 0 && rosters.peekWorstScore(c) <= match) {
+					hits++;
+					int jWorst = rosters.replaceWorst(c, j, match);
+					matching.setAssignedCircuit(j, c);
+					matching.setAssignedCircuit(jWorst, -1);
+					acceptances++;
+					chain++;
+					j = jWorst;
+				} else if (rosters.size(c) > 0) {
+					hits++;
+				}
+			}
+		}
+		counts[0] += hits;
+		counts[1] += proposals;
+		counts[2] += acceptances;
+		//every bump in the chain is one of the bumps.
+		counts[3] += chain;
+		counts[4] = Math.max(counts[4], chain);
+	}
+}
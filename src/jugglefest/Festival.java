@@ -0,0 +1,350 @@
+package jugglefest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class Festival
+ * @author Shalini Israni
+ * Everything loaded from an input file, in a compact form: the circuit catalog, and the jugglers
+ * stored column by column, indexed by a dense juggler index (the order of the J lines).
+ * A Juggler object with an ArrayList of Preference objects costs a few hundred bytes per juggler,
+ * which adds up quickly on large festivals. Here a juggler is three floats and a number, and all
+ * preference lists share one flat int array of circuit indexes. Juggler j's preferences are the
+ * entries from getPreferenceStart(j) up to getPreferenceEnd(j), best first.
+ * A juggler's name is kept as its number, the same way CircuitCatalog keeps circuit names; a
+ * name written any other way, such as J007, is kept as it is, with -1 for the number.
+ * Next to every preference I keep the juggler's match value for that circuit, calculated once
+ * when the juggler is added, the same way Preference does, by a ScoreKernel for the whole list
+ * at once.
+ * A MappedFestival keeps the jugglers in a mapped snapshot file instead, for festivals that
+ * don't fit in the heap, and overrides the getters; so the methods here that aren't getters go
+ * through the getters rather than the arrays.
+ */
+class Festival {
+	//calculates the match values of a juggler's preferences all at once.
+	private static final ScoreKernel KERNEL = ScoreKernel.get();
+
+	private final CircuitCatalog circuits;
+
+	private int jugglerCount;
+	private int[] jugglerNumbers;
+	private float[] handEyeCoord;
+	private float[] endurance;
+	private float[] pizzazz;
+
+	//juggler j's preferences are preferenceCircuits[preferenceOffsets[j] .. preferenceOffsets[j+1])
+	private int[] preferenceOffsets;
+	private int[] preferenceCircuits;
+	private float[] preferenceScores;
+
+	//jugglers that have withdrawn keep their index and preferences, but take no part in a
+	//matching. Allocated on the first withdrawal.
+	private boolean[] withdrawn;
+	private int withdrawnCount;
+	//names of the jugglers without a number, by index. Made when the first one is added.
+	private Map<Integer, String> names;
+	//juggler number, or name for those without one -> index of the last juggler loaded with
+	//it who has not withdrawn. Built the first time a juggler is looked up.
+	private IntIntMap indexByNumber;
+	private Map<String, Integer> indexByName;
+
+	/**
+	 * Constructor
+	 */
+	public Festival() {
+		this(new CircuitCatalog());
+	}
+
+	/**
+	 * Constructor
+	 * @param circuits
+	 */
+	public Festival(CircuitCatalog circuits) {
+		this.circuits = circuits;
+		this.jugglerNumbers = new int[16];
+		this.handEyeCoord = new float[16];
+		this.endurance = new float[16];
+		this.pizzazz = new float[16];
+		this.preferenceOffsets = new int[17];
+		this.preferenceCircuits = new int[64];
+		this.preferenceScores = new float[64];
+	}
+
+	/**
+	 * Constructor for jugglers that were loaded before, such as from a FestivalSnapshot, with
+	 * their match values already calculated. The first jugglerCount entries of the juggler
+	 * arrays, and jugglerCount + 1 of preferenceOffsets, are used. The arrays are kept, not
+	 * copied.
+	 * @param circuits
+	 * @param jugglerCount
+	 * @param jugglerNumbers
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @param preferenceOffsets
+	 * @param preferenceCircuits
+	 * @param preferenceScores
+	 */
+	Festival(CircuitCatalog circuits, int jugglerCount, int[] jugglerNumbers, float[] handEyeCoord,
+			float[] endurance, float[] pizzazz, int[] preferenceOffsets, int[] preferenceCircuits,
+			float[] preferenceScores) {
+		this.circuits = circuits;
+		this.jugglerCount = jugglerCount;
+		this.jugglerNumbers = jugglerNumbers;
+		this.handEyeCoord = handEyeCoord;
+		this.endurance = endurance;
+		this.pizzazz = pizzazz;
+		this.preferenceOffsets = preferenceOffsets;
+		this.preferenceCircuits = preferenceCircuits;
+		this.preferenceScores = preferenceScores;
+		//addJuggler doubles the arrays when they are full, which needs them to have a length.
+		if (jugglerNumbers.length == 0) {
+			this.jugglerNumbers = new int[16];
+			this.handEyeCoord = new float[16];
+			this.endurance = new float[16];
+			this.pizzazz = new float[16];
+			this.preferenceOffsets = Arrays.copyOf(preferenceOffsets, 17);
+		}
+	}
+
+	/**
+	 *
+	 * @param number
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @param preferences circuit indexes, best first
+	 * @param preferenceCount how many entries of preferences to use
+	 * @return int the index of the new juggler.
+	 * Adds a juggler along with his preference list, and calculates his match value for each
+	 * of the circuits in it. A number of -1 is for a juggler setJugglerName names next.
+	 */
+	public int addJuggler(int number, float handEyeCoord, float endurance, float pizzazz,
+			int[] preferences, int preferenceCount) {
+		if (jugglerCount == jugglerNumbers.length) {
+			int capacity = jugglerCount * 2;
+			jugglerNumbers = Arrays.copyOf(jugglerNumbers, capacity);
+			this.handEyeCoord = Arrays.copyOf(this.handEyeCoord, capacity);
+			this.endurance = Arrays.copyOf(this.endurance, capacity);
+			this.pizzazz = Arrays.copyOf(this.pizzazz, capacity);
+			preferenceOffsets = Arrays.copyOf(preferenceOffsets, capacity + 1);
+		}
+		int j = jugglerCount;
+		int start = preferenceOffsets[j];
+		int end = start + preferenceCount;
+		ensurePreferenceCapacity(end);
+		jugglerNumbers[j] = number;
+		this.handEyeCoord[j] = handEyeCoord;
+		this.endurance[j] = endurance;
+		this.pizzazz[j] = pizzazz;
+		System.arraycopy(preferences, 0, preferenceCircuits, start, preferenceCount);
+		KERNEL.scoreCircuits(handEyeCoord, endurance, pizzazz, circuits.getHandEyeCoordColumn(),
+				circuits.getEnduranceColumn(), circuits.getPizzazzColumn(), preferences, 0, preferenceCount,
+				preferenceScores, start);
+		preferenceOffsets[j + 1] = end;
+		jugglerCount++;
+		if (indexByNumber != null && number >= 0)
+			indexByNumber.put(number, j);
+		return j;
+	}
+
+	/**
+	 * The same, by name, for a name that may not be a 'J' and a number written the usual way.
+	 * @param name
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @param preferences circuit indexes, best first
+	 * @param preferenceCount how many entries of preferences to use
+	 * @return int the index of the new juggler.
+	 */
+	public int addJuggler(String name, float handEyeCoord, float endurance, float pizzazz,
+			int[] preferences, int preferenceCount) {
+		int number = CircuitCatalog.numberOf(name, 'J');
+		int j = addJuggler(number, handEyeCoord, endurance, pizzazz, preferences, preferenceCount);
+		if (number < 0)
+			setJugglerName(j, name);
+		return j;
+	}
+
+	/**
+	 * Give juggler j, who has no number, his name.
+	 * @param j
+	 * @param name
+	 */
+	void setJugglerName(int j, String name) {
+		if (names == null)
+			names = new HashMap<Integer, String>();
+		names.put(j, name);
+		if (indexByName != null)
+			indexByName.put(name, j);
+	}
+
+	/**
+	 * Adds all the jugglers of another festival after the ones already here, in order, with
+	 * their preferences and match values. The other festival must use the same circuit
+	 * catalog, so that its circuit indexes mean the same circuits.
+	 * @param other
+	 */
+	public void addAll(Festival other) {
+		if (other.circuits != circuits)
+			throw new IllegalArgumentException("Festivals have different circuit catalogs");
+		int count = other.jugglerCount;
+		int total = jugglerCount + count;
+		if (total > jugglerNumbers.length) {
+			int capacity = Math.max(total, jugglerNumbers.length * 2);
+			jugglerNumbers = Arrays.copyOf(jugglerNumbers, capacity);
+			this.handEyeCoord = Arrays.copyOf(this.handEyeCoord, capacity);
+			this.endurance = Arrays.copyOf(this.endurance, capacity);
+			this.pizzazz = Arrays.copyOf(this.pizzazz, capacity);
+			preferenceOffsets = Arrays.copyOf(preferenceOffsets, capacity + 1);
+		}
+		System.arraycopy(other.jugglerNumbers, 0, jugglerNumbers, jugglerCount, count);
+		System.arraycopy(other.handEyeCoord, 0, this.handEyeCoord, jugglerCount, count);
+		System.arraycopy(other.endurance, 0, this.endurance, jugglerCount, count);
+		System.arraycopy(other.pizzazz, 0, this.pizzazz, jugglerCount, count);
+		int start = getPreferenceCount();
+		int added = other.getPreferenceCount();
+		ensurePreferenceCapacity(start + added);
+		System.arraycopy(other.preferenceCircuits, 0, preferenceCircuits, start, added);
+		System.arraycopy(other.preferenceScores, 0, preferenceScores, start, added);
+		for (int j = 1; j <= count; j++)
+			preferenceOffsets[jugglerCount + j] = start + other.preferenceOffsets[j];
+		if (other.names != null) {
+			for (Map.Entry<Integer, String> name : other.names.entrySet())
+				setJugglerName(jugglerCount + name.getKey(), name.getValue());
+		}
+		jugglerCount = total;
+		indexByNumber = null;
+		indexByName = null;
+	}
+
+	/**
+	 * Take juggler j out of the festival. He keeps his index, so no other juggler's index
+	 * changes, but a Matching leaves him out from then on.
+	 * @param j
+	 */
+	public void withdrawJuggler(int j) {
+		if (isWithdrawn(j))
+			return;
+		if (withdrawn == null || withdrawn.length < getJugglerCount()) {
+			int capacity = Math.max(getJugglerCount(), withdrawn == null ? 0 : withdrawn.length * 2);
+			withdrawn = withdrawn == null ? new boolean[capacity] : Arrays.copyOf(withdrawn, capacity);
+		}
+		withdrawn[j] = true;
+		withdrawnCount++;
+		if (indexByNumber != null && indexOfJuggler(getJugglerName(j)) == j) {
+			if (getJugglerNumber(j) >= 0)
+				indexByNumber.remove(getJugglerNumber(j));
+			else
+				indexByName.remove(getJugglerName(j));
+		}
+	}
+
+	public boolean isWithdrawn(int j) {
+		return withdrawn != null && j < withdrawn.length && withdrawn[j];
+	}
+
+	/**
+	 *
+	 * @param number
+	 * @return int
+	 * The index of the last juggler J<number> added who has not withdrawn, or -1.
+	 */
+	public int indexOfJuggler(int number) {
+		if (indexByNumber == null) {
+			indexByNumber = new IntIntMap(getJugglerCount());
+			indexByName = new HashMap<String, Integer>();
+			for (int j = 0; j < getJugglerCount(); j++) {
+				if (isWithdrawn(j))
+					continue;
+				if (getJugglerNumber(j) >= 0)
+					indexByNumber.put(getJugglerNumber(j), j);
+				else
+					indexByName.put(getJugglerName(j), j);
+			}
+		}
+		return indexByNumber.get(number);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @return int
+	 * The index of the last juggler added with the name who has not withdrawn, or -1.
+	 */
+	public int indexOfJuggler(String name) {
+		int number = CircuitCatalog.numberOf(name, 'J');
+		int j = indexOfJuggler(number);
+		if (number >= 0)
+			return j;
+		Integer index = indexByName.get(name);
+		return index == null ? -1 : index;
+	}
+
+	private void ensurePreferenceCapacity(int capacity) {
+		if (capacity > preferenceCircuits.length) {
+			capacity = Math.max(capacity, preferenceCircuits.length * 2);
+			preferenceCircuits = Arrays.copyOf(preferenceCircuits, capacity);
+			preferenceScores = Arrays.copyOf(preferenceScores, capacity);
+		}
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @param c
+	 * @return dot product
+	 * Juggler j's match value for circuit c. Same calculation as JuggleFest.match, on the columns.
+	 */
+	public float calculateMatch(int j, int c) {
+		return ( (getHandEyeCoord(j)*circuits.getHandEyeCoord(c)) + (getEndurance(j)*circuits.getEndurance(c)) + getPizzazz(j)*circuits.getPizzazz(c));
+	}
+
+	public CircuitCatalog getCircuits() {
+		return circuits;
+	}
+	public int getCircuitCount() {
+		return circuits.size();
+	}
+	public int getJugglerCount() {
+		return jugglerCount;
+	}
+	//jugglers that have not withdrawn.
+	public int getActiveJugglerCount() {
+		return getJugglerCount() - withdrawnCount;
+	}
+	public int getJugglerNumber(int j) {
+		return jugglerNumbers[j];
+	}
+	public String getJugglerName(int j) {
+		int number = getJugglerNumber(j);
+		return number >= 0 ? "J" + number : names.get(j);
+	}
+	public float getHandEyeCoord(int j) {
+		return handEyeCoord[j];
+	}
+	public float getEndurance(int j) {
+		return endurance[j];
+	}
+	public float getPizzazz(int j) {
+		return pizzazz[j];
+	}
+	public int getPreferenceCount() {
+		return preferenceOffsets[jugglerCount];
+	}
+	public int getPreferenceStart(int j) {
+		return preferenceOffsets[j];
+	}
+	public int getPreferenceEnd(int j) {
+		return preferenceOffsets[j + 1];
+	}
+	public int getPreferenceCircuit(int i) {
+		return preferenceCircuits[i];
+	}
+	public float getPreferenceScore(int i) {
+		return preferenceScores[i];
+	}
+}
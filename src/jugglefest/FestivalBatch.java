@@ -0,0 +1,192 @@
+package jugglefest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Class FestivalBatch
+ * @author Shalini Israni
+ * Solves many festival files in one JVM, each with a JuggleFest of its own, so a nightly run
+ * over thousands of small festivals pays for starting a JVM once instead of once per file.
+ * The inputs are the files in a directory, or the files listed in a manifest, one path per
+ * line. Each one's assignments are written next to it, or to an output directory, as the
+ * input's name without its extension followed by OUTPUT_SUFFIX.
+ * At most a given number of festivals are solved at a time, on a fixed pool of threads, so
+ * no more than that many festivals are in memory at once however many files there are.
+ * A file that can't be loaded, solved or written is reported with the reason, and the others
+ * carry on. Each result is printed on a line of its own as it finishes.
+ */
+final class FestivalBatch {
+	static final String OUTPUT_SUFFIX = "-assignments.txt";
+
+	private final List<Path> inputs;
+	private final Path outputDirectory;
+	private final int concurrency;
+	private final int threads;
+	private final boolean metrics;
+	private final PrintStream report;
+
+	/**
+	 * Constructor
+	 * @param inputs
+	 * @param outputDirectory where the assignments go, or null for next to each input
+	 * @param concurrency how many festivals are solved at a time
+	 * @param threads how many threads each festival is loaded, solved and written with
+	 * @param metrics whether to add each festival's SolverMetrics summary to its line
+	 * @param report where the results are printed
+	 */
+	FestivalBatch(List<Path> inputs, Path outputDirectory, int concurrency, int threads, boolean metrics,
+			PrintStream report) {
+		if (concurrency < 1 || threads < 1)
+			throw new IllegalArgumentException("The number of festivals at a time and of threads must be positive");
+		this.inputs = inputs;
+		this.outputDirectory = outputDirectory;
+		this.concurrency = concurrency;
+		this.threads = threads;
+		this.metrics = metrics;
+		this.report = report;
+	}
+
+	/**
+	 *
+	 * @param source a directory, or a manifest file
+	 * @return List
+	 * The input files of a directory, in name order, leaving out hidden files and the outputs
+	 * of an earlier batch; or the files listed in a manifest, in order, one path per line,
+	 * relative to the manifest's directory, skipping empty lines and lines starting with #.
+	 * @throws IOException
+	 */
+	static List<Path> listInputs(Path source) throws IOException {
+		if (Files.isDirectory(source)) {
+			try (Stream<Path> files = Files.list(source)) {
+				return files.filter(Files::isRegularFile)
+						.filter(file -> !file.getFileName().toString().startsWith("."))
+						.filter(file -> !file.getFileName().toString().endsWith(OUTPUT_SUFFIX))
+						.sorted()
+						.collect(Collectors.toList());
+			}
+		}
+		Path directory = source.toAbsolutePath().getParent();
+		List<Path> inputs = new ArrayList<Path>();
+		for (String line : Files.readAllLines(source, StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#"))
+				inputs.add(directory.resolve(line));
+		}
+		return inputs;
+	}
+
+	/**
+	 *
+	 * @param input
+	 * @param outputDirectory or null
+	 * @return Path
+	 * Where the assignments of an input file are written.
+	 */
+	static Path outputFor(Path input, Path outputDirectory) {
+		String name = input.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		Path directory = outputDirectory != null ? outputDirectory : input.toAbsolutePath().getParent();
+		return directory.resolve(name + OUTPUT_SUFFIX);
+	}
+
+	/**
+	 * Solve every input, and print a line for each one as it finishes, then a total.
+	 * @return int the number of inputs that failed.
+	 */
+	int run() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+			Thread thread = new Thread(runnable, "jugglefest-batch-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<String> results = new ExecutorCompletionService<String>(executor);
+		int failed = 0;
+		try {
+			//two inputs with the same name in different directories would write the same output.
+			Map<Path, Path> outputs = new HashMap<Path, Path>();
+			int submitted = 0;
+			for (Path input : inputs) {
+				Path output = outputFor(input, outputDirectory);
+				Path first = outputs.putIfAbsent(output, input);
+				if (first != null) {
+					report.println("FAILED " + input + ": its output " + output + " is already the output of " + first);
+					failed++;
+					continue;
+				}
+				results.submit(() -> solve(input, output));
+				submitted++;
+			}
+			for (int i = 0; i < submitted; i++) {
+				String result;
+				try {
+					result = results.take().get();
+				} catch (ExecutionException executionException) {
+					result = "FAILED " + executionException.getCause();
+				}
+				if (result.startsWith("FAILED"))
+					failed++;
+				report.println(result);
+			}
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			report.println("Interrupted; the festivals that were not finished have no assignments");
+		} finally {
+			executor.shutdownNow();
+		}
+		report.println("Solved " + (inputs.size() - failed) + " of " + inputs.size() + " festivals, "
+				+ failed + " failed");
+		return failed;
+	}
+
+	//loads, solves and writes one festival, and returns its line of the report.
+	private String solve(Path input, Path output) {
+		long start = System.nanoTime();
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		PrintStream messages = new PrintStream(captured, true, StandardCharsets.UTF_8);
+		try {
+			if (!Files.isRegularFile(input))
+				return "FAILED " + input + ": no such file";
+			JuggleFest juggleFest = new JuggleFest();
+			juggleFest.setMessages(messages);
+			if (!juggleFest.loadFile(input.toString(), threads))
+				return "FAILED " + input + ": " + message(captured, "it could not be loaded");
+			if (juggleFest.makeAssignments(threads) == null)
+				return "FAILED " + input + ": it has no circuits";
+			juggleFest.outputAssignments(output, threads);
+			long millis = (System.nanoTime() - start) / 1_000_000;
+			return "OK " + input + " -> " + output + " (" + millis + " ms)"
+					+ (metrics ? " " + juggleFest.getMetrics().getSummary() : "");
+		} catch (IOException | RuntimeException exception) {
+			return "FAILED " + input + ": " + exception;
+		} catch (OutOfMemoryError outOfMemoryError) {
+			//the festival is dropped with this thread's stack, so the others can carry on.
+			return "FAILED " + input + ": out of memory; solve fewer festivals at a time";
+		}
+	}
+
+	//what the JuggleFest printed, on one line, or the default if it printed nothing.
+	private static String message(ByteArrayOutputStream captured, String otherwise) {
+		String message = captured.toString(StandardCharsets.UTF_8).trim().replace(System.lineSeparator(), "; ");
+		return message.isEmpty() ? otherwise : message;
+	}
+}
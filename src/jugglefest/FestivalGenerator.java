@@ -0,0 +1,442 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Class FestivalGenerator
+ * @author Shalini Israni
+ * Writes a made up festival in the input format, the C lines and then the J lines, for trying
+ * makeAssignments on shapes that test-large.txt doesn't have. The same seed and settings
+ * always give the same file.
+ * - circuit popularity can follow a Zipf distribution: the circuit of popularity rank r is
+ *   picked with a weight of 1/r^s, so with a large s nearly everyone ranks the same few
+ *   circuits, which makes for long chains of bumps. The ranks are shuffled, so the popular
+ *   circuits are spread through the file. With s = 0 every circuit is as likely.
+ * - skills can be correlated: every juggler has a talent, and each of his skills is that
+ *   much talent and the rest chance. With a correlation of 1 all three skills are the same.
+ * - preference lists can be of different lengths, from a minimum to a maximum. A juggler
+ *   never ranks the same circuit twice: each circuit on his list is picked from the ones not
+ *   on it yet, with their popularity. A pick is first tried a few times from all the circuits,
+ *   which is quick when the ones on his list aren't most of the popularity; if it keeps landing
+ *   on those, it is made from a Fenwick tree of the popularity of the others instead.
+ * - the festival can be split into regions: circuit c is in region c % regions, every
+ *   juggler is in a region, and he only ranks circuits in it, so the jugglers and circuits
+ *   of different regions never meet. A popular circuit's neighbours in the other regions are
+ *   popular in theirs.
+ * Jugglers are written as they are made up, so the memory used depends on the number of
+ * circuits and not on the number of jugglers, and files of a hundred million jugglers can be
+ * made on a laptop.
+ * Sample call: java jugglefest.FestivalGenerator -jugglers 12000 -circuits 2000 -o festival.txt
+ *              java jugglefest.FestivalGenerator -seed 7 -jugglers 100000000 -circuits 100000
+ *                   -preferences 1 20 -zipf 1.1 -correlation 0.6 -o big.txt
+ *              java jugglefest.FestivalGenerator -jugglers 1000000 -circuits 20000 -regions 500
+ *                   -o regional.txt
+ */
+public final class FestivalGenerator {
+	//skills go from 0 to this, like in the test files.
+	private static final int MAX_SKILL = 10;
+	private static final int BUFFER_SIZE = 1 << 16;
+	//picks from all the circuits tried before picking from the ones a juggler hasn't ranked.
+	private static final int MAX_TRIES = 8;
+
+	private final long seed;
+	private final int circuitCount;
+	private final long jugglerCount;
+	private int minPreferences = 10;
+	private int maxPreferences = 10;
+	private double zipfExponent;
+	private double correlation;
+	private int regions = 1;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int size;
+
+	/**
+	 * Constructor. By default every juggler ranks 10 circuits, circuits are equally popular
+	 * and skills are independent.
+	 * @param seed
+	 * @param circuitCount
+	 * @param jugglerCount
+	 */
+	public FestivalGenerator(long seed, int circuitCount, long jugglerCount) {
+		if (circuitCount < 1 || jugglerCount < 0)
+			throw new IllegalArgumentException("Need at least one circuit, and no fewer than zero jugglers");
+		this.seed = seed;
+		this.circuitCount = circuitCount;
+		this.jugglerCount = jugglerCount;
+	}
+
+	/**
+	 * Every juggler ranks between min and max circuits, as many circuits as there are at most.
+	 * @param min
+	 * @param max
+	 */
+	public void setPreferences(int min, int max) {
+		if (min < 1 || max < min)
+			throw new IllegalArgumentException("Preferences must be at least 1, and max at least min");
+		this.minPreferences = Math.min(min, circuitCount);
+		this.maxPreferences = Math.min(max, circuitCount);
+	}
+
+	/**
+	 * The exponent s of the Zipf distribution of circuit popularity; 0 for uniform.
+	 * @param exponent
+	 */
+	public void setZipfExponent(double exponent) {
+		if (exponent < 0)
+			throw new IllegalArgumentException("The Zipf exponent can't be negative");
+		this.zipfExponent = exponent;
+	}
+
+	/**
+	 * How much of each skill is the juggler's talent, from 0 (skills are independent) to 1
+	 * (all three skills are the same).
+	 * @param correlation
+	 */
+	public void setCorrelation(double correlation) {
+		if (correlation < 0 || correlation > 1)
+			throw new IllegalArgumentException("The correlation must be between 0 and 1");
+		this.correlation = correlation;
+	}
+
+	/**
+	 * The number of regions, from 1 (everyone can rank every circuit) to the number of
+	 * circuits. Preference lists are cut to the number of circuits in a region.
+	 * @param regions
+	 */
+	public void setRegions(int regions) {
+		if (regions < 1 || regions > circuitCount)
+			throw new IllegalArgumentException("The regions must be from 1 to the number of circuits");
+		this.regions = regions;
+	}
+
+	/**
+	 * Write the festival to a file, replacing what was in it.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Write the festival to a stream, which is flushed and left open.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws IOException {
+		Random random = new Random(seed);
+		size = 0;
+		for (int c = 0; c < circuitCount; c++) {
+			put('C', out);
+			put(' ', out);
+			putName('C', c, out);
+			putSkills(random, out);
+			put('\n', out);
+		}
+		put('\n', out);
+		double[] popularity = cumulativePopularity();
+		int[] circuitOfRank = shuffledCircuits(random);
+		//the last juggler each circuit was picked for, so no juggler ranks a circuit twice.
+		long[] pickedBy = new long[circuitCount];
+		Arrays.fill(pickedBy, -1);
+		//the circuits the juggler has ranked, and the tree to pick from the others, made the
+		//first time it is needed.
+		int[] picked = new int[maxPreferences];
+		PopularityTree tree = null;
+		//the fewest circuits a region has.
+		int regionSize = circuitCount / regions;
+		for (long j = 0; j < jugglerCount; j++) {
+			put('J', out);
+			put(' ', out);
+			putName('J', j, out);
+			putSkills(random, out);
+			int preferences = minPreferences + random.nextInt(maxPreferences - minPreferences + 1);
+			int region = 0;
+			if (regions > 1) {
+				preferences = Math.min(preferences, regionSize);
+				region = random.nextInt(regions);
+			}
+			for (int k = 0; k < preferences; k++) {
+				int c = -1;
+				for (int tries = 0; tries < MAX_TRIES && c < 0; tries++) {
+					c = inRegion(circuitOfRank[pick(popularity, random)], region);
+					if (pickedBy[c] == j)
+						c = -1;
+				}
+				if (c < 0) {
+					if (tree == null)
+						tree = new PopularityTree(popularity, circuitOfRank);
+					c = tree.pick(region, picked, k, random);
+				}
+				pickedBy[c] = j;
+				picked[k] = c;
+				put(k == 0 ? ' ' : ',', out);
+				putName('C', c, out);
+			}
+			if (tree != null)
+				tree.restore();
+			put('\n', out);
+		}
+		out.write(buffer, 0, size);
+		size = 0;
+		out.flush();
+	}
+
+	//the circuit in the region next to circuit c: in the same block of regions circuits, or in
+	//the one before if the last block is too short to have one.
+	private int inRegion(int c, int region) {
+		if (regions == 1)
+			return c;
+		c += region - c % regions;
+		return c >= circuitCount ? c - regions : c;
+	}
+
+	//The popularity of the blocks of regions circuits (just the circuits, with one region),
+	//in a Fenwick tree of whole numbers, so that a juggler's next circuit can be picked from the
+	//blocks whose circuit in his region he hasn't ranked, with the same chances as picking from
+	//all of them until one of those comes up. The popularity of each rank is the width of its
+	//step in the cumulative distribution, in units of 2^-52, the resolution the binary search
+	//picks with, but at least 1. The blocks a juggler has ranked are taken out of the tree as it
+	//is needed, and put back before the next juggler.
+	private final class PopularityTree {
+		private final int blocks;
+		private final long[] weights;
+		private final long[] tree;
+		private long total;
+		//blocks taken out for the juggler, and how many of his circuits they are for.
+		private final int[] taken;
+		private int takenCount;
+		private int removed;
+
+		PopularityTree(double[] popularity, int[] circuitOfRank) {
+			blocks = (circuitCount + regions - 1) / regions;
+			weights = new long[blocks];
+			long below = 0;
+			for (int r = 0; r < circuitCount; r++) {
+				long step = Math.round(Math.scalb(popularity[r], 52));
+				weights[circuitOfRank[r] / regions] += Math.max(1, step - below);
+				below = step;
+			}
+			tree = new long[blocks + 1];
+			for (int b = 0; b < blocks; b++) {
+				tree[b + 1] += weights[b];
+				int up = (b + 1) + ((b + 1) & -(b + 1));
+				if (up <= blocks)
+					tree[up] += tree[b + 1];
+				total += weights[b];
+			}
+			taken = new int[2 * maxPreferences];
+		}
+
+		//a circuit of the region that isn't one of the first count picked.
+		int pick(int region, int[] picked, int count, Random random) {
+			for (; removed < count; removed++) {
+				int b = picked[removed] / regions;
+				take(b);
+				if (b == blocks - 2 && lastBlockMerged(region))
+					take(blocks - 1);
+			}
+			long value = random.nextLong(total);
+			int b = 0;
+			for (int step = Integer.highestOneBit(blocks); step > 0; step >>= 1) {
+				if (b + step <= blocks && tree[b + step] <= value) {
+					b += step;
+					value -= tree[b];
+				}
+			}
+			return inRegion(b * regions, region);
+		}
+
+		//puts back every block taken out.
+		void restore() {
+			while (takenCount > 0) {
+				int b = taken[--takenCount];
+				add(b, weights[b]);
+			}
+			removed = 0;
+		}
+
+		//true if the region has no circuit in the last block, whose picks go to the block before.
+		private boolean lastBlockMerged(int region) {
+			return (blocks - 1) * regions + region >= circuitCount;
+		}
+
+		private void take(int b) {
+			for (int i = 0; i < takenCount; i++) {
+				if (taken[i] == b)
+					return;
+			}
+			taken[takenCount++] = b;
+			add(b, -weights[b]);
+		}
+
+		private void add(int b, long delta) {
+			total += delta;
+			for (int i = b + 1; i <= blocks; i += i & -i)
+				tree[i] += delta;
+		}
+	}
+
+	//the chance of each popularity rank or a better one, for picking ranks by binary search.
+	private double[] cumulativePopularity() {
+		double[] cumulative = new double[circuitCount];
+		double total = 0;
+		for (int r = 0; r < circuitCount; r++) {
+			total += 1 / Math.pow(r + 1, zipfExponent);
+			cumulative[r] = total;
+		}
+		for (int r = 0; r < circuitCount; r++)
+			cumulative[r] /= total;
+		return cumulative;
+	}
+
+	private int[] shuffledCircuits(Random random) {
+		int[] circuits = new int[circuitCount];
+		for (int c = 0; c < circuitCount; c++)
+			circuits[c] = c;
+		for (int c = circuitCount - 1; c > 0; c--) {
+			int other = random.nextInt(c + 1);
+			int swap = circuits[c];
+			circuits[c] = circuits[other];
+			circuits[other] = swap;
+		}
+		return circuits;
+	}
+
+	//a popularity rank, picked with the chances of the cumulative distribution.
+	private static int pick(double[] cumulative, Random random) {
+		double value = random.nextDouble();
+		int low = 0, high = cumulative.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulative[middle] <= value)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private void putSkills(Random random, OutputStream out) throws IOException {
+		double talent = random.nextDouble();
+		put(' ', out);
+		put('H', out);
+		put(':', out);
+		putDigits(skill(talent, random), out);
+		put(' ', out);
+		put('E', out);
+		put(':', out);
+		putDigits(skill(talent, random), out);
+		put(' ', out);
+		put('P', out);
+		put(':', out);
+		putDigits(skill(talent, random), out);
+	}
+
+	private int skill(double talent, Random random) {
+		double level = correlation * talent + (1 - correlation) * random.nextDouble();
+		return (int) Math.min(MAX_SKILL, Math.floor(level * (MAX_SKILL + 1)));
+	}
+
+	private void put(char c, OutputStream out) throws IOException {
+		if (size == buffer.length) {
+			out.write(buffer, 0, size);
+			size = 0;
+		}
+		buffer[size++] = (byte) c;
+	}
+
+	private void putName(char prefix, long number, OutputStream out) throws IOException {
+		put(prefix, out);
+		putDigits(number, out);
+	}
+
+	//digits of a number that is not negative
+	private void putDigits(long number, OutputStream out) throws IOException {
+		if (size + 19 > buffer.length) {
+			out.write(buffer, 0, size);
+			size = 0;
+		}
+		int digits = 1;
+		for (long rest = number / 10; rest > 0; rest /= 10)
+			digits++;
+		for (int i = size + digits - 1; i >= size; i--) {
+			buffer[i] = (byte) ('0' + number % 10);
+			number /= 10;
+		}
+		size += digits;
+	}
+
+	/**
+	 * Writes a festival to a file, or to standard output without -o.
+	 * @param args -jugglers n -circuits n [-seed n] [-preferences min max] [-zipf s]
+	 * [-correlation r] [-regions n] [-o file]
+	 */
+	public static void main(String[] args) throws IOException {
+		long seed = 0;
+		long jugglers = -1;
+		int circuits = -1;
+		int minPreferences = 10, maxPreferences = 10;
+		double zipf = 0, correlation = 0;
+		int regions = 1;
+		String output = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "-seed":
+					seed = Long.parseLong(args[++i]);
+					break;
+				case "-jugglers":
+					jugglers = Long.parseLong(args[++i]);
+					break;
+				case "-circuits":
+					circuits = Integer.parseInt(args[++i]);
+					break;
+				case "-preferences":
+					minPreferences = Integer.parseInt(args[++i]);
+					maxPreferences = Integer.parseInt(args[++i]);
+					break;
+				case "-zipf":
+					zipf = Double.parseDouble(args[++i]);
+					break;
+				case "-correlation":
+					correlation = Double.parseDouble(args[++i]);
+					break;
+				case "-regions":
+					regions = Integer.parseInt(args[++i]);
+					break;
+				case "-o":
+					output = args[++i];
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}
+			if (jugglers < 0 || circuits < 0)
+				throw new IllegalArgumentException("-jugglers and -circuits are required");
+			FestivalGenerator generator = new FestivalGenerator(seed, circuits, jugglers);
+			generator.setPreferences(minPreferences, maxPreferences);
+			generator.setZipfExponent(zipf);
+			generator.setCorrelation(correlation);
+			generator.setRegions(regions);
+			if (output == null)
+				generator.write(System.out);
+			else
+				generator.write(Paths.get(output));
+		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException exception) {
+			System.out.println(exception instanceof ArrayIndexOutOfBoundsException
+					? "Missing value for " + args[args.length - 1] : exception.getMessage());
+			System.out.println("Usage: java jugglefest.FestivalGenerator -jugglers n -circuits n [-seed n]"
+					+ " [-preferences min max] [-zipf s] [-correlation r] [-regions n] [-o file]");
+		}
+	}
+}
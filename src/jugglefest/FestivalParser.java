@@ -0,0 +1,596 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class FestivalParser
+ * @author Shalini Israni
+ * Reads the input format into a Festival straight from the bytes of the file, which is mapped
+ * into memory with FileChannel.map instead of being read a line at a time.
+ * Reading with a BufferedReader made a String per line, an upper-case copy of it, an array of
+ * tokens, a substring per value, and a Float per number. Here the bytes are scanned in place:
+ * numbers are parsed as they are scanned, and circuit names are turned into circuit numbers and
+ * looked up in the CircuitCatalog, so a juggler line makes no objects at all. Only a name that
+ * isn't written as a letter and a number the usual way, such as J007, is made into a String,
+ * in upper case like the rest of the line used to be, and kept as it is.
+ * The format is the same as before: lines starting with C are circuits, lines starting with J
+ * are jugglers, case does not matter, and empty lines are skipped. Fields are separated by
+ * spaces; tabs and carriage returns are only trimmed from the ends of a line, so in the middle of
+ * one a tab is part of the field it is in, and "J\tJ1" is a juggler named that, as it always
+ * was. When a line can't be loaded,
+ * getError() has the same message, with the line number, that loadFile used to print.
+ * parseFile can also load the jugglers in parallel. Once the circuits are loaded, juggler lines
+ * only read the circuit catalog, so the juggler lines are cut into chunks at line ends, each
+ * chunk is parsed into a Festival of its own on a ForkJoinPool, and the chunks are added to the
+ * festival in file order. The jugglers end up in the same order as with a sequential load.
+ * For a FestivalPipeline, parseCircuits and parseJugglers load the circuits and then hand the
+ * juggler lines over a chunk at a time, to be added to the festival by another thread.
+ */
+final class FestivalParser {
+	//Files bigger than this are mapped a window at a time.
+	private static final long WINDOW_SIZE = 1L << 30;
+	//Smallest chunk of juggler lines worth handing to another thread.
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private final Festival festival;
+	private int[] preferenceBuffer = new int[16];
+	private long lineNumber;
+	private String error;
+	//first character of the lines parse stops in front of, 0 for none, and whether it did.
+	private int stopAt;
+	private boolean stopped;
+	//bytes consumed by the last call to parse.
+	private int consumed;
+
+	//values of the line being parsed; the name is only set when the number is -1.
+	private int number;
+	private String name;
+	private float handEyeCoord;
+	private float endurance;
+	private float pizzazz;
+	private int preferenceCount;
+
+	/**
+	 * Constructor
+	 * @param festival the festival the circuits and jugglers are added to.
+	 */
+	public FestivalParser(Festival festival) {
+		this.festival = festival;
+	}
+
+	/**
+	 *
+	 * @return String
+	 * What went wrong, if parsing returned false.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return boolean false if a line could not be loaded.
+	 * @throws IOException
+	 * Map the file and parse it.
+	 */
+	public boolean parseFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return parse(channel, channel.size());
+		}
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @param to where the circuit lines at the top of the file end
+	 * @return boolean false if a line could not be loaded.
+	 * @throws IOException
+	 * Map the file and parse it up to byte to, such as the circuits before the jugglers.
+	 */
+	boolean parseCircuits(Path file, long to) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return parse(channel, Math.min(to, channel.size()));
+		}
+	}
+
+	//Parses the channel up to byte size, a window at a time.
+	private boolean parse(FileChannel channel, long size) throws IOException {
+		long position = 0;
+		while (position < size) {
+			long length = Math.min(WINDOW_SIZE, size - position);
+			boolean last = position + length == size;
+			ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int consumed = parse(window, 0, (int) length, last);
+			if (consumed < 0)
+				return false;
+			if (consumed == 0) {
+				error = "Line " + (lineNumber + 1) + " is longer than " + WINDOW_SIZE + " bytes";
+				return false;
+			}
+			position += consumed;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @param from where the juggler lines start, after the circuits loaded by parseCircuits
+	 * @param chunks where each chunk of jugglers is put once it is parsed, in file order
+	 * @return boolean false if a line could not be loaded.
+	 * @throws IOException
+	 * @throws InterruptedException if the thread is interrupted while waiting for room on chunks
+	 * Map the file from byte from and parse its juggler lines a chunk at a time, each chunk into
+	 * a Festival of its own on this festival's circuit catalog, which is only read. The
+	 * festival itself is left alone, for whoever takes the chunks to add them to it. The file
+	 * must have no circuit lines after from, since they would change the catalog.
+	 */
+	boolean parseJugglers(Path file, long from, BlockingQueue<Festival> chunks) throws IOException, InterruptedException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = from;
+			while (position < size) {
+				int length = (int) Math.min(WINDOW_SIZE, size - position);
+				boolean last = position + length == size;
+				ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int offset = 0;
+				while (offset < length) {
+					int end = (int) Math.min(length, (long) offset + MIN_CHUNK_SIZE);
+					while (end < length && window.get(end - 1) != '\n')
+						end++;
+					FestivalParser chunk = new FestivalParser(new Festival(festival.getCircuits()));
+					chunk.lineNumber = lineNumber;
+					int consumed = chunk.parse(window, offset, end, last || end < length);
+					if (consumed < 0) {
+						error = chunk.error;
+						return false;
+					}
+					lineNumber = chunk.lineNumber;
+					if (chunk.festival.getJugglerCount() > 0)
+						chunks.put(chunk.festival);
+					offset += consumed;
+					//a line that runs past the window is left for the next one
+					if (end == length)
+						break;
+				}
+				if (offset == 0) {
+					error = "Line " + (lineNumber + 1) + " is longer than " + WINDOW_SIZE + " bytes";
+					return false;
+				}
+				position += offset;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @param pool
+	 * @return boolean false if a line could not be loaded.
+	 * @throws IOException
+	 * Map the file and parse it, loading the juggler lines in parallel on pool. Circuits are
+	 * loaded one line at a time, and if a circuit comes after some jugglers, the jugglers
+	 * before it are finished first.
+	 */
+	public boolean parseFile(Path file, ForkJoinPool pool) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				long length = Math.min(WINDOW_SIZE, size - position);
+				boolean last = position + length == size;
+				ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				//only complete lines are cut into chunks; the rest is left for the next window
+				int limit = (int) length;
+				if (!last) {
+					while (limit > 0 && window.get(limit - 1) != '\n')
+						limit--;
+				}
+				int offset = 0;
+				while (true) {
+					stopAt = 'J';
+					int consumed = parse(window, offset, (int) length, last);
+					stopAt = 0;
+					if (consumed < 0)
+						return false;
+					offset += consumed;
+					if (!stopped)
+						break;
+					consumed = parseJugglers(window, offset, limit, pool);
+					if (consumed < 0)
+						return false;
+					offset += consumed;
+					if (!stopped)
+						break;
+				}
+				if (offset == 0) {
+					error = "Line " + (lineNumber + 1) + " is longer than " + WINDOW_SIZE + " bytes";
+					return false;
+				}
+				position += offset;
+			}
+			return true;
+		}
+	}
+
+	//Parses the juggler lines in [from, to) in parallel chunks and adds them to the festival in
+	//order. Stops in front of a circuit line, leaving stopped set. Returns the number of bytes
+	//consumed, or -1 if a line could not be loaded.
+	private int parseJugglers(ByteBuffer buffer, int from, int to, ForkJoinPool pool) {
+		int chunkCount = Math.max(1, Math.min(pool.getParallelism() * 4, (to - from) / MIN_CHUNK_SIZE));
+		List<ForkJoinTask<FestivalParser>> chunks = new ArrayList<ForkJoinTask<FestivalParser>>();
+		List<Integer> chunkStarts = new ArrayList<Integer>();
+		int start = from;
+		for (int k = 1; k <= chunkCount && start < to; k++) {
+			int end = k == chunkCount ? to : (int) (from + (long) (to - from) * k / chunkCount);
+			while (end < to && buffer.get(end - 1) != '\n')
+				end++;
+			if (end <= start)
+				continue;
+			final ByteBuffer chunk = buffer.duplicate();
+			final int chunkStart = start, chunkEnd = end;
+			chunkStarts.add(chunkStart);
+			chunks.add(pool.submit(() -> {
+				FestivalParser parser = new FestivalParser(new Festival(festival.getCircuits()));
+				parser.stopAt = 'C';
+				parser.parse(chunk, chunkStart, chunkEnd, true);
+				return parser;
+			}));
+			start = end;
+		}
+		stopped = false;
+		for (int k = 0; k < chunks.size(); k++) {
+			FestivalParser parser = chunks.get(k).join();
+			if (parser.error != null) {
+				//parse the chunk again from the right line number, for the message
+				for (int rest = k + 1; rest < chunks.size(); rest++)
+					chunks.get(rest).cancel(false);
+				FestivalParser again = new FestivalParser(new Festival(festival.getCircuits()));
+				again.lineNumber = lineNumber;
+				again.stopAt = 'C';
+				again.parse(buffer, chunkStarts.get(k), to, true);
+				error = again.error;
+				return -1;
+			}
+			festival.addAll(parser.festival);
+			lineNumber += parser.lineNumber;
+			if (parser.stopped) {
+				for (int rest = k + 1; rest < chunks.size(); rest++)
+					chunks.get(rest).cancel(false);
+				stopped = true;
+				return chunkStarts.get(k) + parser.consumed - from;
+			}
+		}
+		return start - from;
+	}
+
+	/**
+	 *
+	 * @param buffer
+	 * @return boolean false if a line could not be loaded.
+	 * Parse the whole of a buffer that holds the input, e.g. one that was read from a stream.
+	 */
+	public boolean parse(ByteBuffer buffer) {
+		return parse(buffer, buffer.position(), buffer.limit(), true) >= 0;
+	}
+
+	/**
+	 *
+	 * @param buffer the whole input
+	 * @return int
+	 * Where the circuit lines at the top of the input end: the start of the first line that is
+	 * neither a circuit nor empty, or the limit if there is none.
+	 */
+	static int circuitsEnd(ByteBuffer buffer) {
+		int start = buffer.position(), to = buffer.limit();
+		while (start < to) {
+			int end = start;
+			while (end < to && buffer.get(end) != '\n')
+				end++;
+			int first = start;
+			while (first < end && isSpace(buffer.get(first)))
+				first++;
+			if (first < end && upper(buffer.get(first)) != 'C')
+				return start;
+			start = end + 1;
+		}
+		return to;
+	}
+
+	/**
+	 *
+	 * @param buffer the whole input
+	 * @param from where its circuit lines end, as circuitsEnd finds
+	 * @return boolean false if a line could not be loaded, or if there is a circuit line among
+	 * the jugglers, in which case getError() is null.
+	 * Parse the juggler lines of an input whose circuits are already in the festival's catalog,
+	 * such as one that was loaded from the same circuit lines before. The catalog is only read,
+	 * so it can be shared by festivals parsed at the same time. A circuit line after the
+	 * jugglers would change it, so parsing stops in front of one, and the input has to be
+	 * parsed in full into a catalog of its own.
+	 */
+	boolean parseAfterCircuits(ByteBuffer buffer, int from) {
+		//line numbers of errors count the circuit lines that were skipped.
+		for (int i = buffer.position(); i < from; i++) {
+			if (buffer.get(i) == '\n')
+				lineNumber++;
+		}
+		stopAt = 'C';
+		int parsed = parse(buffer, from, buffer.limit(), true);
+		stopAt = 0;
+		return parsed >= 0 && !stopped;
+	}
+
+	/**
+	 *
+	 * @param buffer
+	 * @param from
+	 * @param to
+	 * @param last whether the input ends at to. If not, a line that does not end with a
+	 * newline before to is left for the next call.
+	 * @return int the number of bytes consumed, or -1 if a line could not be loaded.
+	 */
+	int parse(ByteBuffer buffer, int from, int to, boolean last) {
+		int start = from;
+		stopped = false;
+		while (start < to) {
+			int end = start;
+			while (end < to && buffer.get(end) != '\n')
+				end++;
+			if (end == to && !last)
+				break;
+			if (stopAt != 0 && startsWith(buffer, start, end, stopAt)) {
+				stopped = true;
+				break;
+			}
+			lineNumber++;
+			if (!parseLine(buffer, start, end))
+				return -1;
+			start = end + 1;
+		}
+		consumed = Math.min(start, to) - from;
+		return consumed;
+	}
+
+	//true if the first character of the line, after any spaces, is c.
+	private static boolean startsWith(ByteBuffer buffer, int start, int end, int c) {
+		while (start < end && isSpace(buffer.get(start)))
+			start++;
+		return start < end && upper(buffer.get(start)) == c;
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of lines parsed so far.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	private boolean parseLine(ByteBuffer buffer, int start, int end) {
+		while (start < end && isSpace(buffer.get(start)))
+			start++;
+		while (end > start && isSpace(buffer.get(end - 1)))
+			end--;
+		if (start == end) //skip empty lines
+			return true;
+		int first = upper(buffer.get(start));
+		if (first == 'C') {
+			if (!parseCircuit(buffer, start, end)) {
+				error = "Error loading circuit on line " + lineNumber;
+				return false;
+			}
+			return true;
+		}
+		if (first == 'J') {
+			if (!parseJuggler(buffer, start, end)) {
+				error = (error == null ? "" : error + System.lineSeparator())
+						+ "Error loading juggler on line " + lineNumber;
+				return false;
+			}
+			return true;
+		}
+		error = "Unexpected first character " + (char) first + " found on line " + lineNumber;
+		return false;
+	}
+
+	private boolean parseCircuit(ByteBuffer buffer, int start, int end) {
+		//C C0 H:10 E:8 P:10
+		if (!parseFields(buffer, start, end, 'C'))
+			return false;
+		if (number >= 0)
+			festival.getCircuits().add(number, handEyeCoord, endurance, pizzazz);
+		else
+			festival.getCircuits().add(name, handEyeCoord, endurance, pizzazz);
+		return true;
+	}
+
+	private boolean parseJuggler(ByteBuffer buffer, int start, int end) {
+		//J J0 H:7 E:6 P:0 C453,C1706,C318,C271,C1958,C1051,C241,C1736,C304,C518
+		if (!parseFields(buffer, start, end, 'J'))
+			return false;
+		if (number >= 0)
+			festival.addJuggler(number, handEyeCoord, endurance, pizzazz, preferenceBuffer, preferenceCount);
+		else
+			festival.addJuggler(name, handEyeCoord, endurance, pizzazz, preferenceBuffer, preferenceCount);
+		return true;
+	}
+
+	//Reads the name, H, E and P of a line, and for a juggler his preferences. Fields are
+	//separated by spaces, not tabs, and can come in any order; anything else on the line is
+	//ignored.
+	private boolean parseFields(ByteBuffer buffer, int start, int end, char type) {
+		boolean name = false, h = false, e = false, p = false;
+		int preferencesStart = -1, preferencesEnd = -1;
+		int i = start;
+		while (i < end) {
+			while (i < end && buffer.get(i) == ' ')
+				i++;
+			int tokenStart = i;
+			while (i < end && buffer.get(i) != ' ')
+				i++;
+			int tokenEnd = i;
+			if (tokenStart == tokenEnd)
+				break;
+			int first = upper(buffer.get(tokenStart));
+			if (tokenEnd - tokenStart == 1 && first == type)
+				continue;
+			if (first == type) {
+				number = parseNumber(buffer, tokenStart + 1, tokenEnd);
+				this.name = number < 0 ? text(buffer, tokenStart, tokenEnd) : null;
+				name = true;
+			} else if (first == 'H' || first == 'E' || first == 'P') {
+				float value = parseFloat(buffer, tokenStart + 2, tokenEnd);
+				if (Float.isNaN(value))
+					return false;
+				if (first == 'H') {
+					handEyeCoord = value;
+					h = true;
+				} else if (first == 'E') {
+					endurance = value;
+					e = true;
+				} else {
+					pizzazz = value;
+					p = true;
+				}
+			} else if (first == 'C' && type == 'J') {
+				preferencesStart = tokenStart;
+				preferencesEnd = tokenEnd;
+			}
+		}
+		if (!name || !h || !e || !p)
+			return false;
+		if (type == 'J')
+			return preferencesStart >= 0 && parsePreferences(buffer, preferencesStart, preferencesEnd);
+		return true;
+	}
+
+	//C453,C1706,C318 -> circuit indexes in preferenceBuffer
+	private boolean parsePreferences(ByteBuffer buffer, int start, int end) {
+		preferenceCount = 0;
+		int i = start;
+		while (i < end) {
+			int itemStart = i;
+			while (i < end && buffer.get(i) != ',')
+				i++;
+			int c = -1;
+			if (i > itemStart && upper(buffer.get(itemStart)) == 'C') {
+				int number = parseNumber(buffer, itemStart + 1, i);
+				c = number >= 0 ? festival.getCircuits().indexOf(number)
+						: festival.getCircuits().indexOf(text(buffer, itemStart, i));
+			}
+			if (c < 0) {
+				error = "Invalid circuit preference " + text(buffer, itemStart, i);
+				return false;
+			}
+			if (preferenceCount == preferenceBuffer.length)
+				preferenceBuffer = Arrays.copyOf(preferenceBuffer, preferenceCount * 2);
+			preferenceBuffer[preferenceCount++] = c;
+			i++;
+		}
+		return true;
+	}
+
+	//digits -> int, or -1 if there are none, something else is there, there are too many, or
+	//there is a leading zero, so that the number would be written differently.
+	private static int parseNumber(ByteBuffer buffer, int start, int end) {
+		if (start >= end || end - start > 9 || (buffer.get(start) == '0' && end - start > 1))
+			return -1;
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	//Parses a decimal number like 7, -3 or 2.75 without making a String, and gives the same
+	//float as Float.parseFloat. NaN if it is not a number.
+	private static float parseFloat(ByteBuffer buffer, int start, int end) {
+		if (start >= end)
+			return Float.NaN;
+		int i = start;
+		boolean negative = false;
+		byte sign = buffer.get(i);
+		if (sign == '-' || sign == '+') {
+			negative = sign == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0, fractionDigits = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b == '.' && !point) {
+				point = true;
+				continue;
+			}
+			int digit = b - '0';
+			if (digit < 0 || digit > 9 || digits >= 18)
+				return slowParseFloat(buffer, start, end);
+			mantissa = mantissa * 10 + digit;
+			digits++;
+			if (point)
+				fractionDigits++;
+		}
+		if (digits == 0)
+			return Float.NaN;
+		if (mantissa >= (1L << 53))
+			return slowParseFloat(buffer, start, end);
+		//mantissa and 10^fractionDigits are exact doubles, so the quotient is the correctly
+		//rounded double. Rounding that to a float is only wrong if it landed exactly halfway
+		//between two floats, which is left to Float.parseFloat.
+		double value = mantissa / POWERS_OF_TEN[fractionDigits];
+		float rounded = (float) value;
+		if ((double) rounded != value) {
+			float other = value > rounded ? Math.nextUp(rounded) : Math.nextDown(rounded);
+			if (((double) rounded + (double) other) / 2 == value)
+				return slowParseFloat(buffer, start, end);
+		}
+		return negative ? -rounded : rounded;
+	}
+
+	private static float slowParseFloat(ByteBuffer buffer, int start, int end) {
+		try {
+			return Float.parseFloat(text(buffer, start, end));
+		} catch (NumberFormatException numberFormatException) {
+			return Float.NaN;
+		}
+	}
+
+	private static String text(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = start; i < end; i++)
+			bytes[i - start] = buffer.get(i);
+		return new String(bytes, StandardCharsets.ISO_8859_1).toUpperCase();
+	}
+
+	//whitespace trimmed from the ends of a line.
+	static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	static int upper(byte b) {
+		return b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b;
+	}
+}
@@ -0,0 +1,228 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Class FestivalPipeline
+ * @author Shalini Israni
+ * Loads a text file for JuggleFest.loadAndMakeAssignments on a thread of its own, and hands the
+ * jugglers over a chunk at a time while the pairing by ranking goes on, so that parsing and
+ * matching overlap.
+ * The file is scanned first, without being parsed, for the number of jugglers, which the
+ * circuit capacities depend on, and to check that every circuit comes before the first juggler:
+ * the chunks are parsed on the circuit catalog the matching is reading, so it can't change
+ * after the jugglers start. The circuits are parsed next, and then the reader thread parses the
+ * juggler lines about a megabyte at a time (see FestivalParser.parseJugglers) onto a bounded
+ * queue. When the queue is full the reader waits for the matching to catch up, so no more than
+ * the queue's length in chunks is ever waiting.
+ * awaitJugglers adds the next chunk to the festival on the thread doing the matching, which is
+ * the only one that changes the festival.
+ */
+final class FestivalPipeline {
+	static final int DEFAULT_QUEUE_LENGTH = 16;
+	//bytes read at a time by the scan.
+	private static final int SCAN_BUFFER_SIZE = 1 << 20;
+	//put on the queue after the last chunk, or when the file can't be loaded.
+	private static final Festival END = new Festival();
+
+	private final Festival festival;
+	private final Path file;
+	private final FestivalParser parser;
+	private final BlockingQueue<Festival> chunks;
+	//found by scan: where the first juggler line starts, and how many juggler lines there are.
+	private long jugglersStart;
+	private int jugglerCount;
+	private Thread reader;
+	private volatile String error;
+	private volatile long parseNanos;
+	private boolean finished;
+
+	/**
+	 * Constructor
+	 * @param festival the festival the circuits and jugglers are added to, which has none yet
+	 * @param file
+	 * @param queueLength how many parsed chunks can wait for the matching
+	 */
+	FestivalPipeline(Festival festival, Path file, int queueLength) {
+		this.festival = festival;
+		this.file = file;
+		this.parser = new FestivalParser(festival);
+		this.chunks = new ArrayBlockingQueue<Festival>(queueLength);
+	}
+
+	/**
+	 *
+	 * @return boolean
+	 * Scan the file for where the juggler lines start and how many there are. False if it can't
+	 * be loaded this way: there are no circuit lines before the first juggler, or there is a
+	 * circuit line after it.
+	 * @throws IOException
+	 */
+	boolean scan() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+			byte[] bytes = buffer.array();
+			long position = 0, lineStart = 0;
+			//whether the first character of the line has been seen, and the rest can be skipped.
+			boolean seen = false;
+			int circuitCount = 0;
+			jugglersStart = -1;
+			jugglerCount = 0;
+			int read;
+			while ((read = channel.read(buffer.clear())) > 0) {
+				int i = 0;
+				while (i < read) {
+					if (seen) {
+						while (i < read && bytes[i] != '\n')
+							i++;
+						if (i == read)
+							break;
+						seen = false;
+					}
+					byte b = bytes[i++];
+					if (b == '\n') {
+						lineStart = position + i;
+						continue;
+					}
+					if (FestivalParser.isSpace(b))
+						continue;
+					seen = true;
+					int first = FestivalParser.upper(b);
+					if (jugglersStart < 0 && first == 'C') {
+						circuitCount++;
+						continue;
+					}
+					if (jugglersStart < 0)
+						jugglersStart = lineStart;
+					if (first == 'J')
+						jugglerCount++;
+					else if (first == 'C')
+						return false;
+				}
+				position += read;
+			}
+			if (jugglersStart < 0)
+				jugglersStart = position;
+			return circuitCount > 0;
+		}
+	}
+
+	/**
+	 *
+	 * @return boolean false if a line could not be loaded, with the message in getError().
+	 * Parse the circuit lines, before the reader is started.
+	 * @throws IOException
+	 */
+	boolean loadCircuits() throws IOException {
+		if (parser.parseCircuits(file, jugglersStart))
+			return true;
+		error = parser.getError();
+		return false;
+	}
+
+	/**
+	 * Start the reader thread on the juggler lines.
+	 */
+	void start() {
+		reader = new Thread(this::read, "jugglefest-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Stop the reader, if it is still going, such as when the matching failed.
+	 */
+	void stop() {
+		if (reader != null)
+			reader.interrupt();
+	}
+
+	//the reader thread: parses the juggler lines onto the queue, then puts END.
+	private void read() {
+		long start = System.nanoTime();
+		try {
+			try {
+				if (!parser.parseJugglers(file, jugglersStart, chunks))
+					error = parser.getError();
+			} catch (IOException | RuntimeException | OutOfMemoryError failure) {
+				error = "Could not load " + file + ": " + failure;
+			}
+			parseNanos = System.nanoTime() - start;
+			chunks.put(END);
+		} catch (InterruptedException interruptedException) {
+			//stopped, so nothing is waiting for the rest
+		}
+	}
+
+	/**
+	 *
+	 * @param matching the matching of the festival, which is told about the new jugglers
+	 * @return int
+	 * Wait for the next chunk of jugglers and add it to the festival and the matching. Returns
+	 * the number of jugglers loaded now, the same as before once the file is finished (see
+	 * isFinished), or -1 if it could not be loaded, with the message in getError().
+	 */
+	int awaitJugglers(Matching matching) {
+		if (finished)
+			return error == null ? festival.getJugglerCount() : -1;
+		Festival chunk;
+		try {
+			chunk = chunks.take();
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			error = "Interrupted while loading " + file;
+			finished = true;
+			return -1;
+		}
+		if (chunk == END) {
+			finished = true;
+			return error == null ? festival.getJugglerCount() : -1;
+		}
+		festival.addAll(chunk);
+		matching.addNewJugglers();
+		return festival.getJugglerCount();
+	}
+
+	/**
+	 *
+	 * @return boolean
+	 * Whether every juggler in the file has been handed over by awaitJugglers.
+	 */
+	boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 *
+	 * @return int
+	 * The number of juggler lines in the file, found by scan: the number of jugglers there will
+	 * be if the file loads.
+	 */
+	int getJugglerCount() {
+		return jugglerCount;
+	}
+
+	/**
+	 *
+	 * @return String
+	 * Why the file could not be loaded, or null.
+	 */
+	String getError() {
+		return error;
+	}
+
+	/**
+	 *
+	 * @return long
+	 * How long the reader took to parse the juggler lines, once it has finished.
+	 */
+	long getParseNanos() {
+		return parseNanos;
+	}
+}
@@ -0,0 +1,284 @@
+package jugglefest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Class FestivalService
+ * @author Shalini Israni
+ * Solves festivals sent to it over HTTP, so the solver can stay up as a process of its own
+ * instead of starting a JVM, and warming up the JIT, for every festival.
+ * A festival is POSTed to PATH in the input format, and the response is its assignments, in
+ * the format outputAssignments writes. A festival that can't be loaded gets a 400 with the
+ * same message loadFile would print, and one without circuits a 400 that says so.
+ * Festivals are solved on a fixed number of threads, with a bounded queue of festivals
+ * waiting for one; when the queue is full, a request gets a 503 straight away rather than
+ * waiting, and its body isn't read. So no more than that many festivals are in memory at once.
+ * A body longer than the most the service takes gets a 413: straight away if its Content-Length
+ * says so, or once that many bytes have been read if it doesn't, so no body past the limit is
+ * kept in memory.
+ * Requests often use the same circuits with different jugglers, so the CircuitCatalogs parsed
+ * from the circuit lines at the top of a festival are kept, by a SHA-256 hash of those lines,
+ * and the least recently used one is dropped when there are too many. A festival whose circuit
+ * lines hash to a kept catalog has only its juggler lines parsed. The kept catalogs are only
+ * read, so festivals solved at the same time can share one. The X-Circuit-Catalog header of the
+ * response says whether the catalog was cached or parsed.
+ */
+final class FestivalService {
+	static final String PATH = "/assignments";
+	static final int DEFAULT_QUEUE_LENGTH = 16;
+	static final int DEFAULT_CACHED_CATALOGS = 32;
+	static final int DEFAULT_MAX_BODY_BYTES = 256 << 20;
+
+	private final HttpServer server;
+	private final ThreadPoolExecutor solvers;
+	private final int threads;
+	private final int maxBodyBytes;
+	private final Map<ByteBuffer, CircuitCatalog> catalogs;
+	private final LongAdder catalogHits = new LongAdder();
+	private final LongAdder catalogMisses = new LongAdder();
+
+	/**
+	 * Constructor. The service is bound to the address, but takes no requests until start().
+	 * @param address
+	 * @param jobs how many festivals are solved at a time
+	 * @param queueLength how many more festivals can wait for a solver
+	 * @param threads how many threads each festival is solved and written with
+	 * @param cachedCatalogs how many circuit catalogs are kept
+	 * @param maxBodyBytes the longest festival, in bytes, that is taken
+	 * @throws IOException
+	 */
+	FestivalService(InetSocketAddress address, int jobs, int queueLength, int threads, int cachedCatalogs,
+			int maxBodyBytes) throws IOException {
+		if (jobs < 1 || queueLength < 1 || threads < 1 || cachedCatalogs < 0)
+			throw new IllegalArgumentException("The number of jobs, waiting festivals and threads must be positive");
+		if (maxBodyBytes < 1 || maxBodyBytes == Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The longest festival taken must be between 1 and "
+					+ (Integer.MAX_VALUE - 1) + " bytes");
+		this.threads = threads;
+		this.maxBodyBytes = maxBodyBytes;
+		AtomicInteger threadNumber = new AtomicInteger();
+		//daemon threads: the server's own dispatcher thread is what keeps the JVM up.
+		this.solvers = new ThreadPoolExecutor(jobs, jobs, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueLength), runnable -> {
+					Thread thread = new Thread(runnable, "jugglefest-service-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.catalogs = new LinkedHashMap<ByteBuffer, CircuitCatalog>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CircuitCatalog> eldest) {
+				return size() > cachedCatalogs;
+			}
+		};
+		this.server = HttpServer.create(address, 0);
+		//the handler only hands the exchange to a solver, so it runs on the dispatcher thread.
+		this.server.createContext(PATH, this::handle);
+	}
+
+	/**
+	 * Start taking requests.
+	 */
+	void start() {
+		server.start();
+	}
+
+	/**
+	 * Stop taking requests, and stop the solvers once the festivals they have are done.
+	 */
+	void stop() {
+		server.stop(0);
+		solvers.shutdown();
+	}
+
+	/**
+	 *
+	 * @return InetSocketAddress
+	 * The address the service is bound to, with the port that was picked if it was given 0.
+	 */
+	InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of festivals whose circuit catalog was cached.
+	 */
+	long getCatalogHits() {
+		return catalogHits.sum();
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of festivals whose circuit catalog had to be parsed.
+	 */
+	long getCatalogMisses() {
+		return catalogMisses.sum();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("POST")) {
+			respond(exchange, 405, "POST a festival in the input format to " + PATH);
+			return;
+		}
+		String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (contentLength != null && isOverLimit(contentLength)) {
+			tooLarge(exchange);
+			return;
+		}
+		try {
+			solvers.execute(() -> solve(exchange));
+		} catch (RejectedExecutionException rejectedExecutionException) {
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			respond(exchange, 503, "Too many festivals are being solved; try again later");
+		}
+	}
+
+	//loads, solves and writes one festival, on a solver thread.
+	private void solve(HttpExchange exchange) {
+		try {
+			//one byte past the limit is enough to know the body is too long.
+			byte[] body = exchange.getRequestBody().readNBytes(maxBodyBytes + 1);
+			if (body.length > maxBodyBytes) {
+				tooLarge(exchange);
+				return;
+			}
+			Festival festival = load(body, exchange);
+			if (festival == null)
+				return;
+			JuggleFest juggleFest = new JuggleFest(festival);
+			if (juggleFest.makeAssignments(threads) == null) {
+				respond(exchange, 400, "The festival has no circuits");
+				return;
+			}
+			ByteArrayOutputStream assignments = new ByteArrayOutputStream();
+			juggleFest.outputAssignments(assignments, threads);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+			exchange.sendResponseHeaders(200, assignments.size());
+			try (OutputStream out = exchange.getResponseBody()) {
+				assignments.writeTo(out);
+			}
+		} catch (IOException ioException) {
+			//the client went away; there is no one to tell.
+		} catch (RuntimeException | OutOfMemoryError error) {
+			try {
+				respond(exchange, 500, "Could not solve the festival: " + error);
+			} catch (IOException ioException) {
+				//the same.
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	//the festival in the body, with its circuits from the cache if they are there, or null
+	//if it could not be loaded, which has been responded to.
+	private Festival load(byte[] body, HttpExchange exchange) throws IOException {
+		ByteBuffer input = ByteBuffer.wrap(body);
+		int circuitsEnd = FestivalParser.circuitsEnd(input);
+		ByteBuffer key = ByteBuffer.wrap(hash(body, circuitsEnd));
+		CircuitCatalog circuits;
+		synchronized (catalogs) {
+			circuits = catalogs.get(key);
+		}
+		boolean cached = circuits != null;
+		if (!cached) {
+			Festival circuitsOnly = new Festival();
+			FestivalParser parser = new FestivalParser(circuitsOnly);
+			if (!parser.parse(input.duplicate().limit(circuitsEnd))) {
+				respond(exchange, 400, parser.getError());
+				return null;
+			}
+			circuits = circuitsOnly.getCircuits();
+		}
+		Festival festival = new Festival(circuits);
+		FestivalParser parser = new FestivalParser(festival);
+		if (!parser.parseAfterCircuits(input, circuitsEnd)) {
+			if (parser.getError() != null) {
+				respond(exchange, 400, parser.getError());
+				return null;
+			}
+			//a circuit line among the jugglers: the festival gets a catalog of its own.
+			festival = new Festival();
+			parser = new FestivalParser(festival);
+			if (!parser.parse(input)) {
+				respond(exchange, 400, parser.getError());
+				return null;
+			}
+			cached = false;
+		} else if (!cached) {
+			synchronized (catalogs) {
+				catalogs.put(key, circuits);
+			}
+		}
+		if (festival.getCircuitCount() == 0) {
+			respond(exchange, 400, "The festival has no circuits");
+			return null;
+		}
+		(cached ? catalogHits : catalogMisses).increment();
+		exchange.getResponseHeaders().set("X-Circuit-Catalog", cached ? "cached" : "parsed");
+		return festival;
+	}
+
+	//whether a Content-Length says the body is longer than the service takes. One that isn't a
+	//number is left to the bounded read.
+	private boolean isOverLimit(String contentLength) {
+		try {
+			return Long.parseLong(contentLength.trim()) > maxBodyBytes;
+		} catch (NumberFormatException numberFormatException) {
+			return false;
+		}
+	}
+
+	//the 413 for a body past the limit; the rest of the body is not read, and the connection
+	//is closed with the exchange.
+	private void tooLarge(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("Connection", "close");
+		try {
+			respond(exchange, 413, "The festival is longer than the " + maxBodyBytes + " bytes this service takes");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static byte[] hash(byte[] body, int length) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(body, 0, length);
+			return digest.digest();
+		} catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+			//every JVM has SHA-256.
+			throw new IllegalStateException(noSuchAlgorithmException);
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
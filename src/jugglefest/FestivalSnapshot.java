@@ -0,0 +1,357 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Class FestivalSnapshot
+ * @author Shalini Israni
+ * Saves a Festival, as loaded, to a binary file, and loads it back much faster than the input
+ * format can be parsed. The file is the Festival's columns one after the other, as
+ * little-endian ints and floats, so loading is mapping the file and copying each column into
+ * its array in bulk (see ColumnOutput and ColumnInput), with nothing to parse per juggler.
+ * Match values are saved too, so they are not calculated again.
+ * The file starts with a 32 byte header:
+ *   8 bytes  MAGIC
+ *   4 bytes  VERSION, of the layout below
+ *   4 bytes  number of circuits
+ *   4 bytes  number of jugglers
+ *   4 bytes  number of preferences
+ *   8 bytes  CRC32C of the 16 bytes above and everything after the header
+ * and then the circuit numbers, H, E and P; the juggler numbers, H, E and P; the preference
+ * offsets (one more than there are jugglers); and the preference circuits and match values.
+ * Last come the names of the circuits and jugglers whose number is -1, because their names
+ * are not a letter and a number: the number of circuit names, of juggler names, and of ints
+ * the names take, and then for each name its index, its length, and its characters, four to
+ * an int.
+ * Withdrawn jugglers are left out, so the snapshot is what a file of the others would load as.
+ * A file that is too short, too long, or does not match its checksum is not loaded.
+ */
+final class FestivalSnapshot {
+	static final byte[] MAGIC = {'J', 'F', 'S', 'N', 'A', 'P', '\r', '\n'};
+	static final int VERSION = 2;
+	private static final int HEADER_SIZE = 32;
+
+	private FestivalSnapshot() {
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return boolean
+	 * Whether the file starts like a snapshot. It may still turn out to be damaged.
+	 * @throws IOException
+	 */
+	static boolean isSnapshot(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer start = ByteBuffer.allocate(MAGIC.length);
+			while (start.hasRemaining() && channel.read(start) >= 0) {
+			}
+			return !start.hasRemaining() && start.flip().equals(ByteBuffer.wrap(MAGIC));
+		}
+	}
+
+	/**
+	 * Save the festival's circuits and active jugglers to the file, replacing what was in it.
+	 * @param festival
+	 * @param file
+	 * @throws IOException
+	 */
+	static void write(Festival festival, Path file) throws IOException {
+		CircuitCatalog circuits = festival.getCircuits();
+		int circuitCount = circuits.size();
+		int jugglerCount = festival.getActiveJugglerCount();
+		int preferenceCount = 0;
+		for (int j = 0; j < festival.getJugglerCount(); j++) {
+			if (!festival.isWithdrawn(j))
+				preferenceCount += festival.getPreferenceEnd(j) - festival.getPreferenceStart(j);
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC).putInt(VERSION).putInt(circuitCount).putInt(jugglerCount).putInt(preferenceCount);
+			CRC32C crc = new CRC32C();
+			crc.update(header.array(), MAGIC.length, 16);
+			ColumnOutput out = new ColumnOutput(channel, crc);
+			channel.position(HEADER_SIZE);
+			for (int c = 0; c < circuitCount; c++)
+				out.putInt(circuits.getNumber(c));
+			for (int c = 0; c < circuitCount; c++)
+				out.putFloat(circuits.getHandEyeCoord(c));
+			for (int c = 0; c < circuitCount; c++)
+				out.putFloat(circuits.getEndurance(c));
+			for (int c = 0; c < circuitCount; c++)
+				out.putFloat(circuits.getPizzazz(c));
+			for (int j = 0; j < festival.getJugglerCount(); j++) {
+				if (!festival.isWithdrawn(j))
+					out.putInt(festival.getJugglerNumber(j));
+			}
+			for (int j = 0; j < festival.getJugglerCount(); j++) {
+				if (!festival.isWithdrawn(j))
+					out.putFloat(festival.getHandEyeCoord(j));
+			}
+			for (int j = 0; j < festival.getJugglerCount(); j++) {
+				if (!festival.isWithdrawn(j))
+					out.putFloat(festival.getEndurance(j));
+			}
+			for (int j = 0; j < festival.getJugglerCount(); j++) {
+				if (!festival.isWithdrawn(j))
+					out.putFloat(festival.getPizzazz(j));
+			}
+			int offset = 0;
+			out.putInt(offset);
+			for (int j = 0; j < festival.getJugglerCount(); j++) {
+				if (!festival.isWithdrawn(j)) {
+					offset += festival.getPreferenceEnd(j) - festival.getPreferenceStart(j);
+					out.putInt(offset);
+				}
+			}
+			for (int j = 0; j < festival.getJugglerCount(); j++) {
+				if (!festival.isWithdrawn(j)) {
+					for (int k = festival.getPreferenceStart(j); k < festival.getPreferenceEnd(j); k++)
+						out.putInt(festival.getPreferenceCircuit(k));
+				}
+			}
+			for (int j = 0; j < festival.getJugglerCount(); j++) {
+				if (!festival.isWithdrawn(j)) {
+					for (int k = festival.getPreferenceStart(j); k < festival.getPreferenceEnd(j); k++)
+						out.putFloat(festival.getPreferenceScore(k));
+				}
+			}
+			writeNames(festival, out);
+			out.flush();
+			header.putLong(crc.getValue()).flip();
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+			channel.force(false);
+		}
+	}
+
+	//the names section, for the circuits and active jugglers without a number.
+	private static void writeNames(Festival festival, ColumnOutput out) throws IOException {
+		CircuitCatalog circuits = festival.getCircuits();
+		int circuitNames = 0, jugglerNames = 0, words = 0;
+		for (int c = 0; c < circuits.size(); c++) {
+			if (circuits.getNumber(c) < 0) {
+				circuitNames++;
+				words += 2 + (circuits.getName(c).length() + 3) / 4;
+			}
+		}
+		for (int j = 0; j < festival.getJugglerCount(); j++) {
+			if (!festival.isWithdrawn(j) && festival.getJugglerNumber(j) < 0) {
+				jugglerNames++;
+				words += 2 + (festival.getJugglerName(j).length() + 3) / 4;
+			}
+		}
+		out.putInt(circuitNames);
+		out.putInt(jugglerNames);
+		out.putInt(words);
+		for (int c = 0; c < circuits.size(); c++) {
+			if (circuits.getNumber(c) < 0)
+				putName(out, c, circuits.getName(c));
+		}
+		int index = 0;
+		for (int j = 0; j < festival.getJugglerCount(); j++) {
+			if (festival.isWithdrawn(j))
+				continue;
+			if (festival.getJugglerNumber(j) < 0)
+				putName(out, index, festival.getJugglerName(j));
+			index++;
+		}
+	}
+
+	private static void putName(ColumnOutput out, int index, String name) throws IOException {
+		byte[] bytes = name.getBytes(StandardCharsets.ISO_8859_1);
+		out.putInt(index);
+		out.putInt(bytes.length);
+		for (int i = 0; i < bytes.length; i += 4) {
+			int word = 0;
+			for (int k = Math.min(bytes.length, i + 4) - 1; k >= i; k--)
+				word = word << 8 | (bytes[k] & 0xff);
+			out.putInt(word);
+		}
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return Festival
+	 * Load a snapshot saved by write.
+	 * @throws IOException if the file can't be read, or is not a whole, undamaged snapshot.
+	 */
+	static Festival read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Header header = new Header(channel, file);
+			int jugglerCount = header.jugglerCount;
+			int preferenceCount = header.preferenceCount;
+			ColumnInput in = new ColumnInput(channel, header.crc, HEADER_SIZE);
+			CircuitCatalog circuits = readCircuits(in, header.circuitCount, file);
+			int[] jugglerNumbers = in.getInts(jugglerCount);
+			float[] handEyeCoord = in.getFloats(jugglerCount);
+			float[] endurance = in.getFloats(jugglerCount);
+			float[] pizzazz = in.getFloats(jugglerCount);
+			int[] preferenceOffsets = in.getInts(jugglerCount + 1);
+			int[] preferenceCircuits = in.getInts(preferenceCount);
+			float[] preferenceScores = in.getFloats(preferenceCount);
+			Names names = new Names(in, header, channel, file);
+			header.check(file);
+			//the checksum can't catch a snapshot written wrong in the first place, so the indexes
+			//are checked before anything uses them.
+			if (preferenceOffsets[0] != 0 || preferenceOffsets[jugglerCount] != preferenceCount)
+				throw new IOException(file + " has preference offsets that don't cover its preferences");
+			for (int j = 0; j < jugglerCount; j++) {
+				if (preferenceOffsets[j + 1] < preferenceOffsets[j])
+					throw new IOException(file + " has preference offsets out of order");
+			}
+			for (int i = 0; i < preferenceCount; i++) {
+				if (preferenceCircuits[i] < 0 || preferenceCircuits[i] >= circuits.size())
+					throw new IOException(file + " has a preference for a circuit it doesn't have");
+			}
+			Festival festival = new Festival(circuits, jugglerCount, jugglerNumbers, handEyeCoord, endurance, pizzazz,
+					preferenceOffsets, preferenceCircuits, preferenceScores);
+			names.apply(festival, file);
+			int named = 0;
+			for (int j = 0; j < jugglerCount; j++) {
+				if (jugglerNumbers[j] < -1)
+					throw new IOException(file + " has a juggler with a negative number");
+				if (jugglerNumbers[j] == -1)
+					named++;
+			}
+			if (named != names.jugglerCount)
+				throw new IOException(file + " has jugglers without a number or a name");
+			return festival;
+		}
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return Festival
+	 * Map a snapshot saved by write into memory as a MappedFestival, with only the circuits
+	 * copied onto the heap. The whole file is read once to check it against its checksum, but
+	 * not kept; unlike read, the preference lists are not checked one by one, so that nothing
+	 * per juggler is held on the heap.
+	 * @throws IOException if the file can't be read, or is not a whole, undamaged snapshot.
+	 */
+	static Festival map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Header header = new Header(channel, file);
+			ColumnInput in = new ColumnInput(channel, header.crc, HEADER_SIZE);
+			CircuitCatalog circuits = readCircuits(in, header.circuitCount, file);
+			long jugglers = in.getPosition();
+			in.skip(header.namesPosition - jugglers);
+			Names names = new Names(in, header, channel, file);
+			header.check(file);
+			Festival festival = new MappedFestival(circuits, channel, jugglers, header.jugglerCount, header.preferenceCount);
+			names.apply(festival, file);
+			return festival;
+		}
+	}
+
+	private static CircuitCatalog readCircuits(ColumnInput in, int circuitCount, Path file) throws IOException {
+		int[] circuitNumbers = in.getInts(circuitCount);
+		float[] circuitH = in.getFloats(circuitCount);
+		float[] circuitE = in.getFloats(circuitCount);
+		float[] circuitP = in.getFloats(circuitCount);
+		for (int c = 0; c < circuitCount; c++) {
+			if (circuitNumbers[c] < -1)
+				throw new IOException(file + " has a circuit with a negative number");
+		}
+		return new CircuitCatalog(circuitCount, circuitNumbers, circuitH, circuitE, circuitP);
+	}
+
+	//The names section of a snapshot being loaded, checked against the size of the file.
+	private static final class Names {
+		final int circuitCount;
+		final int jugglerCount;
+		final int[] words;
+
+		Names(ColumnInput in, Header header, FileChannel channel, Path file) throws IOException {
+			int[] counts = in.getInts(3);
+			circuitCount = counts[0];
+			jugglerCount = counts[1];
+			if (counts[0] < 0 || counts[1] < 0 || counts[2] < 0
+					|| channel.size() != header.namesPosition + 12 + 4L * counts[2])
+				throw new IOException(file + " is " + channel.size() + " bytes, more or less than its names take;"
+						+ " it is damaged or was not completely written");
+			words = in.getInts(counts[2]);
+		}
+
+		//names the circuits and jugglers of the festival that have no number.
+		void apply(Festival festival, Path file) throws IOException {
+			CircuitCatalog circuits = festival.getCircuits();
+			int position = 0;
+			for (int i = 0; i < circuitCount + jugglerCount; i++) {
+				boolean circuit = i < circuitCount;
+				if (position + 2 > words.length)
+					throw new IOException(file + " has names that don't fit in their section");
+				int index = words[position++], length = words[position++];
+				if (length < 0 || position + (length + 3) / 4 > words.length)
+					throw new IOException(file + " has names that don't fit in their section");
+				if (index < 0 || index >= (circuit ? circuits.size() : festival.getJugglerCount())
+						|| (circuit ? circuits.getNumber(index) : festival.getJugglerNumber(index)) != -1)
+					throw new IOException(file + " has a name for a " + (circuit ? "circuit" : "juggler") + " with a number");
+				byte[] bytes = new byte[length];
+				for (int k = 0; k < length; k++)
+					bytes[k] = (byte) (words[position + k / 4] >>> (8 * (k % 4)));
+				position += (length + 3) / 4;
+				String name = new String(bytes, StandardCharsets.ISO_8859_1);
+				if (circuit)
+					circuits.setName(index, name);
+				else
+					festival.setJugglerName(index, name);
+			}
+			for (int c = 0; c < circuits.size(); c++) {
+				if (circuits.getNumber(c) == -1 && circuits.getName(c) == null)
+					throw new IOException(file + " has a circuit without a number or a name");
+			}
+		}
+	}
+
+	//The header of a snapshot being loaded, checked against the size of the file, and the
+	//checksum of what has been read of it so far.
+	private static final class Header {
+		final int circuitCount;
+		final int jugglerCount;
+		final int preferenceCount;
+		//where the names section starts, after the columns.
+		final long namesPosition;
+		final long checksum;
+		final CRC32C crc = new CRC32C();
+
+		Header(FileChannel channel, Path file) throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || !header.slice(0, MAGIC.length).equals(ByteBuffer.wrap(MAGIC)))
+				throw new IOException(file + " is not a festival snapshot");
+			header.position(MAGIC.length);
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException(file + " is a version " + version + " snapshot; only version " + VERSION + " can be loaded");
+			circuitCount = header.getInt();
+			jugglerCount = header.getInt();
+			preferenceCount = header.getInt();
+			checksum = header.getLong();
+			namesPosition = HEADER_SIZE + 16L * circuitCount + 16L * jugglerCount + 4L * (jugglerCount + 1)
+					+ 8L * preferenceCount;
+			if (circuitCount < 0 || jugglerCount < 0 || preferenceCount < 0 || channel.size() < namesPosition + 12)
+				throw new IOException(file + " is " + channel.size() + " bytes, less than the " + (namesPosition + 12)
+						+ " its header says; it is damaged or was not completely written");
+			crc.update(header.array(), MAGIC.length, 16);
+		}
+
+		//once the whole file has gone through crc.
+		void check(Path file) throws IOException {
+			if (crc.getValue() != checksum)
+				throw new IOException(file + " does not match its checksum; it is damaged");
+		}
+	}
+}
@@ -0,0 +1,435 @@
+package jugglefest;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Class FillPhase
+ * @author Shalini Israni
+ * The fill phase of makeAssignments, kept up to date as the pairing by ranking changes.
+ * The jugglers left without a circuit by the pairing by ranking make up the pool. Circuits
+ * with room are taken in the fill order, and each takes the jugglers from the pool with the
+ * highest match values for it, until it is full or the pool runs out. Of two jugglers with the
+ * same match value, it takes the one who came first on the matching's remaining list, as a
+ * scan down the list for the best would; jugglers who join the pool later come after those.
+ * The fill order is the
+ * order the circuits came out of the HashMap<String, Circuit> they used to be kept in, which
+ * depends on their names and on the order they were loaded; it looks random, but it is the
+ * order the assignments have always been made in, so the output stays the same.
+ * The pool is a SkillIndex, and every juggler in it is tagged with the place in the fill order
+ * of the circuit that took him, so that a circuit can search just the jugglers it would have
+ * had to choose from on its turn: those taken by circuits after it, and those no circuit took.
+ * When something changes, only the circuits it reaches are redone:
+ * - a juggler joining the pool goes down the circuits with room, in order, until one takes
+ *   him, that is until he beats its weakest pool juggler or it has room left. That juggler
+ *   then goes on down the line in his place.
+ * - a circuit that loses a pool juggler, or gets more room, takes the best juggler from
+ *   those it had to choose from. If a later circuit had him, that circuit is now short by
+ *   one and does the same.
+ * The pairing by ranking always comes first: when one of its jugglers takes a place on a
+ * circuit that is full, the circuit's weakest pool juggler makes way for him.
+ * The fill is checkpointed between circuits. The matching's remaining list is left as it
+ * was until the end, and its fill place says which circuit is next, so a matching saved part
+ * way through has the pool, and the jugglers the circuits before that place took from it.
+ */
+final class FillPhase {
+	private final Festival festival;
+	private final Matching matching;
+	private final CircuitRosters rosters;
+	private SkillIndex pool;
+	//the pool jugglers each circuit has, with their match values, in no particular order, and
+	//the slot of the weakest one (lowest match value, then highest rank in the pool), or -1.
+	private int[][] members;
+	private float[][] memberScores;
+	private int[] counts;
+	private int[] weakest;
+	//the circuits in fill order, and the place of each circuit in it.
+	private int[] order;
+	private int[] places;
+	//places in the fill order of the circuits with room for pool jugglers.
+	private final BitSet open = new BitSet();
+	//pool jugglers no circuit took, by juggler index.
+	private final BitSet leftovers = new BitSet();
+	//places in the fill order of the circuits refill still has to see to; kept from one call to
+	//the next, empty between them.
+	private final BitSet shortPlaces = new BitSet();
+	private long scoreCalculations;
+
+	/**
+	 * Constructor
+	 * @param matching
+	 */
+	public FillPhase(Matching matching) {
+		this.matching = matching;
+		this.festival = matching.getFestival();
+		this.rosters = matching.getRosters();
+		int circuitCount = rosters.getCircuitCount();
+		this.members = new int[circuitCount][];
+		this.memberScores = new float[circuitCount][];
+		this.counts = new int[circuitCount];
+		this.weakest = new int[circuitCount];
+		Arrays.fill(weakest, -1);
+		setOrder(fillOrder(festival.getCircuits()));
+	}
+
+	/**
+	 *
+	 * @param circuits
+	 * @return int[]
+	 * The circuits in the order the fill phase takes them: the order of the values of a
+	 * HashMap from their names, put in as they were loaded.
+	 */
+	static int[] fillOrder(CircuitCatalog circuits) {
+		Map<String, Integer> byName = new HashMap<String, Integer>();
+		for (int c = 0; c < circuits.size(); c++)
+			byName.put(circuits.getName(c), c);
+		int[] order = new int[byName.size()];
+		int place = 0;
+		for (int c : byName.values())
+			order[place++] = c;
+		return order;
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of match values calculated so far.
+	 */
+	public long getScoreCalculations() {
+		return scoreCalculations + (pool == null ? 0 : pool.getScoreCalculations());
+	}
+
+	/**
+	 *
+	 * @param c
+	 * @return int
+	 * Number of pool jugglers on circuit c.
+	 */
+	public int getCount(int c) {
+		return counts[c];
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return boolean
+	 * True if juggler j is in the pool, whether a circuit took him or not.
+	 */
+	public boolean contains(int j) {
+		return pool.contains(j);
+	}
+
+	/**
+	 * Fill the circuits with room from the remaining jugglers of the matching, and leave the
+	 * ones no circuit takes on its remaining list, in the order they were on it.
+	 * The remaining list may name a juggler twice, or one who has since found a circuit or
+	 * withdrawn; he only counts where he first appears, or not at all.
+	 */
+	public void fill() {
+		fill(null, null);
+	}
+
+	/**
+	 * The same, telling filled about each circuit that had room as soon as it is done: the
+	 * circuits after it only take jugglers it passed over, so its roster won't change again
+	 * unless the matching does. Before each circuit, checkpoints is offered the matching.
+	 * If the matching is from a checkpoint taken part way through the fill, the fill carries
+	 * on from there, and filled is told about the circuits before it that had room and are
+	 * not full; it was told about the full ones with those the pairing by ranking filled.
+	 * @param filled or null
+	 * @param checkpoints or null
+	 */
+	public void fill(IntConsumer filled, CheckpointWriter checkpoints) {
+		int start = Math.max(0, matching.getFillPlace());
+		//pool jugglers the circuits before the start took, if the fill is resumed.
+		BitSet taken = start > 0 ? new BitSet() : null;
+		int[] candidates = matching.getRemaining().toArray();
+		int count = 0;
+		for (int i = 0; i < candidates.length; i++) {
+			int j = candidates[i];
+			if (festival.isWithdrawn(j))
+				continue;
+			if (matching.getAssignedCircuit(j) < 0) {
+				if (!leftovers.get(j)) {
+					leftovers.set(j);
+					candidates[count++] = j;
+				}
+			} else if (taken != null && !taken.get(j)) {
+				taken.set(j);
+				candidates[count++] = j;
+			}
+		}
+		candidates = Arrays.copyOf(candidates, count);
+		pool = new SkillIndex(festival, candidates);
+		for (int j = taken == null ? -1 : taken.nextSetBit(0); j >= 0; j = taken.nextSetBit(j + 1)) {
+			int c = matching.getAssignedCircuit(j);
+			join(c, j, festival.calculateMatch(j, c));
+		}
+		for (int place = 0; place < start; place++) {
+			int c = order[place];
+			updateOpen(c);
+			if (filled != null && room(c) > 0 && !rosters.isFull(c))
+				filled.accept(c);
+		}
+		fillInOrder(start, filled, checkpoints);
+		updateRemaining();
+	}
+
+	//has each circuit with room, from place start in fill order, take the best of the
+	//jugglers no circuit has.
+	private void fillInOrder(int start, IntConsumer filled, CheckpointWriter checkpoints) {
+		for (int place = start; place < order.length; place++) {
+			int c = order[place];
+			matching.setFillPlace(place);
+			if (checkpoints != null)
+				checkpoints.offer(matching);
+			updateOpen(c);
+			if (room(c) <= 0)
+				continue;
+			while (counts[c] < room(c) && !leftovers.isEmpty()) {
+				int j = pool.search(c, place);
+				take(c, j, pool.getBestScore());
+			}
+			if (filled != null)
+				filled.accept(c);
+		}
+		matching.setFillPlace(order.length);
+	}
+
+	/**
+	 * Put the pool jugglers no circuit took on the matching's remaining list, in the order of
+	 * their ranks in the pool.
+	 */
+	public void updateRemaining() {
+		long[] left = new long[leftovers.cardinality()];
+		int count = 0;
+		for (int j = leftovers.nextSetBit(0); j >= 0; j = leftovers.nextSetBit(j + 1))
+			left[count++] = ((long) pool.getRank(j) << 32) | j;
+		Arrays.sort(left);
+		IntQueue remaining = matching.getRemaining();
+		remaining.clear();
+		for (long key : left)
+			remaining.add((int) key);
+	}
+
+	/**
+	 * Juggler j went through his whole list without getting a circuit.
+	 * @param j
+	 */
+	public void addToPool(int j) {
+		pool.add(j, SkillIndex.UNTAKEN);
+		leftovers.set(j);
+		insert(j, -1);
+	}
+
+	/**
+	 * Juggler j leaves the pool, to propose again or because he withdrew, and gives up the
+	 * circuit it gave him.
+	 * @param j
+	 */
+	public void removeFromPool(int j) {
+		int c = circuitOf(j);
+		if (c >= 0)
+			drop(c, j);
+		leftovers.clear(j);
+		pool.remove(j);
+		if (c >= 0)
+			refill(c);
+	}
+
+	/**
+	 * Juggler j takes a place on circuit c in the pairing by ranking, which must have room
+	 * for him there, if need be by taking it from a pool juggler.
+	 * @param c
+	 * @param j
+	 * @param score
+	 */
+	public void addToCircuit(int c, int j, float score) {
+		int bumped = -1;
+		if (rosters.isFull(c)) {
+			bumped = members[c][weakest[c]];
+			drop(c, bumped);
+		}
+		rosters.add(c, j, score);
+		updateOpen(c);
+		if (bumped >= 0)
+			insert(bumped, places[c]);
+	}
+
+	/**
+	 * Juggler j leaves the place he had on circuit c in the pairing by ranking, and the
+	 * circuit fills it from the pool.
+	 * @param c
+	 * @param j
+	 */
+	public void removeFromCircuit(int c, int j) {
+		rosters.remove(c, j);
+		updateOpen(c);
+		refill(c);
+	}
+
+	/**
+	 * The capacity of circuit c has changed. Pool jugglers it no longer has room for go on
+	 * down the line, and new room is filled from the pool.
+	 * @param c
+	 */
+	public void capacityChanged(int c) {
+		updateOpen(c);
+		while (rosters.size(c) > rosters.capacity(c) && counts[c] > 0) {
+			int bumped = members[c][weakest[c]];
+			drop(c, bumped);
+			insert(bumped, places[c]);
+		}
+		refill(c);
+	}
+
+	/**
+	 * Circuit c, the last one, has been added to the rosters.
+	 * Its name can put it anywhere in the fill order. The circuits before it keep their places
+	 * and took what they would take again, but those after it may lose jugglers to it, so the
+	 * fill phase is done again from its place on, with the same pool. When the HashMap the order
+	 * comes from grows, every circuit can move, and it is done again from the first circuit that
+	 * did, often the first of all; that happens each time the number of circuits doubles.
+	 * @param c
+	 */
+	public void addCircuit(int c) {
+		int count = c + 1;
+		members = Arrays.copyOf(members, count);
+		memberScores = Arrays.copyOf(memberScores, count);
+		counts = Arrays.copyOf(counts, count);
+		weakest = Arrays.copyOf(weakest, count);
+		weakest[c] = -1;
+		int[] newOrder = fillOrder(festival.getCircuits());
+		int start = 0;
+		while (start < order.length && newOrder[start] == order[start])
+			start++;
+		for (int place = start; place < order.length; place++) {
+			int d = order[place];
+			while (counts[d] > 0)
+				drop(d, members[d][counts[d] - 1]);
+		}
+		open.clear(start, order.length);
+		setOrder(newOrder);
+		fillInOrder(start, null, null);
+	}
+
+	private void setOrder(int[] order) {
+		this.order = order;
+		this.places = new int[order.length];
+		for (int place = 0; place < order.length; place++)
+			places[order[place]] = place;
+	}
+
+	//the circuit pool juggler j is on, or -1.
+	private int circuitOf(int j) {
+		int place = pool.getTag(j);
+		return place == SkillIndex.UNTAKEN ? -1 : order[place];
+	}
+
+	//places left on circuit c once the pairing by ranking has had its share.
+	private int room(int c) {
+		return rosters.capacity(c) - (rosters.size(c) - counts[c]);
+	}
+
+	private void updateOpen(int c) {
+		open.set(places[c], room(c) > 0);
+	}
+
+	//has juggler j, who is in the pool, go down the circuits with room after place after in the
+	//fill order.
+	private void insert(int j, int after) {
+		for (int place = open.nextSetBit(after + 1); place >= 0; place = open.nextSetBit(place + 1)) {
+			int c = order[place];
+			float score = festival.calculateMatch(j, c);
+			scoreCalculations++;
+			if (counts[c] < room(c)) {
+				take(c, j, score);
+				return;
+			}
+			if (counts[c] > 0 && beats(j, score, c)) {
+				int bumped = members[c][weakest[c]];
+				drop(c, bumped);
+				take(c, j, score);
+				j = bumped;
+			}
+		}
+	}
+
+	//fills the room on circuit c from the pool, and then on every circuit it took a juggler
+	//from, in fill order.
+	private void refill(int c) {
+		shortPlaces.set(places[c]);
+		//a circuit only takes jugglers from circuits after it, so places are only set past this one.
+		for (int place = shortPlaces.nextSetBit(0); place >= 0; place = shortPlaces.nextSetBit(place)) {
+			shortPlaces.clear(place);
+			int d = order[place];
+			while (counts[d] < room(d)) {
+				int j = pool.search(d, place);
+				if (j < 0)
+					break;
+				int from = circuitOf(j);
+				if (from >= 0)
+					drop(from, j);
+				take(d, j, pool.getBestScore());
+				if (from >= 0)
+					shortPlaces.set(places[from]);
+			}
+		}
+	}
+
+	//true if juggler j, with the given match value for circuit c, would be chosen over the
+	//weakest pool juggler on it.
+	private boolean beats(int j, float score, int c) {
+		float weakestScore = memberScores[c][weakest[c]];
+		return score > weakestScore
+				|| (score == weakestScore && pool.getRank(j) < pool.getRank(members[c][weakest[c]]));
+	}
+
+	//puts pool juggler j, who is not on a circuit, on circuit c.
+	private void take(int c, int j, float score) {
+		join(c, j, score);
+		rosters.add(c, j, score);
+		matching.setAssignedCircuit(j, c);
+	}
+
+	//counts pool juggler j as one of circuit c's.
+	private void join(int c, int j, float score) {
+		leftovers.clear(j);
+		pool.setTag(j, places[c]);
+		if (members[c] == null) {
+			members[c] = new int[4];
+			memberScores[c] = new float[4];
+		} else if (counts[c] == members[c].length) {
+			members[c] = Arrays.copyOf(members[c], counts[c] * 2);
+			memberScores[c] = Arrays.copyOf(memberScores[c], counts[c] * 2);
+		}
+		int slot = counts[c]++;
+		members[c][slot] = j;
+		memberScores[c][slot] = score;
+		if (weakest[c] < 0 || !beats(j, score, c))
+			weakest[c] = slot;
+	}
+
+	//takes pool juggler j off circuit c. He stays in the pool, without a circuit.
+	private void drop(int c, int j) {
+		int[] list = members[c];
+		int slot = 0;
+		while (list[slot] != j)
+			slot++;
+		int last = --counts[c];
+		list[slot] = list[last];
+		memberScores[c][slot] = memberScores[c][last];
+		weakest[c] = -1;
+		for (int i = 0; i < counts[c]; i++) {
+			if (weakest[c] < 0 || !beats(list[i], memberScores[c][i], c))
+				weakest[c] = i;
+		}
+		rosters.remove(c, j);
+		matching.setAssignedCircuit(j, -1);
+		pool.setTag(j, SkillIndex.UNTAKEN);
+		leftovers.set(j);
+	}
+}
@@ -0,0 +1,132 @@
+package jugglefest;
+
+import java.util.Arrays;
+
+/**
+ * Class IntIntMap
+ * @author Shalini Israni
+ * A map from numbers that are not negative to ints, in one array of keys and one of values,
+ * with open addressing: a key goes in the first free slot from where its hash lands, and a
+ * lookup goes along from there until it finds the key or a free slot. It is used to find
+ * circuits and jugglers by the number in their names. Unlike an array indexed by the number,
+ * its size depends only on how many keys there are, so a name like C999999999 costs no more
+ * than C9; and unlike a HashMap<Integer, Integer>, there is no object per entry.
+ * The table is kept at most half full, and doubles when it gets fuller.
+ */
+final class IntIntMap {
+	private static final int FREE = -1;
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+
+	/**
+	 * Constructor
+	 * @param expectedSize
+	 */
+	public IntIntMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(2 * expectedSize, 16) - 1) << 1;
+		this.keys = new int[capacity];
+		this.values = new int[capacity];
+		Arrays.fill(keys, FREE);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return int
+	 * The value put for key, or -1 if there is none.
+	 */
+	public int get(int key) {
+		if (key < 0)
+			return -1;
+		int mask = keys.length - 1;
+		for (int slot = hash(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+			if (keys[slot] == key)
+				return values[slot];
+		}
+		return -1;
+	}
+
+	/**
+	 * Put value for key, in place of any value it had.
+	 * @param key not negative
+	 * @param value
+	 */
+	public void put(int key, int value) {
+		if (key < 0)
+			throw new IllegalArgumentException("Negative key " + key);
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != FREE && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		if (keys[slot] == FREE) {
+			if (2 * (size + 1) > keys.length) {
+				grow();
+				put(key, value);
+				return;
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Take every key out of the map, keeping the table at the size it has grown to.
+	 */
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		size = 0;
+	}
+
+	/**
+	 * Take key, and its value, out of the map, if it is there.
+	 * @param key
+	 */
+	public void remove(int key) {
+		if (key < 0)
+			return;
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != key) {
+			if (keys[slot] == FREE)
+				return;
+			slot = (slot + 1) & mask;
+		}
+		//moves back every key after it that would no longer be found past the gap.
+		int gap = slot;
+		for (slot = (gap + 1) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+			int home = hash(keys[slot]) & mask;
+			if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+				keys[gap] = keys[slot];
+				values[gap] = values[slot];
+				gap = slot;
+			}
+		}
+		keys[gap] = FREE;
+		size--;
+	}
+
+	//spreads numbers that go up one at a time over the whole table.
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void grow() {
+		int[] oldKeys = keys, oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		Arrays.fill(keys, FREE);
+		size = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldKeys[slot] != FREE)
+				put(oldKeys[slot], oldValues[slot]);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package jugglefest;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Class IntQueue
+ * @author Shalini Israni
+ * A first-in first-out queue of juggler indexes, kept in a growable ring buffer.
+ * This replaces the LinkedList of unassigned jugglers: no node object per entry, and adding
+ * or removing at either end is just an array write and an index update.
+ */
+final class IntQueue {
+	private int[] elements;
+	private int head;
+	private int size;
+
+	/**
+	 * Constructor
+	 * @param expectedSize
+	 */
+	public IntQueue(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 1));
+		if (capacity < expectedSize)
+			capacity <<= 1;
+		this.elements = new int[Math.max(capacity, 16)];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Add to the back of the queue.
+	 * @param value
+	 */
+	public void add(int value) {
+		if (size == elements.length)
+			grow();
+		elements[(head + size) & (elements.length - 1)] = value;
+		size++;
+	}
+
+	/**
+	 *
+	 * @return int
+	 * Remove from the front of the queue.
+	 */
+	public int poll() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		int value = elements[head];
+		head = (head + 1) & (elements.length - 1);
+		size--;
+		return value;
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return int
+	 * The i-th element from the front, without removing it.
+	 */
+	public int get(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Queue position " + i + ", size " + size);
+		return elements[(head + i) & (elements.length - 1)];
+	}
+
+	/**
+	 *
+	 * @return int[]
+	 * The elements from front to back, in a new array.
+	 */
+	public int[] toArray() {
+		int[] values = new int[size];
+		for (int i = 0; i < size; i++)
+			values[i] = elements[(head + i) & (elements.length - 1)];
+		return values;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	private void grow() {
+		int[] values = toArray();
+		elements = Arrays.copyOf(values, elements.length * 2);
+		head = 0;
+	}
+}
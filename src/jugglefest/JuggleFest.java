@@ -1,16 +1,24 @@
 package jugglefest;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map.Entry;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.SubmissionPublisher;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Class JuggleFest
@@ -25,361 +33,798 @@ import java.util.Map.Entry;
  */
 
  class JuggleFest {
+	//where outputAssignments() writes to.
+	static final String OUTPUT_FILE = "juggler-circuit-assignments.txt";
+	//jugglers the pairing by ranking handles between looks at whether a checkpoint is due.
+	private static final int CHECKPOINT_CHECK_MASK = (1 << 12) - 1;
+	//circuits whose rosters each thread publishes at a time.
+	private static final int CIRCUITS_PER_TASK = 256;
+	
 	/***
-	 * An extensible array is needed to store jugglers when reading from the file since
-	 * we aren't sure of the exact number in the beginning.
-	 * LinkedList, not ArrayList,because this also functions as the unassigned list of jugglers,
-	 * and needs frequent insertion and deletion, and not necessarily fast iteration that
-	 * ArrayList provides.
-	 * Not Vector, since for this program, I have assumed that multiple threads
-	 * will not be accessing the same Juggler objects at once, and we can avoid the 
-	 * performance hit that the synchronized methods in Vector add.
-	 */
-	
-	private LinkedList<Juggler>jugglers; 
-	/**
-	 * The size of list of circuits is also unknown until the file is read, so needs to
-	 * be growable, but unlike the list of jugglers, doesn't need frequent insertion and
-	 * deletion.
-	 * Since all circuits come before jugglers in the input file, quick retrieval of circuits
-	 * to store a juggler's preferences would be well achieved with a HashMap. 
-	 * Even though a HashMap is unsorted and unordered, since we do not really need it to be
-	 * ordered or sorted for this program, it is a good choice. I confirmed with the sample
-	 * output file that the circuits do not need to be ordered in the same order that they 
-	 * came in, before I made this choice.
-	 * */
-	private HashMap<String,Circuit>circuits;
-	/**
-	 * This is a list of all jugglers remaining at the end of the pairing attempt.
+	 * Everything read from the file. Jugglers and circuits are kept column by column with
+	 * int indexes instead of Juggler and Circuit objects, so that a festival with millions of
+	 * jugglers costs a few dozen bytes per juggler instead of a few hundred, and the garbage
+	 * collector has a handful of big arrays to look at instead of millions of small objects.
+	 * Circuits are found by number instead of by name through a HashMap; see CircuitCatalog.
+	 * getCircuits() and getRemainingJugglers() still hand out Circuit and Juggler objects,
+	 * built from this, for code that wants them.
+	 */
+	private Festival festival;
+	/**
+	 * The assignment made by makeAssignments: circuit rosters, how far each juggler got down
+	 * his list, the queue of unassigned jugglers (an int ring buffer, not a LinkedList), and
+	 * the remaining jugglers.
 	 * Jugglers do not rank all circuits. It is possible a juggler does not get assigned
 	 * to any circuit in his ranking.
 	 * But we still want to fill all circuits with the best jugglers (for the specific circuit)
 	 * until all circuits are filled.
-	 * I use this list after the pairing by ranking is done, to fill all circuits while
-	 * maximizing the "value" of a circuit by picking remaining jugglers with the highest match
-	 * for the circuit.	 
+	 * The remaining jugglers are used after the pairing by ranking is done, to fill all
+	 * circuits while maximizing the "value" of a circuit by picking remaining jugglers with
+	 * the highest match for the circuit.
+	 */
+	private Matching matching;
+	/**
+	 * What the matching came to, as an Assignment: made by makeAssignments, and made again
+	 * the first time it is asked for after the matching changes.
 	 */
-	private LinkedList<Juggler> remainingJugglers ;
+	private Assignment assignment;
+	/**
+	 * Brings the matching up to date when jugglers or circuits change after makeAssignments,
+	 * instead of making the assignment again. Made on the first change.
+	 */
+	private MatchingRepair repair;
+	/**
+	 * The fill phase of the matching.
+	 */
+	private FillPhase fill;
+	/**
+	 * The upper bound on the total match value found by makeBestAssignments, or NaN if the
+	 * matching wasn't made by it.
+	 */
+	private double scoreBound = Double.NaN;
+	/**
+	 * Where the rosters of the next assignments are published, if getRosterPublisher was
+	 * called; see RosterEvent.
+	 */
+	private SubmissionPublisher<RosterEvent> rosterPublisher;
+	/**
+	 * Every juggler's match value for each circuit in his preference list is calculated once
+	 * when the juggler is loaded and kept on the Preference, and the value for the circuit he
+	 * is assigned to is kept on the circuit's roster. These count how often a match value was
+	 * read from there, and how often one actually had to be calculated, so we can confirm
+	 * the matching and the output never calculate the same value twice.
+	 */
+	private long scoreCacheHits ;
+	private long scoreCalculations ;
+	/**
+	 * Proposal and bump counts, and the time of each phase, for finding out why a run is slow.
+	 * See SolverMetrics.
+	 */
+	private final SolverStatistics statistics = new SolverStatistics();
+	/**
+	 * Where makeAssignments saves checkpoints of the pairing by ranking, and how often, if
+	 * setCheckpoint was called. See SolverCheckpoint.
+	 */
+	private Path checkpointFile;
+	private long checkpointIntervalMillis;
+	/**
+	 * Where the matching keeps its per-juggler state, if setOffHeap was called. Snapshots are
+	 * then mapped instead of copied onto the heap; see MappedFestival and MappedMatching.
+	 */
+	private Path offHeapDirectory;
+	/**
+	 * Where messages about files that can't be loaded, and changes that can't be made, are
+	 * printed. Standard output unless setMessages was called.
+	 */
+	private PrintStream messages = System.out;
 	
 	
 	/***
 	 * Constructor
 	 */
 	public JuggleFest() {
-		this.circuits= new HashMap<String, Circuit>();
-		this.jugglers=new LinkedList<Juggler>();
-		this.remainingJugglers= new LinkedList<Juggler>();
+		this.festival = new Festival();
+	}
+
+	/***
+	 * Constructor for a festival that was loaded some other way, such as by a FestivalService
+	 * from the body of a request.
+	 * @param festival
+	 */
+	JuggleFest(Festival festival) {
+		this.festival = festival;
 	}
 
 	/**
 	 * 
-	 * @param line
-	 * @return boolean
-	 * This method loads a circuit from a single line in the file.
+	 * @param filename
+	 * @return
+	 * This method maps the file into memory and loads every circuit and juggler in it with a
+	 * FestivalParser, which works on the bytes directly instead of on a String per line.
+	 * If it finds an unexpected character, or there is an error loading the circuit or juggler
+	 * it will output the problematic line number.
 	 */
 	
-	private boolean loadCircuit(String line){
-		//C C0 H:10 E:8 P:10
-		String H=null, E=null, P=null, name=null ;
-		String [] circuitData = line.split(" ");
-		for(int i=0; i<circuitData.length; i++){
-			if(circuitData[i].equals("C"))
-				continue ;
-			else{
-				switch(circuitData[i].charAt(0)){
-				case 'C':
-					name = circuitData[i];
-					break;
-				case 'H':
-					H = circuitData[i].substring(2);
-					break;
-				case 'E':
-					E= circuitData[i].substring(2);
-					break;
-				case 'P':
-					P = circuitData[i].substring(2);
-					break;
-				}
-			}
-			
-		}
-		if(name == null || H == null || E == null || P == null){
-			return false;
-		}
-		circuits.put(name, new Circuit(name, (new Float(H)).floatValue(), (new Float(E)).floatValue(), (new Float (P).floatValue())));
-		return true;
+	public boolean loadFile (String filename){
+		return loadFile(filename, 1);
 	}
+	
 	/**
 	 * 
-	 * @param line
+	 * @param filename
+	 * @param threads
 	 * @return
-	 * This method loads a Juggler from a single line in the file
+	 * Same as loadFile(filename), but with more than one thread the juggler lines are parsed
+	 * in parallel chunks. The jugglers are loaded in the same order, and errors are reported
+	 * with the same line numbers, as with one thread.
+	 * The file can also be a snapshot saved by saveSnapshot, which is told apart by its first
+	 * bytes and loaded without parsing; see FestivalSnapshot.
 	 */
 	
-	private boolean loadJuggler(String line){
-		//J J0 H:7 E:6 P:0 C453,C1706,C318,C271,C1958,C1051,C241,C1736,C304,C518
-		String H=null, E=null, P=null, name=null, preferences=null ;
-		String [] jugglerData = line.split(" ");
-		for(int i=0; i<jugglerData.length; i++){
-			if(jugglerData[i].equals("J"))
-				continue ;
-			else{
-				switch(jugglerData[i].charAt(0)){
-				case 'J':
-					name = jugglerData[i];
-					break;
-				case 'H':
-					H = jugglerData[i].substring(2);
-					break;
-				case 'E':
-					E= jugglerData[i].substring(2);
-					break;
-				case 'P':
-					P = jugglerData[i].substring(2);
-					break;
-				case 'C':
-					preferences=jugglerData[i];
-					break;
-				}
-			}
-		}
-		if(name == null || H == null || E == null || P == null || preferences == null){
+	public boolean loadFile (String filename, int threads){
+		long start = System.nanoTime();
+		Path file = Paths.get(filename);
+		try {
+			if (FestivalSnapshot.isSnapshot(file))
+				return loadSnapshot(file, start);
+		} catch (IOException ioException) {
+			ioException.printStackTrace();
 			return false;
 		}
-		Juggler j = new Juggler(name, (new Float(H)).floatValue(), (new Float(E)).floatValue(), (new Float (P).floatValue()));
-		String[] preferenceData = preferences.split(",");
-		Circuit c;
-		for(int i=0;i<preferenceData.length;i++){
-			c=circuits.get(preferenceData[i]);
-			if(c==null){
-				System.out.println("Invalid circuit preference " + preferenceData[i]);
+		FestivalParser parser = new FestivalParser(festival);
+		int preferencesBefore = festival.getPreferenceCount();
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try {
+			boolean loaded = pool == null ? parser.parseFile(file)
+					: parser.parseFile(file, pool);
+			if (!loaded) {
+				messages.println(parser.getError());
 				return false;
 			}
-			j.addPreference(c, false);
+			return true ;
+		} catch (IOException ioException) {
+			ioException.printStackTrace();
+			return false;
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+			//every preference's match value is calculated as the juggler is added.
+			scoreCalculations += festival.getPreferenceCount() - preferencesBefore;
+			statistics.addParseNanos(System.nanoTime() - start);
 		}
-		jugglers.add(j);		
-		return true ;
 	}
 	
 	/**
 	 * 
 	 * @param filename
-	 * @return
-	 * This method reads reach line from the file, and invokes either loadJuggler or
-	 * loadCircuit depending on the first character.
-	 * If it finds an unexpected character, or there is an error loading the circuit or juggler
-	 * it will output the problematic line number.
+	 * @return boolean false if the file could not be loaded, in which case no assignments are
+	 * made.
+	 * Same as loadFile(filename) followed by makeAssignments(), with the same assignments, but
+	 * the pairing by ranking starts while the jugglers are still being parsed: a
+	 * FestivalPipeline parses them on a thread of its own and hands them over a chunk at a time,
+	 * so on big files the two take about as long as the longer of them instead of both.
+	 * Every juggler makes his first proposal as soon as he is handed over, in the order he was
+	 * loaded, and the jugglers that are rejected or bumped meanwhile wait on the unassigned
+	 * queue until the last juggler has made his first. That is exactly the order
+	 * makeAssignments takes them in, so the proposals are the same ones, ties and all, and so
+	 * is the output.
+	 * The file is loaded and solved one after the other, as before, if it is a snapshot, if a
+	 * circuit comes after its first juggler, if something was loaded before it, or if the
+	 * assignments are checkpointed or kept off the heap.
 	 */
 	
-	public boolean loadFile (String filename){
-		BufferedReader input=null;
-		String line = new String();
-		int lineNum = 0 ;
+	public boolean loadAndMakeAssignments(String filename){
+		Path file = Paths.get(filename);
+		FestivalPipeline pipeline = new FestivalPipeline(festival, file, FestivalPipeline.DEFAULT_QUEUE_LENGTH);
+		long start = System.nanoTime();
 		try {
-			 input = new BufferedReader(new FileReader(filename));
-			 while( (line = input.readLine()) != null){
-				lineNum ++ ; 
-				line = line.toUpperCase().trim();
-				if (line.length() > 0) { //skip empty lines
-					if (line.charAt(0) == 'C') {
-						if (!loadCircuit(line)) {
-							System.out.println("Error loading circuit on line "
-									+ lineNum);
-							input.close();
-							return false;
-						}
-					} else if (line.charAt(0) == 'J') {
-						if (!loadJuggler(line)) {
-							System.out.println("Error loading juggler on line "
-									+ lineNum);
-							input.close();
-							return false;
-						}
-					} else {
-						System.out.println("Unexpected first character "
-								+ line.charAt(0) + " found on line " + lineNum);
-						input.close();
-						return false;
-					}
-				}
-			 }
-			 return true ;
-		} catch (FileNotFoundException fileNotFoundException) {
-			fileNotFoundException.printStackTrace();
-			return false;
-		} catch (IOException ioException){
-			
-		}
-		finally{			
-			try {
-				input.close(); //cleanup
-			} catch (IOException ioException) {				
-				ioException.printStackTrace();
+			if (festival.getCircuitCount() > 0 || festival.getJugglerCount() > 0 || checkpointFile != null
+					|| offHeapDirectory != null || FestivalSnapshot.isSnapshot(file) || !pipeline.scan()) {
+				if (!loadFile(filename))
+					return false;
+				makeAssignments();
+				return true;
+			}
+			boolean loaded = pipeline.loadCircuits();
+			statistics.addParseNanos(System.nanoTime() - start);
+			if (!loaded) {
+				messages.println(pipeline.getError());
 				return false;
 			}
+		} catch (IOException ioException) {
+			ioException.printStackTrace();
+			return false;
+		}
+		int[] capacities = new int[festival.getCircuitCount()];
+		Arrays.fill(capacities, pipeline.getJugglerCount()/festival.getCircuitCount());
+		pipeline.start();
+		try {
+			solve(new Matching(festival, capacities), 1, pipeline);
+		} finally {
+			pipeline.stop();
+			//every preference's match value is calculated as the juggler is parsed.
+			scoreCalculations += festival.getPreferenceCount();
+			statistics.addParseNanos(pipeline.getParseNanos());
+		}
+		if (pipeline.getError() != null) {
+			messages.println(pipeline.getError());
+			matching = null;
+			fill = null;
+			return false;
 		}
-		
 		return true;
 	}
 	
+	//a snapshot is the whole festival, so it is only loaded when nothing has been loaded yet.
+	private boolean loadSnapshot(Path file, long start) {
+		if (festival.getCircuitCount() > 0 || festival.getJugglerCount() > 0) {
+			messages.println("A snapshot can only be loaded on its own, not after another file");
+			return false;
+		}
+		try {
+			festival = offHeapDirectory == null ? FestivalSnapshot.read(file) : FestivalSnapshot.map(file);
+			return true;
+		} catch (IOException ioException) {
+			messages.println(ioException.getMessage());
+			return false;
+		} finally {
+			statistics.addParseNanos(System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param messages
+	 * Print messages about files that can't be loaded, and changes that can't be made, here
+	 * instead of on standard output, such as when several festivals are solved at once.
+	 */
+	
+	public void setMessages(PrintStream messages){
+		this.messages = messages;
+	}
+	
+	/**
+	 * 
+	 * @param directory where the matching's scratch file goes, or null to keep everything on
+	 * the heap again.
+	 * Keep festivals that don't fit in the heap off it. Snapshots given to loadFile after this
+	 * stay in their files, mapped into memory, and makeAssignments keeps each juggler's place
+	 * in his list and circuit in a scratch file in the directory, mapped too. The operating
+	 * system pages them in and out as the matching goes through them, so the heap only needs
+	 * the rosters and the queues, and the Assignment made from them, about 32 bytes per
+	 * juggler. Text files are still parsed onto the heap; save them as snapshots first.
+	 * Jugglers can't be added to an off-heap festival.
+	 */
+	
+	public void setOffHeap(Path directory){
+		this.offHeapDirectory = directory;
+	}
+	
+	/**
+	 * Save the circuits and jugglers loaded so far, with their match values, to a snapshot that
+	 * loadFile loads back much faster than the input format. Withdrawn jugglers are left out.
+	 * @param file
+	 * @throws IOException
+	 */
+	
+	public void saveSnapshot(Path file) throws IOException {
+		FestivalSnapshot.write(festival, file);
+	}
+	
 	/**
 	 * 
 	 * @param j
 	 * @param c
 	 * @return dot product
-	 * This method calculates a match value based on H,E,P values of the juggler and circuit
-	 * passed to it. 
+	 * The same match value for Juggler and Circuit objects. Juggler uses this when a
+	 * preference is added without a precalculated value.
 	 */
 	
-	private float calculateMatch(Juggler j, Circuit c){
+	static float match(Juggler j, Circuit c){
 		//dot product
 		return ( (j.getHandEyeCoord()*c.getHandEyeCoord()) + (j.getEndurance()*c.getEndurance()) + j.getPizzazz()*c.getPizzazz());	 
 	}
 	
 	/**
 	 * 
-	 * @param j1
-	 * @param j2
-	 * @param c
-	 * @return Juggler 
-	 * find the better match of the two jugglers, for the circuit passed.
+	 * @return long
+	 * Number of match values read from the preference and roster caches instead of being
+	 * calculated.
 	 */
 	
-	private Juggler returnBetterMatch(Juggler j1, Juggler j2, Circuit c){
-		if(calculateMatch(j1,c) > calculateMatch(j2,c)){
-			return j1;
-		}
-		return j2;
+	public long getScoreCacheHits(){
+		return scoreCacheHits;
 	}
 	
 	/**
 	 * 
-	 * @param c
-	 * @return Juggler
-	 * find the juggler with the lowest match that is currently assigned to this circuit. 
+	 * @return long
+	 * Number of match values calculated. Each juggler's preferences are calculated once at
+	 * load time; the only other calculations are for remaining jugglers against circuits they
+	 * did not list.
 	 */
 	
-	private Juggler findLeastMatchingJuggler(Circuit c){
-		Juggler minMatch = c.getJugglers().get(0);
-		for(int i=0;i<c.getJugglers().size();i++){
-			if( calculateMatch(c.getJugglers().get(i),c) < calculateMatch(minMatch,c) )
-				minMatch = c.getJugglers().get(i);
-		}
-		return minMatch ;
+	public long getScoreCalculations(){
+		return scoreCalculations;
 	}
 	
 	/**
 	 * 
-	 * @param j
-	 * @param c
-	 * remove a juggler from a circuit
+	 * @return SolverMetrics
+	 * What loadFile, makeAssignments and outputAssignments have counted and timed so far.
 	 */
-	private void removeJugglerFromCircuit(Juggler j, Circuit c){
-		for(int i=0; i<c.getJugglers().size();i++){
-			if(c.getJugglers().get(i).equals(j)){
-				c.getJugglers().remove(i);
-				return;
-			}
-		}
+	
+	public SolverMetrics getMetrics(){
+		return statistics;
 	}
+	
+	/**
+	 * 
+	 * @return ObjectName
+	 * Register getMetrics() as a JMX MBean, under jugglefest:type=SolverMetrics, replacing
+	 * whatever was registered under that name.
+	 * @throws JMException
+	 */
+	
+	public ObjectName registerMetrics() throws JMException {
+		return statistics.register();
+	}
+	
 	/**
-	 * This method writes the output file. 
-	 * to accept the filename from the user, I would let that be passed as a command line
-	 * argument, and then pass it to this method. 
+	 * This method writes the output file, juggler-circuit-assignments.txt in the working
+	 * directory. The lines are formatted and written by an AssignmentWriter, from getAssignment().
 	 */
 	public void outputAssignments() {
-		File file = new File("juggler-circuit-assignments.txt");
-		StringBuilder outputLine = new StringBuilder();
-
 		try {
-			
-			if (!file.exists()) {
-				file.createNewFile();
-			}
-
-			FileWriter fw = new FileWriter(file.getAbsoluteFile());
-			BufferedWriter bw = new BufferedWriter(fw);
-			Iterator it = circuits.entrySet().iterator();
-			while (it.hasNext()) {
-				Entry<String, Circuit> pairs = (Entry<String, Circuit>) it.next();
-				Circuit c = (Circuit)pairs.getValue();
-				outputLine.append(c.getName()).append(" ");
-				for(int i=0; i<c.getJugglers().size();i++){
-					Juggler j = c.getJugglers().get(i);
-					outputLine.append(j.getName()+" ");
-					Circuit cPref ;
-					for(int k=0; k<j.getPreferences().size();k++){
-						cPref= j.getPreferences().get(k).c;
-						outputLine.append(cPref.getName()+":");
-						outputLine.append(calculateMatch(j, cPref) + " ");
-					}
-					outputLine.append(",");
-				}
-				outputLine.replace(outputLine.length()-1, outputLine.length(), "\n");
-				bw.write(outputLine.toString());
-				outputLine.replace(0, outputLine.length(), "") ;
-			}
-			bw.close();
+			outputAssignments(Paths.get(OUTPUT_FILE), 1);
 		} catch (IOException ioException) {
 			ioException.printStackTrace();
-		}finally{
-			
+		}
+	}
+	
+	/**
+	 * Write the output to the given file. With more than one thread, the lines of different
+	 * circuits are formatted in parallel; the file is the same either way.
+	 * @param file
+	 * @param threads
+	 * @throws IOException
+	 * @throws IllegalStateException if there are no assignments, because there are no circuits
+	 * or they haven't been made.
+	 */
+	public void outputAssignments(Path file, int threads) throws IOException {
+		outputAssignments(threads, writer -> writer.write(file));
+	}
+	
+	/**
+	 * Write the output to a stream, which is left open.
+	 * @param out
+	 * @param threads
+	 * @throws IOException
+	 * @throws IllegalStateException the same.
+	 */
+	public void outputAssignments(OutputStream out, int threads) throws IOException {
+		outputAssignments(threads, writer -> writer.write(out));
+	}
+	
+	//writes the lines somewhere with an AssignmentWriter.
+	private interface Output {
+		void write(AssignmentWriter writer) throws IOException;
+	}
+	
+	//Makes the AssignmentWriter on the given number of threads and has output write with it.
+	private void outputAssignments(int threads, Output output) throws IOException {
+		Assignment assignment = requireAssignment();
+		long start = System.nanoTime();
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try {
+			AssignmentWriter writer = new AssignmentWriter(assignment, pool);
+			output.write(writer);
+			scoreCacheHits += writer.getScoresWritten();
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+			statistics.addOutputNanos(System.nanoTime() - start);
 		}
 	}
 	
 	/**
 	 * This method is the one that assignes jugglers to circuits based on juggler preferences,
 	 * match values. If jugglers remain after the initial assignment attempt,
-	 * that means that there also are unfilled circuits. As explained above, a "remainingJugglers"
+	 * that means that there also are unfilled circuits. As explained above, a "remaining"
 	 * list is maintained during the initial assignment attempt in order to match these with unfilled
 	 * circuits in a way that attempts to assign the best possible matching jugglers from the remaining
 	 * list, to each unfilled circuit, until all are filled (and there are no remaining jugglers).
+	 * It works entirely on the int arrays of the Festival and the Matching.
+	 * @return Assignment what the jugglers were assigned, or null if there are no circuits.
 	 */
 	
-	public void makeAssignments(){
-		Juggler j, j1, jBetter ;
-		Circuit c ;
-		int numJugglersPerCircuit = jugglers.size()/circuits.size();
-		//System.out.println(numJugglersPerCircuit + "\n");		
-		
+	public Assignment makeAssignments(){
+		return makeAssignments(1);
+	}
+	
+	/**
+	 * Same as makeAssignments(), but with more than one thread the pairing by ranking is done
+	 * by a ConcurrentProposalEngine. When no two jugglers have the same match value for a
+	 * circuit, the assignment is the same as with one thread. The jugglers on a circuit are
+	 * listed in the order they joined it, though, and the threads propose in no fixed order,
+	 * so a circuit's jugglers can be listed in another order than with one thread.
+	 * @param threads
+	 * @return Assignment or null if there are no circuits.
+	 */
+	
+	public Assignment makeAssignments(int threads){
+		if (festival.getCircuitCount() == 0)
+			return null;
+		int numJugglersPerCircuit = festival.getActiveJugglerCount()/festival.getCircuitCount();
+		int[] capacities = new int[festival.getCircuitCount()];
+		Arrays.fill(capacities, numJugglersPerCircuit);
+		return makeAssignments(threads, capacities);
+	}
+	
+	/**
+	 * Same as makeAssignments(threads), but with a capacity of its own for every circuit,
+	 * by circuit index.
+	 * @param threads
+	 * @param capacities
+	 * @return Assignment
+	 */
+	
+	Assignment makeAssignments(int threads, int[] capacities){
+		if (offHeapDirectory == null) {
+			solve(new Matching(festival, capacities), threads);
+			return getAssignment();
+		}
+		try {
+			solve(new MappedMatching(festival, capacities, offHeapDirectory), threads);
+		} catch (IOException ioException) {
+			throw new UncheckedIOException("Could not make the off-heap matching", ioException);
+		}
+		return getAssignment();
+	}
+	
+	/**
+	 * 
+	 * @param threads
+	 * @param listedOnly whether jugglers only go to circuits on their lists
+	 * @return Assignment or null if there are no circuits.
+	 * Instead of pairing by ranking and filling, assign the jugglers so that their match values
+	 * add up to as much as possible, with every circuit taking the same share as with
+	 * makeAssignments. An AuctionEngine does it on the given number of threads, and
+	 * getScoreBound() then says how much more any assignment could add up to. A juggler is left
+	 * without a circuit when giving him one would only take a place from a better match, or,
+	 * with listedOnly, when the circuits on his list are taken by better matches.
+	 * The assignment isn't brought up to date when jugglers or circuits change afterwards; it
+	 * is dropped, and has to be made again.
+	 */
+	
+	public Assignment makeBestAssignments(int threads, boolean listedOnly){
+		if (festival.getCircuitCount() == 0)
+			return null;
+		long start = System.nanoTime();
+		int numJugglersPerCircuit = festival.getActiveJugglerCount()/festival.getCircuitCount();
+		int[] capacities = new int[festival.getCircuitCount()];
+		Arrays.fill(capacities, numJugglersPerCircuit);
+		AuctionEngine engine = new AuctionEngine(festival, capacities, listedOnly, AuctionEngine.DEFAULT_TOLERANCE);
+		engine.run(threads);
+		matching = engine.toMatching();
+		assignment = null;
+		repair = null;
+		fill = null;
+		scoreBound = engine.getUpperBound();
+		SubmissionPublisher<RosterEvent> publisher = takeRosterPublisher();
+		if (publisher != null) {
+			publishRosters(publisher, false, threads);
+			publisher.close();
+		}
+		statistics.addProposals(engine.getBids(), engine.getAcceptances(), engine.getBumps(), 0);
+		statistics.addRemainingJugglers(matching.getRemaining().size());
+		statistics.addProposalNanos(System.nanoTime() - start);
+		return getAssignment();
+	}
+	
+	/**
+	 * 
+	 * @return double
+	 * After makeBestAssignments, the most any assignment of the jugglers by the same rules could
+	 * add up to, so that the difference from the total of getAssignment() is how far it can be
+	 * from the best. NaN otherwise.
+	 */
+	
+	public double getScoreBound(){
+		return scoreBound;
+	}
+	
+	/**
+	 * 
+	 * @return Flow.Publisher
+	 * Where the circuit rosters of the next makeAssignments (or makeBestAssignments, or
+	 * loadAndMakeAssignments, or resumeAssignments) are published, one RosterEvent per circuit,
+	 * for subscribers that want to start on them before the assignments are finished and
+	 * written out. Subscribe before making the assignments.
+	 * The circuits that are full after the pairing by ranking are published first, split
+	 * between the threads, and then each circuit the fill phase gives jugglers to as soon as it
+	 * is done with it, so the order of the events is not the order of the circuits. The
+	 * publisher is closed once every circuit is published, or with the error if the file
+	 * loadAndMakeAssignments is reading fails part way, and the next call gets a new one.
+	 * Publishing waits for a subscriber that has not requested more and whose buffer is full,
+	 * so the assignments are only made as fast as the slowest subscriber takes them.
+	 */
+	
+	public Flow.Publisher<RosterEvent> getRosterPublisher(){
+		if (rosterPublisher == null)
+			rosterPublisher = new SubmissionPublisher<RosterEvent>();
+		return rosterPublisher;
+	}
+	
+	//the publisher for the assignments being made now, or null if no one subscribed. The next
+	//getRosterPublisher makes a new one.
+	private SubmissionPublisher<RosterEvent> takeRosterPublisher() {
+		SubmissionPublisher<RosterEvent> publisher = rosterPublisher;
+		rosterPublisher = null;
+		if (publisher != null && !publisher.hasSubscribers()) {
+			publisher.close();
+			return null;
+		}
+		return publisher;
+	}
+	
+	//publishes the roster of every circuit, or of every full one, with the circuits split
+	//between the threads.
+	private void publishRosters(SubmissionPublisher<RosterEvent> publisher, boolean fullOnly, int threads) {
+		CircuitRosters rosters = matching.getRosters();
+		int circuitCount = rosters.getCircuitCount();
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			for (int from = 0; from < circuitCount; from += CIRCUITS_PER_TASK) {
+				final int start = from, end = Math.min(from + CIRCUITS_PER_TASK, circuitCount);
+				Runnable publish = () -> {
+					for (int c = start; c < end; c++) {
+						if (!fullOnly || rosters.isFull(c))
+							publisher.submit(new RosterEvent(matching, c, false));
+					}
+				};
+				if (pool == null)
+					publish.run();
+				else
+					tasks.add(pool.submit(publish));
+			}
+			for (ForkJoinTask<?> task : tasks)
+				task.join();
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param threads
+	 * @return StabilityVerifier or null if the assignments haven't been made.
+	 * Check that no juggler would rather be on a circuit that would take him over one of its
+	 * jugglers, and report the blocking pairs found, if any, along with any circuit given more
+	 * jugglers than it takes (see StabilityVerifier). With more
+	 * than one thread, the jugglers are checked in parallel; the pairs are the same either way.
+	 */
+	
+	public StabilityVerifier verifyStability(int threads){
+		Assignment current = getAssignment();
+		if (current == null)
+			return null;
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try {
+			StabilityVerifier verifier = new StabilityVerifier(current, pool);
+			verifier.verify();
+			return verifier;
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return Assignment
+	 * What the jugglers are assigned to now: the same as makeAssignments returned, unless
+	 * jugglers or circuits have changed since, or null if the assignments haven't been made.
+	 */
+	
+	public Assignment getAssignment(){
+		if (assignment == null && matching != null)
+			assignment = new Assignment(matching);
+		return assignment;
+	}
+	
+	//getAssignment(), or why there is none.
+	private Assignment requireAssignment(){
+		Assignment assignment = getAssignment();
+		if (assignment == null)
+			throw new IllegalStateException(festival.getCircuitCount() == 0
+					? "There are no circuits, so there are no assignments to write"
+					: "The assignments have not been made");
+		return assignment;
+	}
+	
+	/**
+	 * 
+	 * @param file where checkpoints are saved, or null for none
+	 * @param intervalMillis how long to go between checkpoints
+	 * Have makeAssignments save a checkpoint of the pairing by ranking, and then of the fill
+	 * phase, every so often, which resumeAssignments can carry on from if the run is killed.
+	 * The checkpoints are written on a thread of their own while the solve carries on, and the
+	 * file is deleted once the
+	 * assignments are made. The proposals that are checkpointed are made on one thread, so
+	 * that resuming makes exactly the same ones.
+	 */
+	
+	public void setCheckpoint(Path file, long intervalMillis){
+		if (intervalMillis <= 0)
+			throw new IllegalArgumentException("The checkpoint interval must be positive");
+		this.checkpointFile = file;
+		this.checkpointIntervalMillis = intervalMillis;
+	}
+	
+	/**
+	 * 
+	 * @param threads
+	 * @return boolean
+	 * Carry on with makeAssignments from the checkpoint set with setCheckpoint, and end up with
+	 * the same assignments as a run that was never stopped. If there is no checkpoint, the
+	 * assignments are made from the beginning. Returns false, and does nothing, if the
+	 * checkpoint is damaged or of another festival.
+	 */
+	
+	public boolean resumeAssignments(int threads){
+		if (checkpointFile == null)
+			throw new IllegalStateException("No checkpoint file was set");
+		if (!Files.exists(checkpointFile)) {
+			messages.println("No checkpoint " + checkpointFile + ", making the assignments from the beginning");
+			makeAssignments(threads);
+			return true;
+		}
+		try {
+			solve(SolverCheckpoint.read(festival, checkpointFile), threads);
+			return true;
+		} catch (IOException ioException) {
+			messages.println(ioException.getMessage());
+			return false;
+		}
+	}
+	
+	//the pairing by ranking and the fill phase, on a new matching or one from a checkpoint.
+	private void solve(Matching start, int threads){
+		solve(start, threads, null);
+	}
+	
+	//the same, with the jugglers handed over by the pipeline as they are loaded, if there is
+	//one. Nothing is filled if the pipeline fails.
+	private void solve(Matching start, int threads, FestivalPipeline pipeline){
+		long startTime = System.nanoTime();
+		matching = start;
+		assignment = null;
+		repair = null;
+		scoreBound = Double.NaN;
+		SubmissionPublisher<RosterEvent> publisher = takeRosterPublisher();
+		CheckpointWriter checkpoints = null;
+		if (checkpointFile != null && matching instanceof MappedMatching)
+			messages.println("Checkpoints are not taken of a matching kept off the heap");
+		else if (checkpointFile != null)
+			checkpoints = new CheckpointWriter(checkpointFile, checkpointIntervalMillis, festival);
+		//On several threads, a festival that falls apart into pieces has them paired side by
+		//side, with the same result as on one thread; otherwise the jugglers share the circuits.
+		ComponentProposalEngine components = threads > 1 && checkpoints == null
+				? new ComponentProposalEngine(matching, statistics) : null;
+		if (components != null && components.split()) {
+			components.run(threads);
+			scoreCacheHits += components.getScoreCacheHits();
+		} else if (threads > 1 && checkpoints == null) {
+			ConcurrentProposalEngine engine = new ConcurrentProposalEngine(matching, statistics);
+			engine.run(threads);
+			scoreCacheHits += engine.getScoreCacheHits();
+		} else {
+			proposeAll(checkpoints, pipeline);
+		}
+		if (pipeline != null && pipeline.getError() != null) {
+			if (publisher != null)
+				publisher.closeExceptionally(new IOException(pipeline.getError()));
+			return;
+		}
+		statistics.addRemainingJugglers(matching.getRemaining().size());
+		long proposed = System.nanoTime();
+		statistics.addProposalNanos(proposed - startTime);
+		if (publisher != null)
+			publishRosters(publisher, true, threads);
+		fillCircuits(publisher, checkpoints);
+		if (publisher != null)
+			publisher.close();
+		statistics.addFillNanos(System.nanoTime() - proposed);
+		if (checkpoints != null)
+			checkpoints.delete();
+	}
+	
+	/**
+	 * The pairing by ranking: take jugglers off the unassigned queue one at a time and have
+	 * each propose to the next circuit on his list, until the queue is empty.
+	 * The proposals are counted in local variables and added to the statistics at the end.
+	 * If there is a CheckpointWriter, it is given a chance to checkpoint the matching every few
+	 * thousand jugglers, between one juggler's proposal and the next.
+	 * With a FestivalPipeline, the jugglers it hands over make their first proposals first, in
+	 * the order they were loaded, and the queue is only taken from once it has finished; if it
+	 * fails, this stops.
+	 * @param checkpoints or null
+	 * @param pipeline or null
+	 */
+	
+	private void proposeAll(CheckpointWriter checkpoints, FestivalPipeline pipeline){
+		int j, jWorst, c, position ;
+		float match ;
+		CircuitRosters rosters = matching.getRosters();
+		IntQueue unassigned = matching.getUnassigned();
+		long proposals = 0, acceptances = 0, bumps = 0 ;
+		//how many bumps led to each juggler being on the queue. A bumped juggler goes to the
+		//back of the queue, so the chains are interleaved and have to be followed juggler by
+		//juggler. Not for an off-heap matching, which is kept off the heap to save the memory.
+		int[] chain = matching instanceof MappedMatching ? null
+				: new int[pipeline == null ? festival.getJugglerCount() : pipeline.getJugglerCount()];
+		int longestChain = 0 ;
+		int polled = 0 ;
+		//jugglers handed over by the pipeline, and how many of them have made a first proposal.
+		int loaded = 0, next = 0 ;
 		
-		while (!jugglers.isEmpty()) {// while there is still some unassigned
-										// juggler
-			j = jugglers.remove();
-
-			c = j.getNextUnvisitedPreference();
+		while (true) {
+			if (next < loaded) {
+				j = next++;
+			} else if (pipeline != null) {
+				loaded = pipeline.awaitJugglers(matching);
+				if (loaded < 0)
+					break;
+				if (pipeline.isFinished())
+					pipeline = null;
+				continue;
+			} else if (!unassigned.isEmpty()) {// while there is still some unassigned
+												// juggler
+				if (checkpoints != null && (++polled & CHECKPOINT_CHECK_MASK) == 0)
+					checkpoints.offer(matching);
+				j = unassigned.poll();
+			} else {
+				break;
+			}
 
-			if (c != null) {
-				if (c.getJugglers().size() < numJugglersPerCircuit) { // if
-																		// circuit
-																		// not
-																		// empty,
-																		// assign
-																		// j to
-																		// c
-					c.getJugglers().add(j);
-				} else {
-					// find least match
-					j1 = findLeastMatchingJuggler(c);
-					// find better match
-					jBetter = returnBetterMatch(j1, j, c);
-					if (jBetter.equals(j)) {
-						removeJugglerFromCircuit(j1, c); // remove j1 from this
-															// circuit
-					//	j1.markAllUnvisited(); // when j1 is bumped off, allow
-												// them to start at the top of
-												// their list
-						c.getJugglers().add(j); // add j to this circuit
-						jugglers.add(j1); // add j1 to unassigned list
+			position = matching.getNextPreference(j);
 
-					} else {
-						// even the least compatible juggler on the circuit is a
-						// better match than j
-						// add j back to unassigned list
-						jugglers.add(j);
+			if (position < festival.getPreferenceEnd(j)) {
+				c = festival.getPreferenceCircuit(position);
+				match = festival.getPreferenceScore(position);
+				scoreCacheHits++;
+				matching.setNextPreference(j, position + 1); // mark this circuit visited for j
+				proposals++;
+				if (!rosters.isFull(c)) { // if circuit not full, assign j to c
+					rosters.add(c, j, match);
+					matching.setAssignedCircuit(j, c);
+					acceptances++;
+				} else if (rosters.size(c) > 0 && rosters.peekWorstScore(c) <= match) {
+					scoreCacheHits++;
+					// j is at least as good a match as the least compatible
+					// juggler on the circuit (the root of the roster heap),
+					// so j takes its place and it goes back to the unassigned list
+					jWorst = rosters.replaceWorst(c, j, match);
+					matching.setAssignedCircuit(j, c);
+					matching.setAssignedCircuit(jWorst, -1);
+					unassigned.add(jWorst);
+					acceptances++;
+					bumps++;
+					if (chain != null) {
+						chain[jWorst] = chain[j] + 1;
+						longestChain = Math.max(longestChain, chain[jWorst]);
 					}
+				} else {
+					if (rosters.size(c) > 0)
+						scoreCacheHits++;
+					// even the least compatible juggler on the circuit is a
+					// better match than j
+					// add j back to unassigned list
+					unassigned.add(j);
 				}
-				j.markVisited(c); // mark this circuit visited for j
 			}
 			else{
 				//if all circuits are visited, add this juggler to a "remaining list"
@@ -388,69 +833,295 @@ import java.util.Map.Entry;
 				//We will attempt to pair these such that, for
 				//every J,C pair (from all remaining Js and unfilled Cs, dot product J.C
 				//is maximized.
-				remainingJugglers.add(j);
+				matching.getRemaining().add(j);
 				
 			}
 		}
-			
+		statistics.addProposals(proposals, acceptances, bumps, longestChain);
+	}
+	
+	/**
+	 * Fill the circuits that still have room with the remaining jugglers.
+	 */
+	
+	private void fillCircuits(SubmissionPublisher<RosterEvent> publisher, CheckpointWriter checkpoints){
 		//find unfilled circuit, find best juggler (highest dot product) for that until filled.
 		//since num of jugglers / num circuits has no remainder, all circuits should be filled
 		//and all jugglers assigned, after this.
-		Circuit cUnfilled;
-		while( (cUnfilled = findUnfilledCircuit(numJugglersPerCircuit)) != null){			
-			Juggler jBest; 
-			while(cUnfilled.getJugglers().size()<numJugglersPerCircuit){
-				jBest = findBestRemainingJuggler(cUnfilled); 
-				if(jBest!=null){
-				cUnfilled.getJugglers().add(jBest);
-				if(remainingJugglers.size() ==0 )
-					break;
-				}
-			}
-			if(remainingJugglers.size() ==0 )
-				break;
+		//Unfilled circuits are taken in the order of the HashMap they used to be kept in (see
+		//FillPhase), so the output is the same as it has always been. The remaining jugglers go
+		//into a kd-tree on their skills, which finds the best one for a circuit without
+		//calculating the match value of every remaining juggler, and ties go to the juggler
+		//who comes first on the remaining list, as they did when the list was scanned.
+		//The FillPhase is kept, so a MatchingRepair can keep it up to date.
+		//Each circuit that had room is published as soon as the fill phase is done with it.
+		//It is checkpointed between circuits, and carries on from where a checkpoint left it.
+		fill = new FillPhase(matching);
+		if (publisher == null)
+			fill.fill(null, checkpoints);
+		else
+			fill.fill(c -> publisher.submit(new RosterEvent(matching, c, true)), checkpoints);
+		scoreCalculations += fill.getScoreCalculations();
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @param preferences circuit names, best first
+	 * @return boolean
+	 * Add a juggler who registers late. If the assignments have already been made, they are
+	 * brought up to date by a MatchingRepair, and come out the same as if he had been in the
+	 * file (so long as no circuit has two jugglers with the same match value to choose from),
+	 * with every circuit keeping its capacity.
+	 */
+	
+	public boolean addJuggler(String name, float handEyeCoord, float endurance, float pizzazz, String[] preferences){
+		int[] circuits = circuitIndexes(preferences);
+		if (!isName(name, 'J')) {
+			messages.println("Invalid juggler name " + name);
+			return false;
+		}
+		if (circuits == null || isOffHeap())
+			return false;
+		int j = festival.addJuggler(name, handEyeCoord, endurance, pizzazz, circuits, circuits.length);
+		scoreCalculations += circuits.length;
+		if (hasMatching()) {
+			startRepair();
+			repair.addJuggler(j);
+			finishRepair();
 		}
+		return true;
 	}
 	
 	/**
 	 * 
-	 * @param c
-	 * @return Juggler
-	 * Given a circuit, find the remaining juggler that is the highest match for this circuit.
+	 * @param name
+	 * @return boolean
+	 * Withdraw a juggler, and bring the assignments up to date if they have been made.
+	 * Returns false if there is no such juggler.
 	 */
 	
-	private Juggler findBestRemainingJuggler(Circuit c) {
-		float match = -1, maxMatch = -1;
-		int maxMatchIndex = -1;
-		
-		for(int i=0;i<remainingJugglers.size();i++){
-			match=  calculateMatch(remainingJugglers.get(i), c);
-			if(match > maxMatch){
-				maxMatch = match;
-				maxMatchIndex = i;
+	public boolean removeJuggler(String name){
+		int j = festival.indexOfJuggler(name);
+		if (j < 0) {
+			messages.println("No juggler " + name);
+			return false;
+		}
+		if (!hasMatching()) {
+			festival.withdrawJuggler(j);
+			return true;
+		}
+		startRepair();
+		repair.removeJuggler(j);
+		finishRepair();
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @param preferences circuit names, best first
+	 * @return boolean
+	 * Give a juggler a new preference list. He is withdrawn and added again with the same
+	 * skills, so he comes after every other juggler in the order the output and ties go by.
+	 */
+	
+	public boolean updatePreferences(String name, String[] preferences){
+		int j = festival.indexOfJuggler(name);
+		if (j < 0) {
+			messages.println("No juggler " + name);
+			return false;
+		}
+		int[] circuits = circuitIndexes(preferences);
+		if (circuits == null || isOffHeap())
+			return false;
+		if (hasMatching()) {
+			startRepair();
+			repair.removeJuggler(j);
+		} else {
+			festival.withdrawJuggler(j);
+		}
+		int jNew = festival.addJuggler(festival.getJugglerName(j), festival.getHandEyeCoord(j),
+				festival.getEndurance(j), festival.getPizzazz(j), circuits, circuits.length);
+		scoreCalculations += circuits.length;
+		if (matching != null) {
+			repair.addJuggler(jNew);
+			finishRepair();
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @param capacity how many jugglers it takes, if the assignments have already been made.
+	 * Otherwise makeAssignments gives it the same share as every other circuit.
+	 * @return boolean
+	 * Add a circuit. No juggler has it on his list yet, so it only takes remaining jugglers
+	 * in the fill phase, until jugglers are added or change their lists to include it.
+	 * Once the assignments have been made, the fill phase is done again from the new circuit's
+	 * place in the fill order on, so this can take as long as the part of the fill after it.
+	 * Each time the number of circuits doubles, the fill order changes throughout, and the whole
+	 * fill phase is done again.
+	 */
+	
+	public boolean addCircuit(String name, float handEyeCoord, float endurance, float pizzazz, int capacity){
+		if (!isName(name, 'C') || festival.getCircuits().indexOf(name) >= 0 || capacity < 0) {
+			messages.println("Invalid new circuit " + name);
+			return false;
+		}
+		int c = festival.getCircuits().add(name, handEyeCoord, endurance, pizzazz);
+		if (hasMatching()) {
+			startRepair();
+			repair.addCircuit(c, capacity);
+			finishRepair();
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @param capacity
+	 * @return boolean
+	 * Change the number of jugglers a circuit takes, once the assignments have been made.
+	 */
+	
+	public boolean changeCapacity(String name, int capacity){
+		int c = festival.getCircuits().indexOf(name);
+		if (!hasMatching() || c < 0 || capacity < 0) {
+			messages.println("Cannot change the capacity of " + name);
+			return false;
+		}
+		startRepair();
+		repair.changeCapacity(c, capacity);
+		finishRepair();
+		return true;
+	}
+	
+	//jugglers can't be added to a festival or matching kept off the heap.
+	private boolean isOffHeap() {
+		if (festival instanceof MappedFestival || matching instanceof MappedMatching) {
+			messages.println("Jugglers can't be added to a festival kept off the heap");
+			return true;
+		}
+		return false;
+	}
+	
+	//false if there is no matching to repair. One made by makeBestAssignments can't be, so it is
+	//dropped.
+	private boolean hasMatching() {
+		if (matching != null && !Double.isNaN(scoreBound)) {
+			matching = null;
+			assignment = null;
+			scoreBound = Double.NaN;
+		}
+		return matching != null;
+	}
+	
+	private void startRepair() {
+		if (repair == null)
+			repair = new MatchingRepair(matching, fill);
+	}
+	
+	private void finishRepair() {
+		assignment = null;
+		long proposals = repair.getProposals();
+		long calculations = fill.getScoreCalculations();
+		repair.propose();
+		repair.improve();
+		fill.updateRemaining();
+		scoreCacheHits += repair.getProposals() - proposals;
+		scoreCalculations += fill.getScoreCalculations() - calculations;
+	}
+	
+	//true for a name like J12 or C3: the prefix, and something after it.
+	private static boolean isName(String name, char prefix) {
+		return name != null && name.length() >= 2 && name.charAt(0) == prefix;
+	}
+	
+	//circuit indexes for a list of circuit names, or null if one of them is not a circuit.
+	private int[] circuitIndexes(String[] names) {
+		int[] circuits = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			circuits[i] = festival.getCircuits().indexOf(names[i]);
+			if (circuits[i] < 0) {
+				messages.println("Invalid circuit preference " + names[i]);
+				return null;
 			}
 		}
-		if(maxMatchIndex == -1)
-			return null;
-		return(remainingJugglers.remove(maxMatchIndex));
+		return circuits;
 	}
-
+	
+	/**
+	 * 
+	 * @return Map
+	 * The circuits as Circuit objects, by name, in the order they were loaded. After
+	 * makeAssignments, each one's roster holds Juggler objects for the jugglers assigned to it,
+	 * with the circuits they have visited marked. These are copies: changing them does not
+	 * change the assignment.
+	 */
+	
+	public Map<String, Circuit> getCircuits() {
+		Circuit[] views = circuitViews();
+		Map<String, Circuit> circuits = new LinkedHashMap<String, Circuit>();
+		for (Circuit view : views)
+			circuits.put(view.getName(), view);
+		return circuits;
+	}
+	
 	/**
 	 * 
-	 * @param num
-	 * @return Circuit
-	 * From the HashMap of circuits, find an unfilled one.
+	 * @return List
+	 * The jugglers that are still without a circuit after makeAssignments, as Juggler objects,
+	 * in the order they ran out of circuits. Once a MatchingRepair has brought the assignments up
+	 * to date, they are the same jugglers as after making them again, but in the order of the
+	 * fill phase's pool.
 	 */
 	
-	private Circuit findUnfilledCircuit(int num) {
-		Iterator<Circuit> it = circuits.values().iterator();
-		Circuit c; 
-		while(it.hasNext()){
-			c= it.next();
-			if(c.getJugglers().size()<num)
-				return c;
+	public List<Juggler> getRemainingJugglers() {
+		List<Juggler> remainingJugglers = new ArrayList<Juggler>();
+		if (matching == null)
+			return remainingJugglers;
+		Circuit[] views = circuitViews();
+		IntQueue remaining = matching.getRemaining();
+		for (int i = 0; i < remaining.size(); i++)
+			remainingJugglers.add(jugglerView(remaining.get(i), views));
+		return remainingJugglers;
+	}
+	
+	private Circuit[] circuitViews() {
+		CircuitCatalog circuits = festival.getCircuits();
+		Circuit[] views = new Circuit[circuits.size()];
+		for (int c = 0; c < views.length; c++) {
+			views[c] = new Circuit(circuits.getName(c), circuits.getHandEyeCoord(c),
+					circuits.getEndurance(c), circuits.getPizzazz(c));
+		}
+		if (matching != null) {
+			CircuitRosters rosters = matching.getRosters();
+			for (int c = 0; c < views.length; c++) {
+				for (int i : rosters.joinOrder(c))
+					views[c].getRoster().add(jugglerView(rosters.get(c, i), views), rosters.getScore(c, i));
+			}
 		}
-		return null;
+		return views;
+	}
+	
+	private Juggler jugglerView(int j, Circuit[] views) {
+		Juggler juggler = new Juggler(festival.getJugglerName(j), festival.getHandEyeCoord(j),
+				festival.getEndurance(j), festival.getPizzazz(j));
+		int start = festival.getPreferenceStart(j);
+		for (int k = start; k < festival.getPreferenceEnd(j); k++)
+			juggler.addPreference(views[festival.getPreferenceCircuit(k)], false, festival.getPreferenceScore(k));
+		if (matching != null)
+			juggler.setNextPreferenceIndex(matching.getNextPreference(j) - start);
+		return juggler;
 	}
 		
 }
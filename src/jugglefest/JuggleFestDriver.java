@@ -1,27 +1,297 @@
 package jugglefest;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import javax.management.JMException;
+
 /**
  * Class JuggleFestDriver
  * @author Shalini Israni
  * This class instantiates JuggleFest which actually loads the file, solves the problem,
- * and outputs a file to output.txt.
- * The argument to this class's main method is the name of the input file.
+ * and outputs a file to juggler-circuit-assignments.txt.
+ * The argument to this class's main method is the name of the input file, optionally after
+ * -threads and a number of threads to load, solve and write with. With -metrics, the counts and
+ * times of the run (see SolverMetrics) are printed on one line at the end, and can be watched
+ * over JMX while it runs. With -snapshot and a file name, what was loaded is also saved as a
+ * snapshot (see FestivalSnapshot), which can be given as the input file of later runs instead
+ * of the text file and loads much faster. With -checkpoint and a file name, the solve is
+ * checkpointed to that file every minute, or every -checkpoint-every seconds, and with -resume
+ * as well it carries on from the checkpoint left by a run that was killed (see SolverCheckpoint).
+ * With -offheap and a directory, a snapshot is solved without being copied onto the heap, with
+ * the matching's scratch file in the directory, for festivals bigger than the heap.
+ * With -pipeline, the jugglers start proposing while the rest of the file is still being parsed
+ * (see JuggleFest.loadAndMakeAssignments), with the same assignments.
+ * With -maximize, the jugglers are assigned so that their match values add up to as much as
+ * possible instead (see AuctionEngine), and with -listed as well, only to circuits on their
+ * lists; the total, and how far it can be from the best, is printed.
+ * With -verify, the assignments are checked for blocking pairs (see StabilityVerifier), and
+ * the first few found are printed.
+ * With -batch and a directory or manifest instead of a file name, every festival in it is solved
+ * (see FestivalBatch), -jobs at a time, each with -threads, and its assignments are written next
+ * to it or into the -output directory; the exit status is 1 if any of them failed.
+ * With -serve and a port instead of a file name, festivals are taken over HTTP on that port of
+ * this machine (see FestivalService), solved -jobs at a time, until the process is stopped.
  * Sample call: java JuggleFestDriver jugglefest.txt
+ *              java JuggleFestDriver -threads 8 jugglefest.txt
+ *              java JuggleFestDriver -metrics jugglefest.txt
+ *              java JuggleFestDriver -snapshot jugglefest.snap jugglefest.txt
+ *              java JuggleFestDriver jugglefest.snap
+ *              java JuggleFestDriver -checkpoint solve.ckpt -resume jugglefest.snap
+ *              java -Xmx2g JuggleFestDriver -offheap /tmp huge.snap
+ *              java JuggleFestDriver -pipeline jugglefest.txt
+ *              java JuggleFestDriver -maximize -listed -threads 8 jugglefest.txt
+ *              java JuggleFestDriver -verify -threads 8 jugglefest.txt
+ *              java JuggleFestDriver -batch festivals/ -jobs 4 -output assignments/
+ *              java JuggleFestDriver -serve 8080 -jobs 4
  *
  */
 
 public class JuggleFestDriver {
+	//blocking pairs printed by -verify.
+	private static final int BLOCKING_PAIRS_SHOWN = 10;
 
 	
 	public static void main(String[] args) {
 		JuggleFest juggleFest = new JuggleFest();
-		if(args.length != 1){
-			System.out.println("Please specify file name, and nothing else.");
+		String filename = null;
+		int threads = 1;
+		boolean metrics = false;
+		boolean pipeline = false;
+		boolean maximize = false;
+		boolean listed = false;
+		boolean verify = false;
+		String snapshot = null;
+		String checkpoint = null;
+		long checkpointSeconds = 60;
+		boolean resume = false;
+		String offHeap = null;
+		String batch = null;
+		int jobs = Runtime.getRuntime().availableProcessors();
+		String output = null;
+		int port = -1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				try {
+					threads = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException numberFormatException) {
+					threads = 0;
+				}
+				if (threads < 1) {
+					System.out.println("The number of threads must be a positive number.");
+					return;
+				}
+			} else if (args[i].equals("-snapshot") && i + 1 < args.length && snapshot == null) {
+				snapshot = args[++i];
+			} else if (args[i].equals("-checkpoint") && i + 1 < args.length && checkpoint == null) {
+				checkpoint = args[++i];
+			} else if (args[i].equals("-checkpoint-every") && i + 1 < args.length) {
+				try {
+					checkpointSeconds = Long.parseLong(args[++i]);
+				} catch (NumberFormatException numberFormatException) {
+					checkpointSeconds = 0;
+				}
+				if (checkpointSeconds < 1) {
+					System.out.println("The checkpoint interval must be a positive number of seconds.");
+					return;
+				}
+			} else if (args[i].equals("-jobs") && i + 1 < args.length) {
+				try {
+					jobs = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException numberFormatException) {
+					jobs = 0;
+				}
+				if (jobs < 1) {
+					System.out.println("The number of festivals at a time must be a positive number.");
+					return;
+				}
+			} else if (args[i].equals("-batch") && i + 1 < args.length && batch == null) {
+				batch = args[++i];
+			} else if (args[i].equals("-serve") && i + 1 < args.length && port < 0) {
+				try {
+					port = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException numberFormatException) {
+					port = -1;
+				}
+				if (port < 0 || port > 65535) {
+					System.out.println("The port must be a number from 0 to 65535.");
+					return;
+				}
+			} else if (args[i].equals("-output") && i + 1 < args.length && output == null) {
+				output = args[++i];
+			} else if (args[i].equals("-offheap") && i + 1 < args.length && offHeap == null) {
+				offHeap = args[++i];
+			} else if (args[i].equals("-resume")) {
+				resume = true;
+			} else if (args[i].equals("-metrics")) {
+				metrics = true;
+			} else if (args[i].equals("-pipeline")) {
+				pipeline = true;
+			} else if (args[i].equals("-maximize")) {
+				maximize = true;
+			} else if (args[i].equals("-listed")) {
+				listed = true;
+			} else if (args[i].equals("-verify")) {
+				verify = true;
+			} else if (filename == null && !args[i].startsWith("-")) {
+				filename = args[i];
+			} else {
+				filename = null;
+				batch = null;
+				port = -1;
+				break;
+			}
+		}
+		if (port >= 0) {
+			if (filename != null || batch != null || snapshot != null || checkpoint != null || resume
+					|| offHeap != null || output != null || metrics || pipeline || maximize || listed || verify) {
+				System.out.println("-serve <port> takes no file name, and only -threads <number> and -jobs <number>.");
+				return;
+			}
+			serve(port, jobs, threads);
+			return;
+		}
+		if (batch != null) {
+			if (filename != null || snapshot != null || checkpoint != null || resume || offHeap != null || pipeline
+					|| maximize || listed || verify) {
+				System.out.println("-batch <directory or manifest> takes no file name, and only -threads <number>,"
+						+ " -jobs <number>, -output <directory> and -metrics.");
+				return;
+			}
+			solveBatch(Paths.get(batch), output == null ? null : Paths.get(output), jobs, threads, metrics);
+			return;
+		}
+		if(filename == null){
+			System.out.println("Please specify file name, and nothing else, optionally after -threads <number>, -metrics, -snapshot <file>,"
+					+ " -checkpoint <file>, -checkpoint-every <seconds>, -resume, -offheap <directory>, -pipeline"
+					+ " -maximize, with -listed, and -verify;"
+					+ " or -batch <directory or manifest>, optionally with -jobs <number> and -output <directory>;"
+					+ " or -serve <port>, optionally with -jobs <number>.");
+			return;
+		}
+		if (resume && checkpoint == null) {
+			System.out.println("-resume needs the -checkpoint <file> to resume from.");
+			return;
+		}
+		if (pipeline && (checkpoint != null || offHeap != null)) {
+			System.out.println("-pipeline can't be used with -checkpoint <file> or -offheap <directory>.");
+			return;
+		}
+		if (listed && !maximize) {
+			System.out.println("-listed only goes with -maximize.");
+			return;
+		}
+		if (maximize && (pipeline || checkpoint != null)) {
+			System.out.println("-maximize can't be used with -pipeline or -checkpoint <file>.");
+			return;
+		}
+		if (offHeap != null)
+			juggleFest.setOffHeap(Paths.get(offHeap));
+		if (metrics) {
+			try {
+				juggleFest.registerMetrics();
+			} catch (JMException jmException) {
+				System.out.println("Could not register the metrics with JMX: " + jmException.getMessage());
+			}
+		}
+		boolean loaded = pipeline ? juggleFest.loadAndMakeAssignments(filename) : juggleFest.loadFile(filename, threads);
+		if(loaded){
+			if (snapshot != null) {
+				try {
+					juggleFest.saveSnapshot(Paths.get(snapshot));
+				} catch (IOException ioException) {
+					ioException.printStackTrace();
+				}
+			}
+			if (checkpoint != null)
+				juggleFest.setCheckpoint(Paths.get(checkpoint), checkpointSeconds * 1000);
+			if (resume) {
+				if (!juggleFest.resumeAssignments(threads))
+					return;
+			} else if (maximize) {
+				Assignment assignment = juggleFest.makeBestAssignments(threads, listed);
+				if (assignment != null) {
+					double total = assignment.getTotalScore();
+					double gap = Math.max(0, juggleFest.getScoreBound() - total);
+					System.out.println(String.format("Total match value %.1f, at most %.4g (%.2g%%) below the best possible;"
+							+ " %d jugglers without a circuit", total, gap, total > 0 ? 100 * gap / total : 0.0,
+							assignment.getJugglerCount() - assignment.getAssignedCount()));
+				}
+			} else if (!pipeline) {
+				juggleFest.makeAssignments(threads);
+			}
+			if (verify) {
+				StabilityVerifier verifier = juggleFest.verifyStability(threads);
+				if (verifier != null)
+					printBlockingPairs(verifier);
+			}
+			if (juggleFest.getAssignment() == null) {
+				System.out.println(filename + " has no circuits; there are no assignments to write.");
+				return;
+			}
+			try {
+				juggleFest.outputAssignments(Paths.get(JuggleFest.OUTPUT_FILE), threads);
+			} catch (IOException ioException) {
+				ioException.printStackTrace();
+			}
+			if (metrics)
+				System.out.println(juggleFest.getMetrics().getSummary());
+		}
+	}
+
+	//says whether the assignment is stable, with the first few blocking pairs if it isn't.
+	private static void printBlockingPairs(StabilityVerifier verifier) {
+		int over = verifier.getOverFilledCount();
+		if (over > 0) {
+			System.out.println("Not valid: " + over + " circuits over capacity, such as");
+			for (int i = 0; i < Math.min(over, BLOCKING_PAIRS_SHOWN); i++)
+				System.out.println("  " + verifier.describeOverFilled(i));
+		}
+		int count = verifier.getBlockingPairCount();
+		if (count == 0) {
+			System.out.println("Stable: no juggler would rather be on a circuit that would take him.");
 			return;
 		}
-		if(juggleFest.loadFile(args[0])){
-			juggleFest.makeAssignments();
-			juggleFest.outputAssignments();
+		System.out.println("Not stable: " + count + " blocking pairs, such as");
+		for (int i = 0; i < Math.min(count, BLOCKING_PAIRS_SHOWN); i++)
+			System.out.println("  " + verifier.describe(i));
+	}
+
+	//takes festivals over HTTP until the process is stopped.
+	private static void serve(int port, int jobs, int threads) {
+		try {
+			FestivalService service = new FestivalService(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+					jobs, FestivalService.DEFAULT_QUEUE_LENGTH, threads, FestivalService.DEFAULT_CACHED_CATALOGS,
+					FestivalService.DEFAULT_MAX_BODY_BYTES);
+			service.start();
+			InetSocketAddress address = service.getAddress();
+			System.out.println("Solving festivals POSTed to http://" + address.getHostString() + ":" + address.getPort()
+					+ FestivalService.PATH);
+		} catch (IOException ioException) {
+			System.out.println("Could not start the service on port " + port + ": " + ioException.getMessage());
+			System.exit(1);
+		}
+	}
+
+	//solves every festival in the directory or manifest, and exits with 1 if any failed.
+	private static void solveBatch(Path source, Path output, int jobs, int threads, boolean metrics) {
+		List<Path> inputs;
+		try {
+			inputs = FestivalBatch.listInputs(source);
+			if (output != null)
+				Files.createDirectories(output);
+		} catch (IOException ioException) {
+			System.out.println("Could not read the batch " + source + ": " + ioException);
+			System.exit(1);
+			return;
 		}
+		FestivalBatch festivalBatch = new FestivalBatch(inputs, output, jobs, threads, metrics, System.out);
+		if (festivalBatch.run() > 0)
+			System.exit(1);
 	}
 }
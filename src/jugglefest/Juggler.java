@@ -6,19 +6,21 @@ import java.util.Iterator;
 /**
  * Class Preference
  * @author Shalini Israni
- * Stores a reference to a circuit, and a boolean to know whether visited.
+ * Stores a reference to a circuit, and the juggler's match value for the circuit,
+ * calculated once when the preference is loaded. Whether it has been visited is known from
+ * the juggler's cursor, see Juggler.
  * The Juggler class uses this. Each juggler instance has an instance variable - an ArrayList
  * of preferences. The reason for using ArrayList is explained in the Juggler class.
  */
 //Added a test comment from remote git from new branch
 class Preference{
 	Circuit c ;	
-	boolean visited ;
+	float score ;
 	
-	public Preference(Circuit c/*, int number*/, boolean visited) {	
+	public Preference(Circuit c/*, int number*/, float score) {	
 		this.c = c;
 	//	this.number = number;
-		this.visited = visited;
+		this.score = score;
 	}
 	
 }
@@ -37,6 +39,10 @@ public class Juggler {
 	private String name;
 	
 	private ArrayList<Preference> preferences;
+	//Circuits are proposed to strictly in order of preference, so the visited ones are always
+	//the first few in the list. Instead of a visited flag on every preference, which had to be
+	//searched for on every proposal, I keep the index of the first unvisited one.
+	private int nextPreference;
 	public float getHandEyeCoord() {
 		return handEyeCoord;
 	}
@@ -84,33 +90,72 @@ public class Juggler {
 	}
 	
 	/**
-	 * Adds a circuit to the preference list for this juggler.
+	 * Adds a circuit to the preference list for this juggler. Since visited preferences are
+	 * always the first ones in the list, visited only counts while all the preferences before
+	 * this one are visited too.
 	 * @param circuit
 	 * @param visited
 	 */
 	public void addPreference(Circuit circuit, boolean visited){
 		
-		this.preferences.add(new Preference(circuit,visited)) ;
+		addPreference(circuit, visited, JuggleFest.match(this, circuit)) ;
 		
 	}
 	
 	/**
-	 * Mark a circuit visited for this juggler.
+	 * Adds a circuit to the preference list for this juggler, along with the already
+	 * calculated match value for it.
+	 * @param circuit
+	 * @param visited
+	 * @param score
+	 */
+	void addPreference(Circuit circuit, boolean visited, float score){
+		
+		this.preferences.add(new Preference(circuit,score)) ;
+		if(visited && nextPreference == preferences.size() - 1)
+			nextPreference++;
+		
+	}
+	
+	/**
+	 * Mark a circuit visited for this juggler. This is normally the next unvisited circuit,
+	 * which is just a move of the cursor. Since circuits are visited in order of preference,
+	 * marking one further down the list marks every circuit before it visited too.
 	 * @param c
 	 */
 	
 	public void markVisited(Circuit c){
-		Iterator<Preference> preferenceIterator = preferences.iterator();
-		Preference preference;
-		while(preferenceIterator.hasNext()){
-			preference = (Preference)preferenceIterator.next();
-			if (preference.c.equals(c)){
-				preference.visited = true;
+		for(int i=nextPreference; i<preferences.size(); i++){
+			Circuit preferred = preferences.get(i).c;
+			if (preferred == c || preferred.equals(c)){
+				nextPreference = i + 1;
 				break;
 			}
 		}
 	}
 	
+	/**
+	 * 
+	 * @return int
+	 * Index in getPreferences() of the next unvisited preference. Equal to the number of
+	 * preferences once all of them have been visited.
+	 */
+	
+	public int getNextPreferenceIndex(){
+		return nextPreference;
+	}
+	
+	/**
+	 * Move the cursor: every preference before index is visited, the rest are not.
+	 * @param index
+	 */
+	
+	public void setNextPreferenceIndex(int index){
+		if(index < 0 || index > preferences.size())
+			throw new IndexOutOfBoundsException("Preference index " + index + ", size " + preferences.size());
+		nextPreference = index;
+	}
+	
 	/**
 	 * Returns the next unvisited circuit for a juggler in descending order of preference.
 	 * Since the input contains circuits in order of preference, I build them into a 
@@ -121,14 +166,20 @@ public class Juggler {
 	 */
 	
 	public Circuit getNextUnvisitedPreference(){
-		Iterator<Preference> preferenceIterator = preferences.iterator();
-		Preference preference;
-		while(preferenceIterator.hasNext()){
-			preference = (Preference)preferenceIterator.next();	
-			if(!preference.visited)
-				return preference.c;
-		}
-		return null;
+		Preference preference = nextUnvisited();
+		return preference == null ? null : preference.c;
+	}
+	
+	/**
+	 * Same as getNextUnvisitedPreference, but returns the whole preference so the caller
+	 * can use the cached match value as well as the circuit.
+	 * @return Preference
+	 */
+	
+	Preference nextUnvisited(){
+		if(nextPreference >= preferences.size())
+			return null;
+		return preferences.get(nextPreference);
 	}
 	
 	//override for meaningful comparison of two Juggler objects when testing for equality.
@@ -0,0 +1,61 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class MappedColumn
+ * @author Shalini Israni
+ * A column of ints or floats, 4 bytes each and little-endian, that stays in a file mapped into
+ * memory instead of being copied into an array on the heap, for festivals too big for the heap.
+ * The operating system pages it in as it is read and can page it out again when memory runs
+ * short, so the parts of it not in use cost no memory.
+ * A MappedByteBuffer holds at most 2 GB, so the column is mapped in chunks of CHUNK_SIZE
+ * values; value i is in chunk i / CHUNK_SIZE.
+ */
+final class MappedColumn {
+	//values per chunk, a power of two so the chunk and the place in it are a shift and a mask.
+	private static final int CHUNK_SHIFT = 28;
+	private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = (int) CHUNK_SIZE - 1;
+
+	private final ByteBuffer[] chunks;
+	private final long size;
+
+	/**
+	 * Constructor. Maps count values from position on in the channel's file, which must be at
+	 * least that long. The mapping stays valid after the channel is closed.
+	 * @param channel
+	 * @param position
+	 * @param count
+	 * @param writable whether the values can be changed, which changes them in the file.
+	 * @throws IOException
+	 */
+	MappedColumn(FileChannel channel, long position, long count, boolean writable) throws IOException {
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		this.size = count;
+		this.chunks = new ByteBuffer[(int) ((count + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+		for (int i = 0; i < chunks.length; i++) {
+			long length = Math.min(CHUNK_SIZE, count - ((long) i << CHUNK_SHIFT));
+			chunks[i] = channel.map(mode, position + 4 * (i * CHUNK_SIZE), 4 * length).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	long size() {
+		return size;
+	}
+
+	int getInt(long i) {
+		return chunks[(int) (i >>> CHUNK_SHIFT)].getInt(((int) i & CHUNK_MASK) << 2);
+	}
+
+	float getFloat(long i) {
+		return chunks[(int) (i >>> CHUNK_SHIFT)].getFloat(((int) i & CHUNK_MASK) << 2);
+	}
+
+	void putInt(long i, int value) {
+		chunks[(int) (i >>> CHUNK_SHIFT)].putInt(((int) i & CHUNK_MASK) << 2, value);
+	}
+}
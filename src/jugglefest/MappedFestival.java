@@ -0,0 +1,105 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class MappedFestival
+ * @author Shalini Israni
+ * A Festival whose jugglers stay in a FestivalSnapshot file mapped into memory, instead of
+ * being copied onto the heap. The juggler columns and preference lists are MappedColumns over
+ * the sections of the file, so a festival can be much bigger than the heap: the operating
+ * system pages in the parts a matching reads, and pages out the ones it has moved on from.
+ * The circuits are few, and are loaded onto the heap as usual.
+ * The file is only read, and jugglers can't be added; they can still be withdrawn, which is
+ * kept on the heap.
+ */
+final class MappedFestival extends Festival {
+	private final int jugglerCount;
+	private final int preferenceCount;
+	private final MappedColumn jugglerNumbers;
+	private final MappedColumn handEyeCoord;
+	private final MappedColumn endurance;
+	private final MappedColumn pizzazz;
+	private final MappedColumn preferenceOffsets;
+	private final MappedColumn preferenceCircuits;
+	private final MappedColumn preferenceScores;
+
+	/**
+	 * Constructor
+	 * @param circuits
+	 * @param channel the snapshot file
+	 * @param position where the juggler numbers start in it; the other juggler columns and the
+	 * preference lists follow, laid out as FestivalSnapshot describes.
+	 * @param jugglerCount
+	 * @param preferenceCount
+	 * @throws IOException
+	 */
+	MappedFestival(CircuitCatalog circuits, FileChannel channel, long position, int jugglerCount,
+			int preferenceCount) throws IOException {
+		super(circuits);
+		this.jugglerCount = jugglerCount;
+		this.preferenceCount = preferenceCount;
+		this.jugglerNumbers = new MappedColumn(channel, position, jugglerCount, false);
+		this.handEyeCoord = new MappedColumn(channel, position + 4L * jugglerCount, jugglerCount, false);
+		this.endurance = new MappedColumn(channel, position + 8L * jugglerCount, jugglerCount, false);
+		this.pizzazz = new MappedColumn(channel, position + 12L * jugglerCount, jugglerCount, false);
+		long preferences = position + 16L * jugglerCount;
+		this.preferenceOffsets = new MappedColumn(channel, preferences, jugglerCount + 1L, false);
+		preferences += 4L * (jugglerCount + 1);
+		this.preferenceCircuits = new MappedColumn(channel, preferences, preferenceCount, false);
+		this.preferenceScores = new MappedColumn(channel, preferences + 4L * preferenceCount, preferenceCount, false);
+	}
+
+	@Override
+	public int addJuggler(int number, float handEyeCoord, float endurance, float pizzazz,
+			int[] preferences, int preferenceCount) {
+		throw new UnsupportedOperationException("Jugglers can't be added to a festival kept off the heap");
+	}
+
+	@Override
+	public void addAll(Festival other) {
+		throw new UnsupportedOperationException("Jugglers can't be added to a festival kept off the heap");
+	}
+
+	@Override
+	public int getJugglerCount() {
+		return jugglerCount;
+	}
+	@Override
+	public int getJugglerNumber(int j) {
+		return jugglerNumbers.getInt(j);
+	}
+	@Override
+	public float getHandEyeCoord(int j) {
+		return handEyeCoord.getFloat(j);
+	}
+	@Override
+	public float getEndurance(int j) {
+		return endurance.getFloat(j);
+	}
+	@Override
+	public float getPizzazz(int j) {
+		return pizzazz.getFloat(j);
+	}
+	@Override
+	public int getPreferenceCount() {
+		return preferenceCount;
+	}
+	@Override
+	public int getPreferenceStart(int j) {
+		return preferenceOffsets.getInt(j);
+	}
+	@Override
+	public int getPreferenceEnd(int j) {
+		return preferenceOffsets.getInt(j + 1L);
+	}
+	@Override
+	public int getPreferenceCircuit(int i) {
+		return preferenceCircuits.getInt(i);
+	}
+	@Override
+	public float getPreferenceScore(int i) {
+		return preferenceScores.getFloat(i);
+	}
+}
@@ -0,0 +1,79 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class MappedMatching
+ * @author Shalini Israni
+ * A Matching that keeps each juggler's preference position and circuit in a scratch file
+ * mapped into memory, instead of in two int arrays on the heap, to go with a MappedFestival.
+ * The scratch file is made in the given directory and deleted when it has been mapped, so it
+ * takes disk space only while the matching is in use, and nothing is left behind if the JVM is
+ * killed.
+ * The unassigned queue, the remaining jugglers and the circuit rosters stay on the heap. They
+ * take about 16 bytes per juggler, against the 8 bytes here and the 16 bytes plus 8 bytes per
+ * preference of the festival.
+ * Jugglers can't be added, and the matching can't be copied for a checkpoint, since the copy
+ * would be on the heap.
+ */
+final class MappedMatching extends Matching {
+	//preference position and circuit of each juggler, side by side.
+	private final MappedColumn state;
+
+	/**
+	 * Constructor. Every juggler starts at the top of his list, unassigned, and in the queue in
+	 * the order he was loaded.
+	 * @param festival
+	 * @param capacities the number of jugglers each circuit takes, by circuit index
+	 * @param directory where the scratch file goes
+	 * @throws IOException
+	 */
+	MappedMatching(Festival festival, int[] capacities, Path directory) throws IOException {
+		super(festival, new CircuitRosters(capacities), false);
+		int jugglerCount = festival.getJugglerCount();
+		Path file = Files.createTempFile(directory, "jugglefest-matching", ".tmp");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE)) {
+			state = new MappedColumn(channel, 0, 2L * jugglerCount, true);
+		}
+		IntQueue unassigned = getUnassigned();
+		for (int j = 0; j < jugglerCount; j++) {
+			setNextPreference(j, festival.getPreferenceStart(j));
+			setAssignedCircuit(j, -1);
+			if (!festival.isWithdrawn(j))
+				unassigned.add(j);
+		}
+	}
+
+	@Override
+	Matching copy() {
+		throw new UnsupportedOperationException("A matching kept off the heap can't be copied");
+	}
+
+	@Override
+	public void addNewJugglers() {
+		if (getFestival().getJugglerCount() != getJugglerCount())
+			throw new UnsupportedOperationException("Jugglers can't be added to a matching kept off the heap");
+	}
+
+	@Override
+	public int getNextPreference(int j) {
+		return state.getInt(2L * j);
+	}
+	@Override
+	public void setNextPreference(int j, int position) {
+		state.putInt(2L * j, position);
+	}
+	@Override
+	public int getAssignedCircuit(int j) {
+		return state.getInt(2L * j + 1);
+	}
+	@Override
+	public void setAssignedCircuit(int j, int c) {
+		state.putInt(2L * j + 1, c);
+	}
+}
@@ -0,0 +1,189 @@
+package jugglefest;
+
+import java.util.Arrays;
+
+/**
+ * Class Matching
+ * @author Shalini Israni
+ * The state of an assignment of a Festival's jugglers to its circuits, all in int arrays:
+ * the circuit rosters, the circuit each juggler is on (or -1), how far down his preference list
+ * each juggler has got, the queue of jugglers still looking for a circuit, the jugglers
+ * that went through their whole list without getting a circuit, and how far the fill phase
+ * has got.
+ * JuggleFest.makeAssignments works on this directly.
+ * Jugglers and circuits can be added after the matching is made, for MatchingRepair.
+ * A MappedMatching keeps the per-juggler arrays in a mapped file instead, and overrides the
+ * methods that use them.
+ */
+class Matching {
+	private final Festival festival;
+	private final CircuitRosters rosters;
+	//position in the festival's flat preference array of the next circuit juggler j will try.
+	//Everything before it has been visited.
+	private int[] nextPreference;
+	private int[] assignedCircuits;
+	//jugglers of the festival the matching knows about.
+	private int jugglerCount;
+	private final IntQueue unassigned;
+	private final IntQueue remaining;
+	//place in the fill order of the next circuit the fill phase fills, -1 before it starts.
+	private int fillPlace = -1;
+
+	/**
+	 * Constructor. Every juggler starts at the top of his list, unassigned, and in the queue in
+	 * the order he was loaded.
+	 * @param festival
+	 * @param capacity the number of jugglers every circuit takes
+	 */
+	public Matching(Festival festival, int capacity) {
+		this(festival, new CircuitRosters(festival.getCircuitCount(), capacity), true);
+	}
+
+	/**
+	 * Constructor
+	 * @param festival
+	 * @param capacities the number of jugglers each circuit takes, by circuit index
+	 */
+	public Matching(Festival festival, int[] capacities) {
+		this(festival, new CircuitRosters(capacities), true);
+	}
+
+	/**
+	 * Constructor
+	 * @param festival
+	 * @param rosters
+	 * @param onHeap false for a MappedMatching, which keeps the preference positions and circuits
+	 * of the jugglers itself, and puts them on the unassigned queue.
+	 */
+	Matching(Festival festival, CircuitRosters rosters, boolean onHeap) {
+		int jugglerCount = festival.getJugglerCount();
+		this.festival = festival;
+		this.rosters = rosters;
+		this.jugglerCount = jugglerCount;
+		this.unassigned = new IntQueue(jugglerCount);
+		this.remaining = new IntQueue(16);
+		if (!onHeap)
+			return;
+		this.nextPreference = new int[jugglerCount];
+		this.assignedCircuits = new int[jugglerCount];
+		Arrays.fill(assignedCircuits, -1);
+		for (int j = 0; j < jugglerCount; j++) {
+			nextPreference[j] = festival.getPreferenceStart(j);
+			if (!festival.isWithdrawn(j))
+				unassigned.add(j);
+		}
+	}
+
+	/**
+	 * Constructor for a matching saved before, such as in a SolverCheckpoint, part way through
+	 * or after the pairing by ranking. The arrays are kept, not copied.
+	 * @param festival
+	 * @param rosters
+	 * @param nextPreference by juggler
+	 * @param assignedCircuits by juggler
+	 * @param unassigned the unassigned queue, front first
+	 * @param remaining the remaining jugglers, in order
+	 */
+	Matching(Festival festival, CircuitRosters rosters, int[] nextPreference, int[] assignedCircuits,
+			int[] unassigned, int[] remaining) {
+		this.festival = festival;
+		this.rosters = rosters;
+		this.jugglerCount = nextPreference.length;
+		this.nextPreference = nextPreference;
+		this.assignedCircuits = assignedCircuits;
+		this.unassigned = new IntQueue(unassigned.length);
+		this.remaining = new IntQueue(remaining.length);
+		for (int j : unassigned)
+			this.unassigned.add(j);
+		for (int j : remaining)
+			this.remaining.add(j);
+	}
+
+	/**
+	 *
+	 * @return Matching
+	 * A copy of the matching, of the same festival, that changes independently of this one.
+	 */
+	Matching copy() {
+		Matching copy = new Matching(festival, rosters.copy(), Arrays.copyOf(nextPreference, jugglerCount),
+				Arrays.copyOf(assignedCircuits, jugglerCount), unassigned.toArray(), remaining.toArray());
+		copy.fillPlace = fillPlace;
+		return copy;
+	}
+
+	/**
+	 * Take in the jugglers added to the festival since the matching was made, at the top of
+	 * their lists and unassigned. They are not put on the unassigned queue.
+	 */
+	public void addNewJugglers() {
+		int count = festival.getJugglerCount();
+		if (count > nextPreference.length) {
+			int capacity = Math.max(count, nextPreference.length * 2);
+			nextPreference = Arrays.copyOf(nextPreference, capacity);
+			assignedCircuits = Arrays.copyOf(assignedCircuits, capacity);
+		}
+		for (int j = jugglerCount; j < count; j++) {
+			nextPreference[j] = festival.getPreferenceStart(j);
+			assignedCircuits[j] = -1;
+		}
+		jugglerCount = count;
+	}
+
+	public Festival getFestival() {
+		return festival;
+	}
+	//jugglers of the festival the matching knows about.
+	int getJugglerCount() {
+		return jugglerCount;
+	}
+	public CircuitRosters getRosters() {
+		return rosters;
+	}
+	public IntQueue getUnassigned() {
+		return unassigned;
+	}
+	public IntQueue getRemaining() {
+		return remaining;
+	}
+
+	/**
+	 *
+	 * @return int
+	 * The place in the fill order of the next circuit the fill phase fills, or -1 if it hasn't
+	 * started. While it runs, the jugglers on the remaining list are still there, those the
+	 * circuits before that place took included.
+	 */
+	public int getFillPlace() {
+		return fillPlace;
+	}
+	public void setFillPlace(int place) {
+		fillPlace = place;
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return int
+	 * Position of juggler j's next unvisited preference in the festival's preference array.
+	 * Equal to festival.getPreferenceEnd(j) once every circuit on his list has been visited.
+	 */
+	public int getNextPreference(int j) {
+		return nextPreference[j];
+	}
+	public void setNextPreference(int j, int position) {
+		nextPreference[j] = position;
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return int
+	 * The circuit juggler j is on, or -1.
+	 */
+	public int getAssignedCircuit(int j) {
+		return assignedCircuits[j];
+	}
+	public void setAssignedCircuit(int j, int c) {
+		assignedCircuits[j] = c;
+	}
+}
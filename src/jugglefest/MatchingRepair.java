@@ -0,0 +1,372 @@
+package jugglefest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class MatchingRepair
+ * @author Shalini Israni
+ * Brings a finished Matching up to date after a change to the festival (a juggler joining,
+ * withdrawing or changing his list, a circuit being added or changing its capacity) without
+ * making the assignment again from scratch.
+ * The pairing by ranking is repaired on its own: jugglers the fill phase placed count as
+ * having no circuit, and every place it takes or gives up on a circuit goes through the
+ * FillPhase, which keeps the fill phase up to date as it goes. The change is made, and the
+ * pairing is repaired from there with only the jugglers it affects:
+ * - a new juggler, or one bumped off a circuit, proposes down his list as in deferred
+ *   acceptance. Every circuit that turned a juggler away still does with more jugglers
+ *   around, so this ends in the same pairing as starting from nothing.
+ * - when a juggler leaves a circuit, the circuit has a vacancy. It takes the juggler it likes
+ *   best of those who would rather be on it than where they are, which leaves a vacancy on
+ *   his circuit, and so on, until the juggler it takes had no circuit or no one would rather
+ *   be on it. Every juggler in the chain moves up his list, so the chain ends, and every
+ *   circuit took the best juggler it could, so the pairing stays stable.
+ * Vacancies leave a stable pairing, but not always the one that is best for the jugglers,
+ * which is what a full run gives: the jugglers that take the new room can be in the way of a
+ * cycle of jugglers that would each move up to the circuit of the next. Such a cycle is a
+ * rotation: each circuit in it takes the best juggler that would rather be on it than where
+ * he is, and gives up the juggler the previous circuit in the cycle takes. Applying rotations
+ * until there are none left ends in the best stable pairing for the jugglers, the same one
+ * deferred acceptance finds, as long as no circuit has to choose between two jugglers with
+ * the same match value. A new rotation has to go through a circuit whose roster changed or
+ * that is on the list of a juggler who moved, so only those are searched.
+ * The work done is that of the proposals, vacancies and rotations that the change sets off,
+ * and of the fill phase circuits they reach, rather than that of the whole festival. The
+ * only pass over the whole festival is building, on the first change, the list of jugglers
+ * that ranked each circuit.
+ */
+final class MatchingRepair {
+	private final Matching matching;
+	private final Festival festival;
+	private final CircuitRosters rosters;
+	private final FillPhase fill;
+	//for every circuit, the jugglers that have it on their list, and the position in the
+	//festival's preference array where they have it.
+	private int[][] listers;
+	private int[][] listerPositions;
+	private int[] listerCounts;
+	private final IntQueue proposers = new IntQueue(16);
+	//circuits to search for rotations from, once a vacancy has been made.
+	private final IntQueue candidates = new IntQueue(16);
+	private final Set<Integer> candidateSet = new HashSet<Integer>();
+	private boolean vacated;
+	private long proposals;
+	private long rotations;
+	//the juggler found by the last bestListing.
+	private int nextJuggler;
+
+	/**
+	 * Constructor
+	 * @param matching a matching that has been through the pairing by ranking.
+	 * @param fill its fill phase, done.
+	 */
+	public MatchingRepair(Matching matching, FillPhase fill) {
+		this.matching = matching;
+		this.fill = fill;
+		this.festival = matching.getFestival();
+		this.rosters = matching.getRosters();
+		int circuitCount = festival.getCircuitCount();
+		this.listerCounts = new int[circuitCount];
+		int jugglerCount = festival.getJugglerCount();
+		for (int k = 0; k < festival.getPreferenceCount(); k++)
+			listerCounts[festival.getPreferenceCircuit(k)]++;
+		this.listers = new int[circuitCount][];
+		this.listerPositions = new int[circuitCount][];
+		for (int c = 0; c < circuitCount; c++) {
+			listers[c] = new int[Math.max(listerCounts[c], 4)];
+			listerPositions[c] = new int[listers[c].length];
+		}
+		Arrays.fill(listerCounts, 0);
+		for (int j = 0; j < jugglerCount; j++)
+			addListings(j);
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of proposals made by the repairs so far.
+	 */
+	public long getProposals() {
+		return proposals;
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of rotations applied by the repairs so far.
+	 */
+	public long getRotations() {
+		return rotations;
+	}
+
+	/**
+	 * Juggler j has been added to the festival.
+	 * @param j
+	 */
+	public void addJuggler(int j) {
+		matching.addNewJugglers();
+		addListings(j);
+		proposers.add(j);
+	}
+
+	/**
+	 * Withdraw juggler j from the festival and give up his circuit.
+	 * @param j
+	 */
+	public void removeJuggler(int j) {
+		festival.withdrawJuggler(j);
+		//even without a circuit he may have been in the way of a rotation.
+		vacated = true;
+		moved(j);
+		int c = seat(j);
+		if (fill.contains(j)) {
+			fill.removeFromPool(j);
+		} else if (c >= 0) {
+			fill.removeFromCircuit(c, j);
+			matching.setAssignedCircuit(j, -1);
+			vacancy(c);
+		}
+	}
+
+	/**
+	 * Circuit c has been added to the festival's catalog.
+	 * @param c
+	 * @param capacity
+	 */
+	public void addCircuit(int c, int capacity) {
+		rosters.addCircuit(capacity);
+		int count = c + 1;
+		listers = Arrays.copyOf(listers, count);
+		listerPositions = Arrays.copyOf(listerPositions, count);
+		listerCounts = Arrays.copyOf(listerCounts, count);
+		listers[c] = new int[4];
+		listerPositions[c] = new int[4];
+		fill.addCircuit(c);
+	}
+
+	/**
+	 * Change the number of jugglers circuit c takes. If it goes down, the weakest jugglers
+	 * are bumped off; if it goes up, the circuit has vacancies.
+	 * @param c
+	 * @param capacity
+	 */
+	public void changeCapacity(int c, int capacity) {
+		int before = rosters.capacity(c);
+		rosters.setCapacity(c, capacity);
+		//the fill phase makes room first, so what is left over the capacity is the pairing by ranking's.
+		fill.capacityChanged(c);
+		for (int i = before; i < capacity; i++) {
+			if (!vacancy(c))
+				break;
+		}
+		while (rosters.size(c) > capacity) {
+			int j = rosters.removeWorst(c);
+			matching.setAssignedCircuit(j, -1);
+			moved(j);
+			proposers.add(j);
+		}
+	}
+
+	/**
+	 * Carry on with deferred acceptance until every juggler affected by the changes has a
+	 * circuit again, or is in the fill phase.
+	 */
+	public void propose() {
+		while (!proposers.isEmpty()) {
+			int j = proposers.poll();
+			if (seat(j) >= 0)
+				continue; //he was queued twice, and has found a circuit since.
+			int position = matching.getNextPreference(j);
+			if (position >= festival.getPreferenceEnd(j)) {
+				if (!fill.contains(j))
+					fill.addToPool(j);
+				continue;
+			}
+			int c = festival.getPreferenceCircuit(position);
+			float match = festival.getPreferenceScore(position);
+			proposals++;
+			matching.setNextPreference(j, position + 1);
+			if (!rankedFull(c)) {
+				fill.addToCircuit(c, j, match);
+				matching.setAssignedCircuit(j, c);
+				moved(j);
+			} else if (rosters.size(c) > 0 && rosters.peekWorstScore(c) <= match) {
+				int jWorst = rosters.replaceWorst(c, j, match);
+				matching.setAssignedCircuit(jWorst, -1);
+				moved(jWorst);
+				proposers.add(jWorst);
+				matching.setAssignedCircuit(j, c);
+				moved(j);
+			} else {
+				proposers.add(j);
+			}
+		}
+	}
+
+	/**
+	 * Apply rotations until none of the circuits whose roster changed, or that are on the list
+	 * of a juggler who moved, since the last vacancy, is in one. Call this after propose().
+	 */
+	public void improve() {
+		if (!vacated) {
+			candidates.clear();
+			candidateSet.clear();
+			return;
+		}
+		//the circuits walked so far, the juggler each takes, and where it is on his list.
+		IntQueue pathCircuits = new IntQueue(16);
+		IntQueue pathJugglers = new IntQueue(16);
+		IntQueue pathPositions = new IntQueue(16);
+		Map<Integer, Integer> onPath = new HashMap<Integer, Integer>();
+		while (!candidates.isEmpty()) {
+			int c = candidates.poll();
+			candidateSet.remove(c);
+			pathCircuits.clear();
+			pathJugglers.clear();
+			pathPositions.clear();
+			onPath.clear();
+			//follow each circuit to the circuit of the juggler it would take, until the walk
+			//comes back on itself or gets to a circuit with no such juggler.
+			while (!onPath.containsKey(c)) {
+				int position = nextPosition(c);
+				if (position < 0)
+					break;
+				int j = nextJuggler;
+				onPath.put(c, pathCircuits.size());
+				pathCircuits.add(c);
+				pathJugglers.add(j);
+				pathPositions.add(position);
+				c = matching.getAssignedCircuit(j);
+			}
+			if (onPath.containsKey(c))
+				rotate(pathCircuits, pathJugglers, pathPositions, onPath.get(c));
+		}
+		vacated = false;
+	}
+
+	//Finds the juggler circuit c likes best among those it does not have who would rather be
+	//on it, and returns the position of c on his list. Returns -1 if there is no such
+	//juggler, or if he has no circuit: c can't give up a juggler for one worse than him, and
+	//jugglers without a circuit are without one in every stable pairing. A circuit with room
+	//has no such juggler in a stable pairing, so it is not looked at.
+	private int nextPosition(int c) {
+		if (!rankedFull(c) || rosters.capacity(c) == 0)
+			return -1;
+		int position = bestListing(c);
+		if (position < 0 || seat(nextJuggler) < 0)
+			return -1;
+		return position;
+	}
+
+	//Finds the juggler circuit c likes best among those it does not have who would rather be
+	//on it than where they are, with or without a circuit, and returns the position of c on
+	//his list, or -1 if there is none.
+	private int bestListing(int c) {
+		int[] jugglers = listers[c];
+		int[] positions = listerPositions[c];
+		int best = -1;
+		float bestScore = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < listerCounts[c]; i++) {
+			int j = jugglers[i];
+			int position = positions[i];
+			int seat = seat(j);
+			if (seat == c || festival.isWithdrawn(j))
+				continue;
+			if (position < matching.getNextPreference(j) - (seat < 0 ? 0 : 1)
+					&& festival.getPreferenceScore(position) > bestScore) {
+				best = i;
+				bestScore = festival.getPreferenceScore(position);
+			}
+		}
+		if (best < 0)
+			return -1;
+		nextJuggler = jugglers[best];
+		return positions[best];
+	}
+
+	//moves every juggler from the given point of the path on to the circuit before his own.
+	private void rotate(IntQueue pathCircuits, IntQueue pathJugglers, IntQueue pathPositions, int from) {
+		for (int i = from; i < pathCircuits.size(); i++) {
+			int j = pathJugglers.get(i);
+			rosters.remove(matching.getAssignedCircuit(j), j);
+		}
+		for (int i = from; i < pathCircuits.size(); i++) {
+			int c = pathCircuits.get(i);
+			int j = pathJugglers.get(i);
+			int position = pathPositions.get(i);
+			rosters.add(c, j, festival.getPreferenceScore(position));
+			matching.setAssignedCircuit(j, c);
+			matching.setNextPreference(j, position + 1);
+			moved(j);
+		}
+		rotations++;
+	}
+
+	//juggler j changed circuits: the rotations through the circuits on his list may have changed.
+	private void moved(int j) {
+		if (!vacated)
+			return;
+		for (int k = festival.getPreferenceStart(j); k < festival.getPreferenceEnd(j); k++)
+			addCandidate(festival.getPreferenceCircuit(k));
+	}
+
+	private void addCandidate(int c) {
+		if (vacated && candidateSet.add(c))
+			candidates.add(c);
+	}
+
+	//Circuit c has a vacancy in the pairing by ranking: it takes the juggler it likes best of
+	//those who would rather be on it, and his circuit has the vacancy next. Returns false if
+	//no one would rather be on c.
+	private boolean vacancy(int c) {
+		vacated = true;
+		addCandidate(c);
+		boolean filled = false;
+		while (c >= 0) {
+			int position = bestListing(c);
+			if (position < 0)
+				break;
+			int j = nextJuggler;
+			int from = seat(j);
+			if (fill.contains(j))
+				fill.removeFromPool(j);
+			else if (from >= 0)
+				fill.removeFromCircuit(from, j);
+			fill.addToCircuit(c, j, festival.getPreferenceScore(position));
+			matching.setAssignedCircuit(j, c);
+			matching.setNextPreference(j, position + 1);
+			moved(j);
+			filled = true;
+			c = from;
+		}
+		return filled;
+	}
+
+	//the circuit juggler j has in the pairing by ranking, or -1 if he has none there, even if
+	//the fill phase gave him one.
+	private int seat(int j) {
+		return fill.contains(j) ? -1 : matching.getAssignedCircuit(j);
+	}
+
+	//true if the pairing by ranking alone fills circuit c.
+	private boolean rankedFull(int c) {
+		return rosters.size(c) - fill.getCount(c) >= rosters.capacity(c);
+	}
+
+	private void addListings(int j) {
+		for (int k = festival.getPreferenceStart(j); k < festival.getPreferenceEnd(j); k++) {
+			int c = festival.getPreferenceCircuit(k);
+			int count = listerCounts[c];
+			if (count == listers[c].length) {
+				listers[c] = Arrays.copyOf(listers[c], count * 2);
+				listerPositions[c] = Arrays.copyOf(listerPositions[c], count * 2);
+			}
+			listers[c][count] = j;
+			listerPositions[c][count] = k;
+			listerCounts[c] = count + 1;
+		}
+	}
+}
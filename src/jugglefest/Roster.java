@@ -0,0 +1,212 @@
+package jugglefest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class Roster
+ * @author Shalini Israni
+ * The jugglers currently assigned to a circuit, kept as a binary min-heap keyed on each
+ * juggler's match value for the circuit. The weakest juggler is always at the root, so
+ * makeAssignments can look at it in O(1) and swap it for a better match in O(log k), instead
+ * of scanning the whole circuit for every proposal.
+ * The match value is stored next to the juggler when it is added, so it is never recalculated
+ * while the juggler stays on the circuit.
+ * Jugglers with equal match values are ordered by the time they joined the circuit, oldest
+ * first, which is the juggler the old linear scan picked when there was a tie.
+ */
+class Roster {
+	private Juggler[] jugglers;
+	private float[] scores;
+	//order in which jugglers joined, used to break ties between equal match values.
+	private int[] joined;
+	private int size;
+	private int nextJoined;
+
+	/**
+	 * Constructor
+	 * @param expectedSize
+	 */
+	public Roster(int expectedSize) {
+		int capacity = Math.max(expectedSize, 1);
+		this.jugglers = new Juggler[capacity];
+		this.scores = new float[capacity];
+		this.joined = new int[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return Juggler
+	 * The juggler in heap slot i. Slots are not in any particular order apart from slot 0
+	 * holding the weakest juggler.
+	 */
+	public Juggler get(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Roster slot " + i + ", size " + size);
+		return jugglers[i];
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return float
+	 * The match value stored with the juggler in heap slot i.
+	 */
+	public float getScore(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Roster slot " + i + ", size " + size);
+		return scores[i];
+	}
+
+	/**
+	 *
+	 * @return Juggler
+	 * The juggler with the lowest match value for this circuit, or null if the roster is empty.
+	 */
+	public Juggler peekWorst() {
+		return size == 0 ? null : jugglers[0];
+	}
+
+	/**
+	 *
+	 * @return float
+	 * The match value of the weakest juggler. Only meaningful when the roster is not empty.
+	 */
+	public float peekWorstScore() {
+		return scores[0];
+	}
+
+	/**
+	 * Add a juggler to the roster.
+	 * @param j
+	 * @param score
+	 */
+	public void add(Juggler j, float score) {
+		if (size == jugglers.length) {
+			int capacity = jugglers.length * 2;
+			jugglers = Arrays.copyOf(jugglers, capacity);
+			scores = Arrays.copyOf(scores, capacity);
+			joined = Arrays.copyOf(joined, capacity);
+		}
+		jugglers[size] = j;
+		scores[size] = score;
+		joined[size] = nextJoined++;
+		siftUp(size++);
+	}
+
+	/**
+	 * Take the weakest juggler off the roster and put j in its place.
+	 * @param j
+	 * @param score
+	 * @return Juggler the juggler that was bumped off.
+	 */
+	public Juggler replaceWorst(Juggler j, float score) {
+		Juggler worst = jugglers[0];
+		jugglers[0] = j;
+		scores[0] = score;
+		joined[0] = nextJoined++;
+		siftDown(0);
+		return worst;
+	}
+
+	/**
+	 * Remove a juggler from the roster, wherever it is in the heap.
+	 * @param j
+	 * @return boolean whether the juggler was on the roster.
+	 */
+	public boolean remove(Juggler j) {
+		for (int i = 0; i < size; i++) {
+			if (jugglers[i].equals(j)) {
+				removeAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @return List
+	 * A read-only copy of the jugglers on this roster, in the order they joined it, as the
+	 * circuit's list of jugglers used to be kept.
+	 */
+	public List<Juggler> asList() {
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++)
+			keys[i] = (long) joined[i] << 32 | i;
+		Arrays.sort(keys);
+		Juggler[] inJoinOrder = new Juggler[size];
+		for (int i = 0; i < size; i++)
+			inJoinOrder[i] = jugglers[(int) keys[i]];
+		return Collections.unmodifiableList(Arrays.asList(inJoinOrder));
+	}
+
+	private void removeAt(int i) {
+		size--;
+		if (i != size) {
+			move(size, i);
+			siftDown(i);
+			siftUp(i);
+		}
+		jugglers[size] = null;
+	}
+
+	//true if the juggler in slot a should sit above the juggler in slot b in the heap.
+	private boolean weaker(int a, int b) {
+		if (scores[a] != scores[b])
+			return scores[a] < scores[b];
+		return joined[a] < joined[b];
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!weaker(i, parent))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && weaker(child + 1, child))
+				child++;
+			if (!weaker(child, i))
+				break;
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void move(int from, int to) {
+		jugglers[to] = jugglers[from];
+		scores[to] = scores[from];
+		joined[to] = joined[from];
+	}
+
+	private void swap(int a, int b) {
+		Juggler j = jugglers[a];
+		jugglers[a] = jugglers[b];
+		jugglers[b] = j;
+		float score = scores[a];
+		scores[a] = scores[b];
+		scores[b] = score;
+		int order = joined[a];
+		joined[a] = joined[b];
+		joined[b] = order;
+	}
+}
@@ -0,0 +1,86 @@
+package jugglefest;
+
+import java.util.Arrays;
+
+/**
+ * Class RosterEvent
+ * @author Shalini Israni
+ * One circuit's final roster, published by JuggleFest.getRosterPublisher() as soon as it is
+ * known, so that a subscriber can start on it before the rest of the assignments are made or
+ * written out. It is a copy of the circuit's jugglers and their match values for it, in the
+ * order the output file lists them, taken when the roster could no longer change, so it can be
+ * read on any thread.
+ * The festival is kept for the names, which don't change once the jugglers are loaded.
+ */
+final class RosterEvent {
+	private final Festival festival;
+	private final int circuit;
+	private final int[] jugglers;
+	private final float[] scores;
+	private final boolean filled;
+
+	/**
+	 * Constructor. Copies the roster of circuit c.
+	 * @param matching
+	 * @param c
+	 * @param filled whether the fill phase had the circuit, or it was full after the pairing
+	 * by ranking
+	 */
+	RosterEvent(Matching matching, int c, boolean filled) {
+		this.festival = matching.getFestival();
+		this.circuit = c;
+		this.filled = filled;
+		CircuitRosters rosters = matching.getRosters();
+		int size = rosters.size(c);
+		this.jugglers = new int[size];
+		this.scores = new float[size];
+		int[] slots = rosters.joinOrder(c);
+		for (int i = 0; i < size; i++) {
+			jugglers[i] = rosters.get(c, slots[i]);
+			scores[i] = rosters.getScore(c, slots[i]);
+		}
+	}
+
+	public int getCircuit() {
+		return circuit;
+	}
+	public String getCircuitName() {
+		return festival.getCircuits().getName(circuit);
+	}
+	public int size() {
+		return jugglers.length;
+	}
+	public int getJuggler(int i) {
+		return jugglers[i];
+	}
+	public String getJugglerName(int i) {
+		return festival.getJugglerName(jugglers[i]);
+	}
+	public float getScore(int i) {
+		return scores[i];
+	}
+
+	/**
+	 *
+	 * @return int[]
+	 * The jugglers on the circuit, in the order the output file lists them.
+	 */
+	public int[] getJugglers() {
+		return Arrays.copyOf(jugglers, jugglers.length);
+	}
+
+	/**
+	 *
+	 * @return boolean
+	 * True if the circuit had room after the pairing by ranking and was published as the fill
+	 * phase finished with it, false if it was full before the fill phase.
+	 */
+	public boolean isFilled() {
+		return filled;
+	}
+
+	@Override
+	public String toString() {
+		return getCircuitName() + " " + jugglers.length + " jugglers";
+	}
+}
@@ -0,0 +1,93 @@
+package jugglefest;
+
+/**
+ * Class ScoreKernel
+ * @author Shalini Israni
+ * Calculates match values a block at a time, straight from H, E and P columns instead of one
+ * at a time through the getters: one circuit against a run of jugglers, or one juggler against
+ * a list of circuits.
+ * Every value is calculated with the same operations in the same order as
+ * Festival.calculateMatch, the first two products added and then the third, and no fused
+ * multiply-adds, so it comes out the same to the last bit and ties are broken the same way.
+ * This class calculates one value at a time. When the JVM is started with
+ * --add-modules jdk.incubator.vector, get() returns a VectorScoreKernel instead, which
+ * calculates as many at once as the processor's vector registers hold. Setting the system
+ * property jugglefest.vector to false keeps this one.
+ */
+class ScoreKernel {
+	private static final ScoreKernel KERNEL = create();
+
+	/**
+	 *
+	 * @return ScoreKernel
+	 * The fastest kernel this JVM can run.
+	 */
+	static ScoreKernel get() {
+		return KERNEL;
+	}
+
+	/**
+	 *
+	 * @return String
+	 * What the kernel calculates with, for messages.
+	 */
+	String getName() {
+		return "scalar";
+	}
+
+	/**
+	 * Calculate the match value of a circuit with skills h, e and p for each juggler from
+	 * index from up to index to of the skill columns, into scores from offset on.
+	 * @param h
+	 * @param e
+	 * @param p
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @param from
+	 * @param to
+	 * @param scores
+	 * @param offset
+	 */
+	void scoreJugglers(float h, float e, float p, float[] handEyeCoord, float[] endurance, float[] pizzazz,
+			int from, int to, float[] scores, int offset) {
+		for (int i = from; i < to; i++)
+			scores[offset + i - from] = ( (handEyeCoord[i]*h) + (endurance[i]*e) + pizzazz[i]*p);
+	}
+
+	/**
+	 * Calculate the match value of a juggler with skills h, e and p for each of the circuits
+	 * circuits[from] up to circuits[to] of the skill columns, into scores from offset on.
+	 * @param h
+	 * @param e
+	 * @param p
+	 * @param handEyeCoord
+	 * @param endurance
+	 * @param pizzazz
+	 * @param circuits
+	 * @param from
+	 * @param to
+	 * @param scores
+	 * @param offset
+	 */
+	void scoreCircuits(float h, float e, float p, float[] handEyeCoord, float[] endurance, float[] pizzazz,
+			int[] circuits, int from, int to, float[] scores, int offset) {
+		for (int i = from; i < to; i++) {
+			int c = circuits[i];
+			scores[offset + i - from] = ( (h*handEyeCoord[c]) + (e*endurance[c]) + p*pizzazz[c]);
+		}
+	}
+
+	//the vector kernel is only loaded by name, so that without the incubator module this class
+	//still loads, and nothing else refers to the module.
+	private static ScoreKernel create() {
+		if ("false".equals(System.getProperty("jugglefest.vector"))
+				|| !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+			return new ScoreKernel();
+		try {
+			return (ScoreKernel) Class.forName("jugglefest.VectorScoreKernel").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError error) {
+			return new ScoreKernel();
+		}
+	}
+}
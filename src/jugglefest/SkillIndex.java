@@ -0,0 +1,511 @@
+package jugglefest;
+
+import java.util.Arrays;
+
+/**
+ * Class SkillIndex
+ * @author Shalini Israni
+ * A kd-tree over the (H, E, P) skills of a set of jugglers, used to find the juggler with the
+ * highest match value for a circuit without calculating it for every juggler in the set.
+ * The match value is a dot product, so for a box of jugglers it can be no higher than the sum,
+ * over H, E and P, of the larger of the circuit's value times the box's lowest and highest
+ * skill. The search goes into the most promising half first and skips every box whose bound
+ * can't beat the best juggler found so far.
+ * Every juggler carries a tag, and a search only looks at jugglers whose tag is above a given
+ * value; the fill phase tags a juggler with the place in its fill order of the circuit he is
+ * on, so that a circuit can look only at jugglers that circuits after it took, or that no
+ * circuit took. Each box keeps its highest tag, so boxes with nothing to look at are skipped.
+ * Jugglers can be removed, and added after the tree is built. Removed jugglers are marked and
+ * boxes are not shrunk, so their bounds stay valid, just a little looser. Added jugglers are
+ * kept in a list next to the tree that every search goes through, and the tree is built again
+ * once that list gets long.
+ * Every juggler has a rank: his place in the list the index was made from, and after those,
+ * the order jugglers were added. When two jugglers have the same match value, the one with the
+ * lower rank wins, the same as a linear scan of the list that picks the first of the best.
+ */
+final class SkillIndex {
+	/** Tag of a juggler no circuit has taken; above every place in the fill order. */
+	static final int UNTAKEN = Integer.MAX_VALUE;
+
+	private static final int LEAF_SIZE = 8;
+	//calculates the match values of a whole leaf at once.
+	private static final ScoreKernel KERNEL = ScoreKernel.get();
+	private static final int REMOVED = -1;
+	//added jugglers kept out of the tree before it is built again.
+	private static final int MIN_EXTRAS = 64;
+	//what slot returns for a juggler who is not in the index.
+	private static final int NOT_IN_INDEX = Integer.MIN_VALUE;
+
+	private final Festival festival;
+	//rank of every juggler in the index, and the rank the next one added gets.
+	private final IntIntMap ranks;
+	private int nextRank;
+	//the jugglers the tree was built on, and their ranks, sorted by rank.
+	private int[] jugglers;
+	private int[] jugglerRanks;
+	//positions in the juggler list, arranged so that every node covers a contiguous range.
+	private int[] order;
+	//tree position of each list position, the inverse of order.
+	private int[] treePosition;
+	//skills and tags, in tree order.
+	private float[] handEyeCoord;
+	private float[] endurance;
+	private float[] pizzazz;
+	private int[] tags;
+	//node of the tree holding each tree position.
+	private int[] leafOf;
+
+	private int nodeCount;
+	private int[] from;
+	private int[] to;
+	private int[] left;
+	private int[] right;
+	private int[] parent;
+	private float[] min;
+	private float[] max;
+	//highest tag in each node, REMOVED if it is empty.
+	private int[] maxTag;
+	//highest tag other than UNTAKEN in each node, REMOVED if there is none.
+	private int[] maxTakenTag;
+	//lowest rank still in each node, and lowest of those UNTAKEN, for breaking ties.
+	private int[] firstRank;
+	private int[] firstUntaken;
+
+	//jugglers added since the tree was built, with their tags and ranks, and where they are in
+	//the list.
+	private int[] extras = new int[16];
+	private int[] extraTags = new int[16];
+	private int[] extraRanks = new int[16];
+	private int extraCount;
+	private final IntIntMap extraSlots = new IntIntMap(16);
+
+	//match values of the leaf being searched.
+	private final float[] leafScores = new float[LEAF_SIZE];
+
+	private int size;
+	private float bestScore;
+	private int bestJuggler;
+	private int bestRank;
+	private long scoreCalculations;
+
+	/**
+	 * Constructor. Every juggler starts out UNTAKEN.
+	 * @param festival
+	 * @param jugglers the jugglers to index, none twice, in the order that breaks ties.
+	 */
+	public SkillIndex(Festival festival, int[] jugglers) {
+		this.festival = festival;
+		this.ranks = new IntIntMap(jugglers.length);
+		int[] tags = new int[jugglers.length];
+		int[] listRanks = new int[jugglers.length];
+		Arrays.fill(tags, UNTAKEN);
+		for (int i = 0; i < jugglers.length; i++) {
+			ranks.put(jugglers[i], i);
+			listRanks[i] = i;
+		}
+		nextRank = jugglers.length;
+		build(Arrays.copyOf(jugglers, jugglers.length), listRanks, tags);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 *
+	 * @return float
+	 * Match value of the juggler returned by the last search.
+	 */
+	public float getBestScore() {
+		return bestScore;
+	}
+
+	/**
+	 *
+	 * @return long
+	 * Number of match values calculated by searches so far.
+	 */
+	public long getScoreCalculations() {
+		return scoreCalculations;
+	}
+
+	/**
+	 *
+	 * @param c
+	 * @param after
+	 * @return int
+	 * Find the juggler with the highest match value for circuit c among those tagged above
+	 * after. Returns -1 if there is none.
+	 */
+	public int search(int c, int after) {
+		CircuitCatalog circuits = festival.getCircuits();
+		float h = circuits.getHandEyeCoord(c);
+		float e = circuits.getEndurance(c);
+		float p = circuits.getPizzazz(c);
+		bestScore = Float.NEGATIVE_INFINITY;
+		bestJuggler = -1;
+		bestRank = Integer.MAX_VALUE;
+		if (nodeCount > 0 && maxTag[0] > after)
+			search(0, h, e, p, after);
+		for (int i = 0; i < extraCount; i++) {
+			if (extraTags[i] > after)
+				consider(extras[i], extraRanks[i], h, e, p);
+		}
+		return bestJuggler;
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return boolean
+	 * True if juggler j is in the index.
+	 */
+	public boolean contains(int j) {
+		return slot(j) != NOT_IN_INDEX;
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return int
+	 * The rank of juggler j, who must be in the index. Of two jugglers with the same match
+	 * value, search returns the one with the lower rank.
+	 */
+	public int getRank(int j) {
+		return ranks.get(j);
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return int
+	 * The tag of juggler j, who must be in the index.
+	 */
+	public int getTag(int j) {
+		int slot = slot(j);
+		return slot >= 0 ? tags[slot] : extraTags[-slot - 1];
+	}
+
+	public void setTag(int j, int tag) {
+		int slot = slot(j);
+		if (slot >= 0) {
+			tags[slot] = tag;
+			update(slot);
+		} else {
+			extraTags[-slot - 1] = tag;
+		}
+	}
+
+	/**
+	 * Add juggler j, who must not be in the index. He ranks after every juggler in it.
+	 * @param j
+	 * @param tag
+	 */
+	public void add(int j, int tag) {
+		if (extraCount == extras.length) {
+			extras = Arrays.copyOf(extras, extraCount * 2);
+			extraTags = Arrays.copyOf(extraTags, extraCount * 2);
+			extraRanks = Arrays.copyOf(extraRanks, extraCount * 2);
+		}
+		int rank = nextRank++;
+		ranks.put(j, rank);
+		extras[extraCount] = j;
+		extraTags[extraCount] = tag;
+		extraRanks[extraCount] = rank;
+		extraSlots.put(j, extraCount);
+		extraCount++;
+		size++;
+		if (extraCount > Math.max(MIN_EXTRAS, size / 4))
+			rebuild();
+	}
+
+	/**
+	 * Take juggler j, who must be in the index, out of it.
+	 * @param j
+	 */
+	public void remove(int j) {
+		int slot = slot(j);
+		size--;
+		ranks.remove(j);
+		if (slot >= 0) {
+			tags[slot] = REMOVED;
+			update(slot);
+			return;
+		}
+		int i = -slot - 1;
+		extraSlots.remove(j);
+		extraCount--;
+		if (i < extraCount) {
+			extras[i] = extras[extraCount];
+			extraTags[i] = extraTags[extraCount];
+			extraRanks[i] = extraRanks[extraCount];
+			extraSlots.put(extras[i], i);
+		}
+	}
+
+	//tree position of juggler j, or -(extra position + 1), or NOT_IN_INDEX if he is not in the
+	//index.
+	private int slot(int j) {
+		int rank = ranks.get(j);
+		if (rank < 0)
+			return NOT_IN_INDEX;
+		int position = Arrays.binarySearch(jugglerRanks, rank);
+		if (position >= 0 && tags[treePosition[position]] != REMOVED)
+			return treePosition[position];
+		int extra = extraSlots.get(j);
+		return extra < 0 ? NOT_IN_INDEX : -extra - 1;
+	}
+
+	private void consider(int j, int rank, float h, float e, float p) {
+		float score = ( (festival.getHandEyeCoord(j)*h) + (festival.getEndurance(j)*e) + festival.getPizzazz(j)*p);
+		scoreCalculations++;
+		if (score > bestScore || (score == bestScore && rank < bestRank)) {
+			bestScore = score;
+			bestJuggler = j;
+			bestRank = rank;
+		}
+	}
+
+	private void search(int node, float h, float e, float p, int after) {
+		if (left[node] < 0) {
+			int start = from[node];
+			KERNEL.scoreJugglers(h, e, p, handEyeCoord, endurance, pizzazz, start, to[node], leafScores, 0);
+			for (int i = start; i < to[node]; i++) {
+				if (tags[i] <= after)
+					continue;
+				float score = leafScores[i - start];
+				scoreCalculations++;
+				int rank = jugglerRanks[order[i]];
+				if (score > bestScore || (score == bestScore && rank < bestRank)) {
+					bestScore = score;
+					bestJuggler = jugglers[order[i]];
+					bestRank = rank;
+				}
+			}
+			return;
+		}
+		float leftBound = bound(left[node], h, e, p);
+		float rightBound = bound(right[node], h, e, p);
+		if (leftBound >= rightBound) {
+			if (promising(left[node], leftBound, after))
+				search(left[node], h, e, p, after);
+			if (promising(right[node], rightBound, after))
+				search(right[node], h, e, p, after);
+		} else {
+			if (promising(right[node], rightBound, after))
+				search(right[node], h, e, p, after);
+			if (promising(left[node], leftBound, after))
+				search(left[node], h, e, p, after);
+		}
+	}
+
+	//true if the node could hold a juggler that beats the best one found so far. When every
+	//juggler a circuit took in the node is out of the search, only the UNTAKEN ones can win
+	//a tie, which matters when most of the node has been taken.
+	private boolean promising(int node, float bound, int after) {
+		if (maxTag[node] <= after)
+			return false;
+		if (bound > bestScore)
+			return true;
+		int first = maxTakenTag[node] > after ? firstRank[node] : firstUntaken[node];
+		return bound == bestScore && first < bestRank;
+	}
+
+	//highest match value any juggler in the node's box could have. Same order of operations as
+	//the match value itself, so rounding can't put a juggler's value above it.
+	private float bound(int node, float h, float e, float p) {
+		int box = 3 * node;
+		return ( Math.max(min[box]*h, max[box]*h) + Math.max(min[box+1]*e, max[box+1]*e) )
+				+ Math.max(min[box+2]*p, max[box+2]*p);
+	}
+
+	//brings the tags and first ranks of the nodes above tree position i up to date.
+	private void update(int i) {
+		int leaf = leafOf[i];
+		summarizeLeaf(leaf);
+		for (int node = parent[leaf]; node >= 0; node = parent[node])
+			summarizeChildren(node);
+	}
+
+	private void summarizeLeaf(int leaf) {
+		int tag = REMOVED;
+		int takenTag = REMOVED;
+		int first = Integer.MAX_VALUE;
+		int untaken = Integer.MAX_VALUE;
+		for (int k = from[leaf]; k < to[leaf]; k++) {
+			if (tags[k] == REMOVED)
+				continue;
+			int rank = jugglerRanks[order[k]];
+			tag = Math.max(tag, tags[k]);
+			first = Math.min(first, rank);
+			if (tags[k] == UNTAKEN)
+				untaken = Math.min(untaken, rank);
+			else
+				takenTag = Math.max(takenTag, tags[k]);
+		}
+		maxTag[leaf] = tag;
+		maxTakenTag[leaf] = takenTag;
+		firstRank[leaf] = first;
+		firstUntaken[leaf] = untaken;
+	}
+
+	private void summarizeChildren(int node) {
+		maxTag[node] = Math.max(maxTag[left[node]], maxTag[right[node]]);
+		maxTakenTag[node] = Math.max(maxTakenTag[left[node]], maxTakenTag[right[node]]);
+		firstRank[node] = Math.min(firstRank[left[node]], firstRank[right[node]]);
+		firstUntaken[node] = Math.min(firstUntaken[left[node]], firstUntaken[right[node]]);
+	}
+
+	//builds the tree again on everything in the index, the added jugglers included.
+	private void rebuild() {
+		int[] all = new int[size];
+		int[] allRanks = new int[size];
+		int[] allTags = new int[size];
+		int count = 0;
+		for (int position = 0; position < jugglers.length; position++) {
+			int i = treePosition[position];
+			if (tags[i] != REMOVED) {
+				all[count] = jugglers[position];
+				allRanks[count] = jugglerRanks[position];
+				allTags[count++] = tags[i];
+			}
+		}
+		//the added jugglers rank after the tree's, and are sorted by rank after them
+		long[] keyed = new long[extraCount];
+		for (int i = 0; i < extraCount; i++)
+			keyed[i] = ((long) extraRanks[i] << 32) | i;
+		Arrays.sort(keyed);
+		for (long key : keyed) {
+			int i = (int) key;
+			all[count] = extras[i];
+			allRanks[count] = extraRanks[i];
+			allTags[count++] = extraTags[i];
+		}
+		extraCount = 0;
+		extraSlots.clear();
+		build(all, allRanks, allTags);
+	}
+
+	private void build(int[] jugglers, int[] listRanks, int[] listTags) {
+		int n = jugglers.length;
+		this.jugglers = jugglers;
+		this.jugglerRanks = listRanks;
+		this.size = n + extraCount;
+		this.order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		this.handEyeCoord = new float[n];
+		this.endurance = new float[n];
+		this.pizzazz = new float[n];
+		this.tags = new int[n];
+		this.leafOf = new int[n];
+		this.treePosition = new int[n];
+		//leaves are split in halves until they hold at most LEAF_SIZE jugglers, so each holds at
+		//least half that, and there are fewer than twice as many nodes as leaves.
+		int maxNodes = 2 * (n / (LEAF_SIZE / 2) + 1);
+		this.nodeCount = 0;
+		this.from = new int[maxNodes];
+		this.to = new int[maxNodes];
+		this.left = new int[maxNodes];
+		this.right = new int[maxNodes];
+		this.parent = new int[maxNodes];
+		this.min = new float[3 * maxNodes];
+		this.max = new float[3 * maxNodes];
+		this.maxTag = new int[maxNodes];
+		this.maxTakenTag = new int[maxNodes];
+		this.firstRank = new int[maxNodes];
+		this.firstUntaken = new int[maxNodes];
+		if (n > 0)
+			build(0, n, -1, listTags);
+		for (int i = 0; i < n; i++)
+			treePosition[order[i]] = i;
+	}
+
+	private int build(int lo, int hi, int up, int[] listTags) {
+		int node = nodeCount++;
+		from[node] = lo;
+		to[node] = hi;
+		parent[node] = up;
+		int box = 3 * node;
+		min[box] = min[box+1] = min[box+2] = Float.POSITIVE_INFINITY;
+		max[box] = max[box+1] = max[box+2] = Float.NEGATIVE_INFINITY;
+		for (int i = lo; i < hi; i++) {
+			int j = jugglers[order[i]];
+			min[box] = Math.min(min[box], festival.getHandEyeCoord(j));
+			max[box] = Math.max(max[box], festival.getHandEyeCoord(j));
+			min[box+1] = Math.min(min[box+1], festival.getEndurance(j));
+			max[box+1] = Math.max(max[box+1], festival.getEndurance(j));
+			min[box+2] = Math.min(min[box+2], festival.getPizzazz(j));
+			max[box+2] = Math.max(max[box+2], festival.getPizzazz(j));
+		}
+		if (hi - lo <= LEAF_SIZE) {
+			left[node] = right[node] = -1;
+			for (int i = lo; i < hi; i++) {
+				int j = jugglers[order[i]];
+				handEyeCoord[i] = festival.getHandEyeCoord(j);
+				endurance[i] = festival.getEndurance(j);
+				pizzazz[i] = festival.getPizzazz(j);
+				tags[i] = listTags[order[i]];
+				leafOf[i] = node;
+			}
+			summarizeLeaf(node);
+			return node;
+		}
+		//split the widest side of the box at the median
+		int dimension = 0;
+		for (int d = 1; d < 3; d++) {
+			if (max[box+d] - min[box+d] > max[box+dimension] - min[box+dimension])
+				dimension = d;
+		}
+		int middle = (lo + hi) >>> 1;
+		select(lo, hi - 1, middle, dimension);
+		left[node] = build(lo, middle, node, listTags);
+		right[node] = build(middle, hi, node, listTags);
+		summarizeChildren(node);
+		return node;
+	}
+
+	private float skill(int i, int dimension) {
+		int j = jugglers[order[i]];
+		switch (dimension) {
+		case 0:
+			return festival.getHandEyeCoord(j);
+		case 1:
+			return festival.getEndurance(j);
+		default:
+			return festival.getPizzazz(j);
+		}
+	}
+
+	//rearrange order[lo..hi] so that position k holds the entry that would be there if sorted
+	//by the given skill, with smaller entries before it and larger ones after.
+	private void select(int lo, int hi, int k, int dimension) {
+		while (hi > lo) {
+			float pivot = skill((lo + hi) >>> 1, dimension);
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (skill(i, dimension) < pivot)
+					i++;
+				while (skill(j, dimension) > pivot)
+					j--;
+				if (i <= j) {
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				break;
+		}
+	}
+}
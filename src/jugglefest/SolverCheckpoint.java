@@ -0,0 +1,240 @@
+package jugglefest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Class SolverCheckpoint
+ * @author Shalini Israni
+ * Saves a Matching part way through the pairing by ranking or the fill phase, and loads it
+ * back, so that a solve that was killed can carry on from where it was instead of starting
+ * over. Everything the proposals depend on is saved: each juggler's position in his list and
+ * circuit, the unassigned queue in order, the remaining jugglers, and every circuit's roster
+ * heap slot by slot with the join times that order ties. Carrying on from a checkpoint makes
+ * the same proposals, in the same order, as the run that saved it would have, so the
+ * assignment comes out exactly the same. In the fill phase, the place in the fill order it
+ * had got to is saved as well; the remaining jugglers are the pool it was filling from, in
+ * order, and the ones the circuits before that place took are on their rosters.
+ * The file is laid out like a FestivalSnapshot, little-endian, with a 52 byte header:
+ *   8 bytes  MAGIC
+ *   4 bytes  VERSION, of the layout below
+ *   4 bytes  number of jugglers
+ *   4 bytes  number of circuits
+ *   4 bytes  length of the unassigned queue
+ *   4 bytes  number of remaining jugglers
+ *   4 bytes  number of jugglers on all rosters together
+ *   4 bytes  place in the fill order of the next circuit to fill, or -1 before the fill phase
+ *   8 bytes  fingerprint of the festival, from fingerprint()
+ *   8 bytes  CRC32C of the 36 bytes above and everything after the header
+ * and then the preference positions and circuits by juggler; the unassigned queue and the
+ * remaining jugglers; the capacities, sizes and next join times by circuit; and the jugglers,
+ * match values and join times of all rosters, circuit after circuit.
+ * A checkpoint is written under another name and then moved over the last one, so there is
+ * always a whole checkpoint to go back to. It is only loaded for the festival it was made of.
+ */
+final class SolverCheckpoint {
+	static final byte[] MAGIC = {'J', 'F', 'C', 'K', 'P', 'T', '\r', '\n'};
+	static final int VERSION = 2;
+	private static final int HEADER_SIZE = 52;
+
+	private SolverCheckpoint() {
+	}
+
+	/**
+	 * Save the matching to the file, replacing the checkpoint that was there once it is
+	 * completely written.
+	 * @param matching
+	 * @param fingerprint the fingerprint of the matching's festival
+	 * @param file
+	 * @throws IOException
+	 */
+	static void write(Matching matching, long fingerprint, Path file) throws IOException {
+		CircuitRosters rosters = matching.getRosters();
+		int jugglerCount = matching.getJugglerCount();
+		int circuitCount = rosters.getCircuitCount();
+		int[] unassigned = matching.getUnassigned().toArray();
+		int[] remaining = matching.getRemaining().toArray();
+		int rosterTotal = 0;
+		for (int c = 0; c < circuitCount; c++)
+			rosterTotal += rosters.size(c);
+		Path partial = file.resolveSibling(file.getFileName() + ".partial");
+		try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC).putInt(VERSION).putInt(jugglerCount).putInt(circuitCount)
+					.putInt(unassigned.length).putInt(remaining.length).putInt(rosterTotal)
+					.putInt(matching.getFillPlace()).putLong(fingerprint);
+			CRC32C crc = new CRC32C();
+			crc.update(header.array(), MAGIC.length, 36);
+			ColumnOutput out = new ColumnOutput(channel, crc);
+			channel.position(HEADER_SIZE);
+			for (int j = 0; j < jugglerCount; j++)
+				out.putInt(matching.getNextPreference(j));
+			for (int j = 0; j < jugglerCount; j++)
+				out.putInt(matching.getAssignedCircuit(j));
+			out.putInts(unassigned, 0, unassigned.length);
+			out.putInts(remaining, 0, remaining.length);
+			for (int c = 0; c < circuitCount; c++)
+				out.putInt(rosters.capacity(c));
+			for (int c = 0; c < circuitCount; c++)
+				out.putInt(rosters.size(c));
+			for (int c = 0; c < circuitCount; c++)
+				out.putInt(rosters.getNextJoined(c));
+			for (int c = 0; c < circuitCount; c++) {
+				for (int i = 0; i < rosters.size(c); i++)
+					out.putInt(rosters.get(c, i));
+			}
+			for (int c = 0; c < circuitCount; c++) {
+				for (int i = 0; i < rosters.size(c); i++)
+					out.putFloat(rosters.getScore(c, i));
+			}
+			for (int c = 0; c < circuitCount; c++) {
+				for (int i = 0; i < rosters.size(c); i++)
+					out.putInt(rosters.getJoined(c, i));
+			}
+			out.flush();
+			header.putLong(crc.getValue()).flip();
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+			channel.force(false);
+		}
+		Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 *
+	 * @param festival
+	 * @param file
+	 * @return Matching
+	 * Load a checkpoint saved by write, for the festival it was made of.
+	 * @throws IOException if the file can't be read, is damaged, or is of another festival.
+	 */
+	static Matching read(Festival festival, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || !header.slice(0, MAGIC.length).equals(ByteBuffer.wrap(MAGIC)))
+				throw new IOException(file + " is not a solver checkpoint");
+			header.position(MAGIC.length);
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException(file + " is a version " + version + " checkpoint; only version " + VERSION + " can be loaded");
+			int jugglerCount = header.getInt();
+			int circuitCount = header.getInt();
+			int unassignedCount = header.getInt();
+			int remainingCount = header.getInt();
+			int rosterTotal = header.getInt();
+			int fillPlace = header.getInt();
+			long fingerprint = header.getLong();
+			long checksum = header.getLong();
+			if (jugglerCount != festival.getJugglerCount() || circuitCount != festival.getCircuitCount()
+					|| fingerprint != fingerprint(festival))
+				throw new IOException(file + " is a checkpoint of another festival");
+			long expectedSize = HEADER_SIZE + 8L * jugglerCount + 4L * unassignedCount + 4L * remainingCount
+					+ 12L * circuitCount + 12L * rosterTotal;
+			if (unassignedCount < 0 || remainingCount < 0 || rosterTotal < 0 || fillPlace < -1 || fillPlace > circuitCount
+					|| channel.size() != expectedSize)
+				throw new IOException(file + " is " + channel.size() + " bytes, not the " + expectedSize
+						+ " its header says; it is damaged or was not completely written");
+			CRC32C crc = new CRC32C();
+			crc.update(header.array(), MAGIC.length, 36);
+			ColumnInput in = new ColumnInput(channel, crc, HEADER_SIZE);
+			int[] nextPreference = in.getInts(jugglerCount);
+			int[] assignedCircuits = in.getInts(jugglerCount);
+			int[] unassigned = in.getInts(unassignedCount);
+			int[] remaining = in.getInts(remainingCount);
+			int[] capacities = in.getInts(circuitCount);
+			int[] sizes = in.getInts(circuitCount);
+			int[] nextJoined = in.getInts(circuitCount);
+			int[] rosterJugglers = in.getInts(rosterTotal);
+			float[] rosterScores = in.getFloats(rosterTotal);
+			int[] rosterJoined = in.getInts(rosterTotal);
+			if (crc.getValue() != checksum)
+				throw new IOException(file + " does not match its checksum; it is damaged");
+			for (int j = 0; j < jugglerCount; j++) {
+				if (nextPreference[j] < festival.getPreferenceStart(j) || nextPreference[j] > festival.getPreferenceEnd(j)
+						|| assignedCircuits[j] < -1 || assignedCircuits[j] >= circuitCount)
+					throw new IOException(file + " has a juggler out of range");
+			}
+			checkJugglers(unassigned, jugglerCount, file);
+			checkJugglers(remaining, jugglerCount, file);
+			checkJugglers(rosterJugglers, jugglerCount, file);
+			int[][] jugglers = new int[circuitCount][];
+			float[][] scores = new float[circuitCount][];
+			int[][] joined = new int[circuitCount][];
+			int start = 0;
+			for (int c = 0; c < circuitCount; c++) {
+				if (sizes[c] < 0 || capacities[c] < 0 || sizes[c] > rosterTotal - start)
+					throw new IOException(file + " has roster sizes that don't add up");
+				jugglers[c] = Arrays.copyOfRange(rosterJugglers, start, start + sizes[c]);
+				scores[c] = Arrays.copyOfRange(rosterScores, start, start + sizes[c]);
+				joined[c] = Arrays.copyOfRange(rosterJoined, start, start + sizes[c]);
+				start += sizes[c];
+			}
+			if (start != rosterTotal)
+				throw new IOException(file + " has roster sizes that don't add up");
+			CircuitRosters rosters = new CircuitRosters(capacities, sizes, nextJoined, jugglers, scores, joined);
+			Matching matching = new Matching(festival, rosters, nextPreference, assignedCircuits, unassigned, remaining);
+			matching.setFillPlace(fillPlace);
+			return matching;
+		}
+	}
+
+	/**
+	 *
+	 * @param festival
+	 * @return long
+	 * A CRC32C of the festival's circuits, jugglers and preference lists, to tell whether a
+	 * checkpoint was made of it. Names without a number go in by their hash codes.
+	 */
+	static long fingerprint(Festival festival) {
+		CRC32C crc = new CRC32C();
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		CircuitCatalog circuits = festival.getCircuits();
+		buffer.putInt(circuits.size()).putInt(festival.getJugglerCount());
+		for (int c = 0; c < circuits.size(); c++) {
+			if (buffer.remaining() < 16)
+				update(crc, buffer);
+			int number = circuits.getNumber(c);
+			buffer.putInt(number >= 0 ? number : circuits.getName(c).hashCode()).putFloat(circuits.getHandEyeCoord(c))
+					.putFloat(circuits.getEndurance(c)).putFloat(circuits.getPizzazz(c));
+		}
+		for (int j = 0; j < festival.getJugglerCount(); j++) {
+			if (buffer.remaining() < 24)
+				update(crc, buffer);
+			int number = festival.getJugglerNumber(j);
+			buffer.putInt(number >= 0 ? number : festival.getJugglerName(j).hashCode()).putFloat(festival.getHandEyeCoord(j))
+					.putFloat(festival.getEndurance(j)).putFloat(festival.getPizzazz(j))
+					.putInt(festival.getPreferenceEnd(j)).putInt(festival.isWithdrawn(j) ? 1 : 0);
+		}
+		for (int i = 0; i < festival.getPreferenceCount(); i++) {
+			if (buffer.remaining() < 4)
+				update(crc, buffer);
+			buffer.putInt(festival.getPreferenceCircuit(i));
+		}
+		update(crc, buffer);
+		return crc.getValue();
+	}
+
+	private static void update(CRC32C crc, ByteBuffer buffer) {
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.clear();
+	}
+
+	private static void checkJugglers(int[] jugglers, int jugglerCount, Path file) throws IOException {
+		for (int j : jugglers) {
+			if (j < 0 || j >= jugglerCount)
+				throw new IOException(file + " has a juggler out of range");
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package jugglefest;
+
+/**
+ * Interface SolverMetrics
+ * @author Shalini Israni
+ * What a JuggleFest counts and times while it loads, assigns and writes, so a slow solve can be
+ * told apart from a slow file: how many proposals the pairing by ranking made and how they went,
+ * the longest chain of bumps, how many jugglers were left for the fill phase, and the time of
+ * each phase. The counts and times add up over every run until reset.
+ * This is also the management interface of the JMX MBean a SolverStatistics registers, so every
+ * getter is an attribute of it and reset() an operation.
+ */
+public interface SolverMetrics {
+
+	/**
+	 *
+	 * @return long
+	 * Number of times a juggler proposed to a circuit in makeAssignments.
+	 */
+	long getProposals();
+
+	/**
+	 *
+	 * @return long
+	 * Number of proposals a circuit accepted, because it had room or by bumping a juggler.
+	 */
+	long getAcceptances();
+
+	/**
+	 *
+	 * @return long
+	 * Number of proposals a circuit turned down.
+	 */
+	long getRejections();
+
+	/**
+	 *
+	 * @return long
+	 * Number of jugglers bumped off a circuit by a better match.
+	 */
+	long getBumps();
+
+	/**
+	 *
+	 * @return long
+	 * The longest chain of bumps set off by one juggler: he bumps a juggler, who bumps another,
+	 * and so on.
+	 */
+	long getMaxBumpChain();
+
+	/**
+	 *
+	 * @return long
+	 * Number of jugglers who went through their whole list without a circuit, and were left to
+	 * the fill phase.
+	 */
+	long getRemainingJugglers();
+
+	/**
+	 *
+	 * @return long
+	 * Nanoseconds spent loading files.
+	 */
+	long getParseNanos();
+
+	/**
+	 *
+	 * @return long
+	 * Nanoseconds spent on the pairing by ranking.
+	 */
+	long getProposalNanos();
+
+	/**
+	 *
+	 * @return long
+	 * Nanoseconds spent in the fill phase.
+	 */
+	long getFillNanos();
+
+	/**
+	 *
+	 * @return long
+	 * Nanoseconds spent writing assignments.
+	 */
+	long getOutputNanos();
+
+	/**
+	 *
+	 * @return String
+	 * All of the above on one line.
+	 */
+	String getSummary();
+
+	/**
+	 * Set every count and time back to zero.
+	 */
+	void reset();
+}
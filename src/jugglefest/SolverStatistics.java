@@ -0,0 +1,167 @@
+package jugglefest;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Class SolverStatistics
+ * @author Shalini Israni
+ * The SolverMetrics of a JuggleFest, kept in LongAdders, which threads add to without
+ * contending for one field. They are cheap enough to be always on: the loops that propose
+ * count in local variables, and add them here once per phase, or once per thread for a
+ * ConcurrentProposalEngine, so there is no shared write per proposal.
+ * register() makes them visible to JMX tools such as jconsole, under
+ * jugglefest:type=SolverMetrics unless another name is given.
+ */
+final class SolverStatistics implements SolverMetrics {
+	static final String OBJECT_NAME = "jugglefest:type=SolverMetrics";
+
+	private final LongAdder proposals = new LongAdder();
+	private final LongAdder acceptances = new LongAdder();
+	private final LongAdder bumps = new LongAdder();
+	private final LongAccumulator maxBumpChain = new LongAccumulator(Math::max, 0);
+	private final LongAdder remainingJugglers = new LongAdder();
+	private final LongAdder parseNanos = new LongAdder();
+	private final LongAdder proposalNanos = new LongAdder();
+	private final LongAdder fillNanos = new LongAdder();
+	private final LongAdder outputNanos = new LongAdder();
+
+	/**
+	 * Add the proposals made by a run of the pairing by ranking, or by one of its threads.
+	 * Every proposal that was not accepted was turned down.
+	 * @param proposals
+	 * @param acceptances
+	 * @param bumps
+	 * @param longestBumpChain
+	 */
+	void addProposals(long proposals, long acceptances, long bumps, long longestBumpChain) {
+		this.proposals.add(proposals);
+		this.acceptances.add(acceptances);
+		this.bumps.add(bumps);
+		maxBumpChain.accumulate(longestBumpChain);
+	}
+
+	void addRemainingJugglers(long count) {
+		remainingJugglers.add(count);
+	}
+
+	void addParseNanos(long nanos) {
+		parseNanos.add(nanos);
+	}
+
+	void addProposalNanos(long nanos) {
+		proposalNanos.add(nanos);
+	}
+
+	void addFillNanos(long nanos) {
+		fillNanos.add(nanos);
+	}
+
+	void addOutputNanos(long nanos) {
+		outputNanos.add(nanos);
+	}
+
+	@Override
+	public long getProposals() {
+		return proposals.sum();
+	}
+
+	@Override
+	public long getAcceptances() {
+		return acceptances.sum();
+	}
+
+	@Override
+	public long getRejections() {
+		//read together, since a thread may add between the two.
+		return Math.max(0, proposals.sum() - acceptances.sum());
+	}
+
+	@Override
+	public long getBumps() {
+		return bumps.sum();
+	}
+
+	@Override
+	public long getMaxBumpChain() {
+		return maxBumpChain.get();
+	}
+
+	@Override
+	public long getRemainingJugglers() {
+		return remainingJugglers.sum();
+	}
+
+	@Override
+	public long getParseNanos() {
+		return parseNanos.sum();
+	}
+
+	@Override
+	public long getProposalNanos() {
+		return proposalNanos.sum();
+	}
+
+	@Override
+	public long getFillNanos() {
+		return fillNanos.sum();
+	}
+
+	@Override
+	public long getOutputNanos() {
+		return outputNanos.sum();
+	}
+
+	@Override
+	public String getSummary() {
+		return String.format("proposals=%d accepted=%d rejected=%d bumps=%d maxBumpChain=%d remaining=%d"
+				+ " parse=%.1fms proposal=%.1fms fill=%.1fms output=%.1fms",
+				getProposals(), getAcceptances(), getRejections(), getBumps(), getMaxBumpChain(),
+				getRemainingJugglers(), getParseNanos() / 1e6, getProposalNanos() / 1e6,
+				getFillNanos() / 1e6, getOutputNanos() / 1e6);
+	}
+
+	@Override
+	public void reset() {
+		proposals.reset();
+		acceptances.reset();
+		bumps.reset();
+		maxBumpChain.reset();
+		remainingJugglers.reset();
+		parseNanos.reset();
+		proposalNanos.reset();
+		fillNanos.reset();
+		outputNanos.reset();
+	}
+
+	/**
+	 * Register these metrics with the platform MBean server under jugglefest:type=SolverMetrics,
+	 * replacing whatever was registered under that name.
+	 * @return ObjectName
+	 * @throws JMException
+	 */
+	ObjectName register() throws JMException {
+		return register(new ObjectName(OBJECT_NAME));
+	}
+
+	/**
+	 * Register these metrics with the platform MBean server under the given name, replacing
+	 * whatever was registered under it.
+	 * @param name
+	 * @return ObjectName
+	 * @throws JMException
+	 */
+	ObjectName register(ObjectName name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(name))
+			server.unregisterMBean(name);
+		//a StandardMBean with the interface given, so this class need not be public.
+		return server.registerMBean(new StandardMBean(this, SolverMetrics.class), name).getObjectName();
+	}
+}
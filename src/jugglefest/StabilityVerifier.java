@@ -0,0 +1,234 @@
+package jugglefest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class StabilityVerifier
+ * @author Shalini Israni
+ * Checks that an Assignment is stable: that there is no blocking pair, a juggler and a circuit
+ * he lists above the one he is on (or any circuit he lists, if he is on one he didn't list or on
+ * none) that has room, or whose weakest juggler has a lower match value for it than he would.
+ * A circuit would take him over that juggler, so he and the circuit would both rather be
+ * together. A juggler with the same match value as the weakest one doesn't count, since the
+ * circuit has no reason to prefer him.
+ * An assignment that puts more jugglers on a circuit than it takes is not a valid one, stable
+ * or not, so the circuits over capacity are listed too.
+ * The weakest match value of every circuit is found first, with negative infinity for the ones
+ * with room. Then each juggler's rank, the position of his circuit in his preference list, is
+ * found by going down the list, and every circuit above it is checked against its weakest
+ * value, so the whole check takes O(number of preferences) and looks at nothing else. The
+ * jugglers are split between the threads of a ForkJoinPool, if there is one, and the blocking
+ * pairs are listed in the order of the jugglers either way.
+ * makeAssignments should never leave a blocking pair; makeBestAssignments can, since it goes by
+ * the total match value instead.
+ */
+final class StabilityVerifier {
+	//jugglers handed to each thread at a time.
+	private static final int JUGGLERS_PER_TASK = 4096;
+
+	private final Assignment assignment;
+	private final Festival festival;
+	private final ForkJoinPool pool;
+	//the lowest match value on each circuit, or negative infinity if it has room.
+	private float[] weakest;
+	//the position of each juggler's circuit in his preference list, or -1.
+	private int[] ranks;
+	//each blocking pair as (long) j << 32 | c, by juggler.
+	private long[] blockingPairs;
+	//the circuits with more jugglers than they take.
+	private int[] overFilled;
+	private long preferencesChecked;
+
+	/**
+	 * Constructor
+	 * @param assignment
+	 * @param pool threads to check on, or null to check on the calling thread.
+	 */
+	StabilityVerifier(Assignment assignment, ForkJoinPool pool) {
+		this.assignment = assignment;
+		this.festival = assignment.getFestival();
+		this.pool = pool;
+	}
+
+	/**
+	 *
+	 * @return int
+	 * Check every circuit's roster against its capacity and every juggler's preferences, and
+	 * return the number of circuits over capacity and blocking pairs found, 0 if the assignment
+	 * is valid and stable.
+	 */
+	int verify() {
+		int circuitCount = assignment.getCircuitCount();
+		weakest = new float[circuitCount];
+		int overCount = 0;
+		overFilled = new int[0];
+		for (int c = 0; c < circuitCount; c++) {
+			int size = assignment.getRosterSize(c);
+			if (size > assignment.getCapacity(c)) {
+				if (overCount == overFilled.length)
+					overFilled = Arrays.copyOf(overFilled, Math.max(16, overCount * 2));
+				overFilled[overCount++] = c;
+			}
+			float lowest = Float.POSITIVE_INFINITY;
+			if (size < assignment.getCapacity(c)) {
+				lowest = Float.NEGATIVE_INFINITY;
+			} else {
+				for (int i = 0; i < size; i++)
+					lowest = Math.min(lowest, assignment.getScore(assignment.getJuggler(c, i)));
+			}
+			weakest[c] = lowest;
+		}
+		int jugglerCount = assignment.getJugglerCount();
+		ranks = new int[jugglerCount];
+		int taskCount = (jugglerCount + JUGGLERS_PER_TASK - 1) / JUGGLERS_PER_TASK;
+		long[][] found = new long[taskCount][];
+		long[] checked = new long[taskCount];
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for (int t = 0; t < taskCount; t++) {
+			final int task = t;
+			final int start = t * JUGGLERS_PER_TASK, end = Math.min(start + JUGGLERS_PER_TASK, jugglerCount);
+			if (pool == null)
+				check(start, end, found, checked, task);
+			else
+				tasks.add(pool.submit(() -> check(start, end, found, checked, task)));
+		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+		int count = 0;
+		preferencesChecked = 0;
+		for (int t = 0; t < taskCount; t++) {
+			count += found[t].length;
+			preferencesChecked += checked[t];
+		}
+		blockingPairs = new long[count];
+		count = 0;
+		for (long[] pairs : found) {
+			System.arraycopy(pairs, 0, blockingPairs, count, pairs.length);
+			count += pairs.length;
+		}
+		overFilled = Arrays.copyOf(overFilled, overCount);
+		return overCount + count;
+	}
+
+	//Checks jugglers start up to end, into found[task] and checked[task].
+	private void check(int start, int end, long[][] found, long[] checked, int task) {
+		long[] pairs = new long[16];
+		int count = 0;
+		long looked = 0;
+		for (int j = start; j < end; j++) {
+			ranks[j] = -1;
+			if (festival.isWithdrawn(j))
+				continue;
+			int first = festival.getPreferenceStart(j), last = festival.getPreferenceEnd(j);
+			int circuit = assignment.getCircuit(j);
+			int rank = last;
+			for (int k = first; k < last; k++) {
+				if (festival.getPreferenceCircuit(k) == circuit) {
+					rank = k;
+					break;
+				}
+			}
+			ranks[j] = rank < last ? rank - first : -1;
+			looked += rank - first;
+			for (int k = first; k < rank; k++) {
+				int c = festival.getPreferenceCircuit(k);
+				if (festival.getPreferenceScore(k) > weakest[c]) {
+					if (count == pairs.length)
+						pairs = Arrays.copyOf(pairs, count * 2);
+					pairs[count++] = (long) j << 32 | c;
+				}
+			}
+		}
+		found[task] = Arrays.copyOf(pairs, count);
+		checked[task] = looked;
+	}
+
+	/**
+	 *
+	 * @return int
+	 * The number of blocking pairs the last verify found.
+	 */
+	int getBlockingPairCount() {
+		return blockingPairs.length;
+	}
+	int getBlockingJuggler(int i) {
+		return (int) (blockingPairs[i] >>> 32);
+	}
+	int getBlockingCircuit(int i) {
+		return (int) blockingPairs[i];
+	}
+
+	/**
+	 *
+	 * @return int
+	 * The number of circuits with more jugglers than they take that the last verify found.
+	 */
+	int getOverFilledCount() {
+		return overFilled.length;
+	}
+	int getOverFilledCircuit(int i) {
+		return overFilled[i];
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return String
+	 * The i-th circuit over capacity, and by how much.
+	 */
+	String describeOverFilled(int i) {
+		int c = overFilled[i];
+		return assignment.getCircuitName(c) + " has " + assignment.getRosterSize(c) + " jugglers but takes "
+				+ assignment.getCapacity(c);
+	}
+
+	/**
+	 *
+	 * @param j
+	 * @return int
+	 * The position of juggler j's circuit in his preference list, 0 for his first choice, or -1
+	 * if he is on a circuit he didn't list, on none, or withdrawn.
+	 */
+	int getRank(int j) {
+		return ranks[j];
+	}
+
+	/**
+	 *
+	 * @return long
+	 * The number of preferences above each juggler's circuit that the last verify checked.
+	 */
+	long getPreferencesChecked() {
+		return preferencesChecked;
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return String
+	 * The i-th blocking pair, and why it blocks.
+	 */
+	String describe(int i) {
+		int j = getBlockingJuggler(i), c = getBlockingCircuit(i);
+		StringBuilder description = new StringBuilder();
+		description.append(assignment.getJugglerName(j)).append(" would rather be on ").append(assignment.getCircuitName(c));
+		int circuit = assignment.getCircuit(j);
+		if (circuit >= 0)
+			description.append(" than ").append(assignment.getCircuitName(circuit));
+		if (weakest[c] == Float.NEGATIVE_INFINITY) {
+			description.append(", which has room");
+		} else {
+			float score = 0;
+			for (int k = festival.getPreferenceStart(j); k < festival.getPreferenceEnd(j); k++) {
+				if (festival.getPreferenceCircuit(k) == c)
+					score = festival.getPreferenceScore(k);
+			}
+			description.append(", where his match value ").append(score).append(" beats the weakest, ").append(weakest[c]);
+		}
+		return description.toString();
+	}
+}
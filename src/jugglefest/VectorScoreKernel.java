@@ -0,0 +1,58 @@
+package jugglefest;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Class VectorScoreKernel
+ * @author Shalini Israni
+ * A ScoreKernel that calculates a vector of match values at a time with the incubating Vector
+ * API, as many as fit in the processor's preferred vector size: 8 with AVX2, 16 with AVX-512.
+ * Lanes are multiplied and added separately, in the same order as the scalar kernel, so every
+ * value comes out the same as Festival.calculateMatch. What is left over after the last whole
+ * vector is done by the scalar kernel.
+ * Only ScoreKernel.get() makes one, and only when the JVM was started with
+ * --add-modules jdk.incubator.vector. Maven only compiles it with the vector profile, since
+ * javac warns about the incubating module; without it, the jar has just the scalar kernel.
+ */
+final class VectorScoreKernel extends ScoreKernel {
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	@Override
+	String getName() {
+		return "vector " + SPECIES.vectorBitSize() + "-bit";
+	}
+
+	@Override
+	void scoreJugglers(float h, float e, float p, float[] handEyeCoord, float[] endurance, float[] pizzazz,
+			int from, int to, float[] scores, int offset) {
+		FloatVector hv = FloatVector.broadcast(SPECIES, h);
+		FloatVector ev = FloatVector.broadcast(SPECIES, e);
+		FloatVector pv = FloatVector.broadcast(SPECIES, p);
+		int i = from;
+		for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+			FloatVector score = FloatVector.fromArray(SPECIES, handEyeCoord, i).mul(hv)
+					.add(FloatVector.fromArray(SPECIES, endurance, i).mul(ev))
+					.add(FloatVector.fromArray(SPECIES, pizzazz, i).mul(pv));
+			score.intoArray(scores, offset + i - from);
+		}
+		super.scoreJugglers(h, e, p, handEyeCoord, endurance, pizzazz, i, to, scores, offset + i - from);
+	}
+
+	@Override
+	void scoreCircuits(float h, float e, float p, float[] handEyeCoord, float[] endurance, float[] pizzazz,
+			int[] circuits, int from, int to, float[] scores, int offset) {
+		FloatVector hv = FloatVector.broadcast(SPECIES, h);
+		FloatVector ev = FloatVector.broadcast(SPECIES, e);
+		FloatVector pv = FloatVector.broadcast(SPECIES, p);
+		int i = from;
+		for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+			//gathers circuit skills by index
+			FloatVector score = hv.mul(FloatVector.fromArray(SPECIES, handEyeCoord, 0, circuits, i))
+					.add(ev.mul(FloatVector.fromArray(SPECIES, endurance, 0, circuits, i)))
+					.add(pv.mul(FloatVector.fromArray(SPECIES, pizzazz, 0, circuits, i)));
+			score.intoArray(scores, offset + i - from);
+		}
+		super.scoreCircuits(h, e, p, handEyeCoord, endurance, pizzazz, circuits, i, to, scores, offset + i - from);
+	}
+}
@@ -0,0 +1,76 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class AssignmentWriterTest
+ * @author Shalini Israni
+ * Checks the lines AssignmentWriter writes against the ones the first version of the solver
+ * wrote, which built them with string concatenation, so its match values came from
+ * Float.toString. The writer formats whole numbers below 1e7 itself, so the values are picked
+ * around that limit, with negatives and -0.0.
+ */
+class AssignmentWriterTest {
+
+	//what the first version wrote for tests/test2.txt, circuit by circuit.
+	private static final String TEST2 =
+			"C0 J2 C0:128.0 C2:68.0 C1:18.0 ,J4 C0:122.0 C2:106.0 C1:23.0 ,J5 C0:161.0 C2:112.0 C1:26.0 ,J11 C0:154.0 C1:27.0 C2:108.0 \n"
+			+ "C1 J8 C1:21.0 C0:100.0 C2:80.0 ,J9 C1:23.0 C2:86.0 C0:94.0 ,J1 C0:119.0 C2:74.0 C1:18.0 ,J7 C2:75.0 C1:20.0 C0:106.0 \n"
+			+ "C2 J0 C2:83.0 C0:104.0 C1:17.0 ,J3 C2:120.0 C0:171.0 C1:31.0 ,J6 C2:128.0 C1:31.0 C0:188.0 ,J10 C0:120.0 C2:86.0 C1:21.0 \n";
+
+	private static final float[] VALUES = { 0f, 1f, -1f, 100f, 0.5f, -2.25f, 9999999f, -9999999f, 1e7f, -1e7f,
+			10000001f, 16777216f, 1e-5f, 3.4e38f, Float.MIN_VALUE };
+
+	@Test
+	void writesTheBaselineLines() throws IOException {
+		JuggleFest juggleFest = new JuggleFest();
+		assertTrue(juggleFest.loadFile("tests/test2.txt"));
+		juggleFest.makeAssignments(1);
+		for (int threads : new int[] { 1, 4 }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			juggleFest.outputAssignments(out, threads);
+			assertEquals(TEST2, out.toString(StandardCharsets.US_ASCII), threads + " threads");
+		}
+	}
+
+	@Test
+	void formatsMatchValuesLikeFloatToString() throws IOException {
+		Festival festival = new Festival();
+		festival.getCircuits().add(0, 1, 0, 0);
+		festival.getCircuits().add(1, 1, 1, 1);
+		//each value is a juggler's match value for both circuits; the last juggler's are -0.0.
+		for (int i = 0; i < VALUES.length; i++)
+			festival.addJuggler(i, VALUES[i], 0, 0, new int[] { 0, 1 }, 2);
+		festival.addJuggler(VALUES.length, -0f, -0f, -0f, new int[] { 1, 0 }, 2);
+		JuggleFest juggleFest = new JuggleFest(festival);
+		juggleFest.makeAssignments(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		juggleFest.outputAssignments(out, 1);
+		String output = out.toString(StandardCharsets.US_ASCII);
+
+		int checked = 0;
+		for (String line : output.split("\n")) {
+			int j = -1;
+			for (String token : line.split(" ")) {
+				if (token.startsWith("J") || token.startsWith(",J")) {
+					j = Integer.parseInt(token.substring(token.indexOf('J') + 1));
+				} else if (j >= 0 && token.indexOf(':') > 0) {
+					int c = Integer.parseInt(token.substring(1, token.indexOf(':')));
+					assertEquals("C" + c + ":" + Float.toString(festival.calculateMatch(j, c)), token, "juggler " + j);
+					checked++;
+				}
+			}
+		}
+		assertEquals(2 * festival.getJugglerCount(), checked);
+		for (String expected : new String[] { " C0:9999999.0 ", " C0:-9999999.0 ", " C0:1.0E7 ", " C0:-1.0E7 ",
+				" C0:1.0000001E7 ", " C0:-1.0 ", " C0:0.0 ", " C1:-0.0 " })
+			assertTrue(output.contains(expected), expected);
+	}
+}
@@ -0,0 +1,111 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class ConcurrentProposalEngineTest
+ * @author Shalini Israni
+ * Checks that makeAssignments on several threads assigns every juggler the circuit it does on
+ * one, on festivals with random float skills where no two jugglers have the same match value
+ * for a circuit. Some festivals have every circuit reachable from every other, so the jugglers
+ * share them on a ConcurrentProposalEngine, and some fall apart into pieces, which a
+ * ComponentProposalEngine pairs side by side. Each juggler's circuit is compared, rather than
+ * the order of a circuit's jugglers, which the threads can have join in another order.
+ */
+class ConcurrentProposalEngineTest {
+
+	@Test
+	void threadsAssignLikeOneThread() {
+		for (int seed = 0; seed < 12; seed++) {
+			Random random = new Random(seed);
+			int circuitCount = 10 + random.nextInt(20);
+			//every other festival has its circuits in two halves that no juggler lists both of.
+			int pieces = seed % 2 == 0 ? 1 : 2;
+			Festival festival = festival(random, circuitCount, 40 * circuitCount + random.nextInt(40), pieces);
+			Assignment expected = new JuggleFest(festival).makeAssignments(1);
+			for (int threads : new int[] { 2, 4, 8 }) {
+				JuggleFest juggleFest = new JuggleFest(festival);
+				Assignment assignment = juggleFest.makeAssignments(threads);
+				String message = "seed " + seed + ", " + threads + " threads";
+				for (int j = 0; j < festival.getJugglerCount(); j++)
+					assertEquals(expected.getCircuit(j), assignment.getCircuit(j), message + ", juggler " + j);
+			}
+		}
+	}
+
+	//random float skills, and one to four circuits on every juggler's list, from the piece of
+	//circuits he is in. A juggler who would have the same match value for some circuit as one
+	//already added is drawn again, so there are no ties.
+	private static Festival festival(Random random, int circuitCount, int jugglerCount, int pieces) {
+		Festival festival = new Festival();
+		for (int c = 0; c < circuitCount; c++)
+			festival.getCircuits().add(c, skill(random), skill(random), skill(random));
+		List<Set<Float>> matches = new ArrayList<Set<Float>>();
+		for (int c = 0; c < circuitCount; c++)
+			matches.add(new HashSet<Float>());
+		int pieceSize = circuitCount / pieces;
+		for (int j = 0; j < jugglerCount; j++) {
+			float handEyeCoord, endurance, pizzazz;
+			do {
+				handEyeCoord = skill(random);
+				endurance = skill(random);
+				pizzazz = skill(random);
+			} while (ties(festival, matches, handEyeCoord, endurance, pizzazz));
+			for (int c = 0; c < circuitCount; c++)
+				matches.get(c).add(match(festival, c, handEyeCoord, endurance, pizzazz));
+			int piece = j % pieces;
+			int from = piece * pieceSize, to = piece == pieces - 1 ? circuitCount : from + pieceSize;
+			int[] preferences = preferences(random, from, to);
+			festival.addJuggler(j, handEyeCoord, endurance, pizzazz, preferences, preferences.length);
+		}
+		return festival;
+	}
+
+	private static boolean ties(Festival festival, List<Set<Float>> matches, float handEyeCoord, float endurance, float pizzazz) {
+		for (int c = 0; c < matches.size(); c++) {
+			if (matches.get(c).contains(match(festival, c, handEyeCoord, endurance, pizzazz)))
+				return true;
+		}
+		return false;
+	}
+
+	//the match value Festival.calculateMatch gives a juggler with these skills.
+	private static float match(Festival festival, int c, float handEyeCoord, float endurance, float pizzazz) {
+		CircuitCatalog circuits = festival.getCircuits();
+		return (handEyeCoord*circuits.getHandEyeCoord(c)) + (endurance*circuits.getEndurance(c)) + pizzazz*circuits.getPizzazz(c);
+	}
+
+	//one to four circuits from from to to, none twice.
+	private static int[] preferences(Random random, int from, int to) {
+		int count = 1 + random.nextInt(Math.min(4, to - from));
+		int[] preferences = new int[count];
+		for (int k = 0; k < count; k++) {
+			int c;
+			do {
+				c = from + random.nextInt(to - from);
+			} while (contains(preferences, k, c));
+			preferences[k] = c;
+		}
+		return preferences;
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value)
+				return true;
+		}
+		return false;
+	}
+
+	private static float skill(Random random) {
+		return random.nextFloat() * 10;
+	}
+}
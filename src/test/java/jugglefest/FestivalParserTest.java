@@ -0,0 +1,172 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Class FestivalParserTest
+ * @author Shalini Israni
+ * Checks that a line FestivalParser can't load gets the message, with the line number, that
+ * loadFile printed before it parsed the bytes itself, whether the file is parsed on one thread
+ * or its jugglers in chunks on several; and that the chunks add the jugglers in the same order
+ * as one thread does. Where the old loadFile threw a NumberFormatException on a value that
+ * isn't a number, the parser reports the line like any other it can't load. Fields are split
+ * on spaces only, as they were, so a tab stays in its field.
+ */
+class FestivalParserTest {
+	private static final String CIRCUITS = "C C0 H:1 E:2 P:3\nC C1 H:4 E:5 P:6\n";
+	private static final String NEWLINE = System.lineSeparator();
+
+	//each input, and the message the old loadFile printed for it.
+	private static final String[][] MALFORMED = {
+		{ "C C0 H:1 E:2\n", "Error loading circuit on line 1" },
+		{ CIRCUITS + "C H:1 E:2 P:3\n", "Error loading circuit on line 3" },
+		{ "C C0\tH:1 E:2 P:3\n", "Error loading circuit on line 1" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3\n", "Error loading juggler on line 3" },
+		{ CIRCUITS + "J J0 H:1 E:2 C0,C1\n", "Error loading juggler on line 3" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3 C0,C9\n", "Invalid circuit preference C9" + NEWLINE + "Error loading juggler on line 3" },
+		{ CIRCUITS + "\n\nj j0 h:1 e:2 p:3 c0,c1\nJ J1 H:1 E:2 P:3 C0,,C1\n",
+				"Invalid circuit preference " + NEWLINE + "Error loading juggler on line 6" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3 C0,C1\r\nJ J1 H:1 E:2 P:3 C1,C0\r\nJ J2 H:1 E:2 P:3 C0,C2\r\n",
+				"Invalid circuit preference C2" + NEWLINE + "Error loading juggler on line 5" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3 C0,C1\nX oops\n", "Unexpected first character X found on line 4" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3 C0,C1\nJ J1 E:2 P:3 H:1 C1\n# comment\n", "Unexpected first character # found on line 5" },
+		//values that aren't numbers, which the old loadFile threw on.
+		{ CIRCUITS + "C C2 H:x E:2 P:3\n", "Error loading circuit on line 3" },
+		{ CIRCUITS + "C C2 H: E:2 P:3\n", "Error loading circuit on line 3" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3 C0,C1\n\nJ J1 H:1.5.2 E:2 P:3 C0\n", "Error loading juggler on line 5" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3 C0\nJ J1 H:1 E:2 P:NaN C0\n", "Error loading juggler on line 4" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3 C0\nJ J1 H:1 E:2 P:0x10 C0\n", "Error loading juggler on line 4" },
+		{ CIRCUITS + "J J0 H:1 E:2 P:3 C0,C1 extra\n", "Error loading juggler on line 3" },
+	};
+
+	@Test
+	void reportsMalformedLinesLikeLoadFile(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("malformed.txt");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (String[] input : MALFORMED) {
+				FestivalParser parser = new FestivalParser(new Festival());
+				assertFalse(parser.parse(ByteBuffer.wrap(input[0].getBytes(StandardCharsets.US_ASCII))), input[0]);
+				assertEquals(input[1], parser.getError(), input[0]);
+				Files.write(file, input[0].getBytes(StandardCharsets.US_ASCII));
+				parser = new FestivalParser(new Festival());
+				assertFalse(parser.parseFile(file), input[0]);
+				assertEquals(input[1], parser.getError(), input[0]);
+				parser = new FestivalParser(new Festival());
+				assertFalse(parser.parseFile(file, pool), input[0]);
+				assertEquals(input[1], parser.getError(), input[0]);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void reportsLineNumberPastTheFirstChunk(@TempDir Path directory) throws IOException {
+		StringBuilder input = new StringBuilder();
+		int lines = writeFestival(new Random(3), input, 150000);
+		input.append("J J999999 H:1 E:2 P:3 C0,C77777\n");
+		Path file = directory.resolve("late-error.txt");
+		Files.write(file, input.toString().getBytes(StandardCharsets.US_ASCII));
+		String expected = "Invalid circuit preference C77777" + NEWLINE + "Error loading juggler on line " + (lines + 1);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			FestivalParser parser = new FestivalParser(new Festival());
+			assertFalse(parser.parseFile(file, pool));
+			assertEquals(expected, parser.getError());
+		} finally {
+			pool.shutdown();
+		}
+		FestivalParser parser = new FestivalParser(new Festival());
+		assertFalse(parser.parseFile(file));
+		assertEquals(expected, parser.getError());
+	}
+
+	@Test
+	void parallelChunksKeepJugglerOrder(@TempDir Path directory) throws IOException {
+		StringBuilder input = new StringBuilder();
+		writeFestival(new Random(7), input, 150000);
+		Path file = directory.resolve("festival.txt");
+		Files.write(file, input.toString().getBytes(StandardCharsets.US_ASCII));
+		assertTrue(Files.size(file) > 4 << 20, "the jugglers should make several chunks");
+
+		Festival sequential = new Festival();
+		assertTrue(new FestivalParser(sequential).parseFile(file));
+		Festival parallel = new Festival();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertTrue(new FestivalParser(parallel).parseFile(file, pool));
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(sequential.getCircuitCount(), parallel.getCircuitCount());
+		assertEquals(sequential.getJugglerCount(), parallel.getJugglerCount());
+		for (int j = 0; j < sequential.getJugglerCount(); j++) {
+			assertEquals(sequential.getJugglerName(j), parallel.getJugglerName(j), "juggler " + j);
+			assertEquals(sequential.getHandEyeCoord(j), parallel.getHandEyeCoord(j), "juggler " + j);
+			assertEquals(sequential.getEndurance(j), parallel.getEndurance(j), "juggler " + j);
+			assertEquals(sequential.getPizzazz(j), parallel.getPizzazz(j), "juggler " + j);
+			assertArrayEquals(preferences(sequential, j), preferences(parallel, j), "juggler " + j);
+		}
+	}
+
+	@Test
+	void tabIsPartOfAField() {
+		Festival festival = new Festival();
+		String input = CIRCUITS + "J\tJ1 H:1 E:2 P:3 C0\nJ J2 H:1 E:2 P:3 C1\t\n";
+		assertTrue(new FestivalParser(festival).parse(ByteBuffer.wrap(input.getBytes(StandardCharsets.US_ASCII))));
+		assertEquals("J\tJ1", festival.getJugglerName(0));
+		assertEquals("J2", festival.getJugglerName(1));
+		assertArrayEquals(new int[] { 1 }, preferences(festival, 1));
+	}
+
+	//twenty circuits, then jugglers, with a circuit part way down that the jugglers after it
+	//can list. Some names and values are written in ways that have to be made into Strings or
+	//parsed the slow way. Returns the number of lines.
+	private static int writeFestival(Random random, StringBuilder input, int jugglerCount) {
+		int lines = 0;
+		for (int c = 0; c < 20; c++, lines++)
+			input.append("C C").append(c).append(" H:").append(random.nextInt(10)).append(" E:")
+					.append(random.nextInt(10)).append(" P:").append(random.nextInt(10)).append('\n');
+		int circuits = 20;
+		for (int j = 0; j < jugglerCount; j++, lines++) {
+			if (j == jugglerCount / 2) {
+				input.append("C C20 H:3 E:3 P:3\n");
+				circuits = 21;
+				lines++;
+			}
+			String name = j % 97 == 0 ? "J0" + j : "J" + j;
+			input.append(j % 13 == 0 ? "j " + name.toLowerCase() : "J " + name);
+			input.append(" H:").append(random.nextInt(10));
+			input.append(" E:").append(j % 5 == 0 ? String.valueOf(random.nextFloat() * 10) : String.valueOf(random.nextInt(10)));
+			input.append(" P:").append(random.nextInt(10)).append(' ');
+			int count = 1 + random.nextInt(4);
+			for (int k = 0; k < count; k++)
+				input.append(k == 0 ? "C" : ",C").append(random.nextInt(circuits));
+			input.append('\n');
+		}
+		return lines;
+	}
+
+	private static int[] preferences(Festival festival, int j) {
+		int start = festival.getPreferenceStart(j);
+		int[] circuits = new int[festival.getPreferenceEnd(j) - start];
+		for (int i = 0; i < circuits.length; i++)
+			circuits[i] = festival.getPreferenceCircuit(start + i);
+		return circuits;
+	}
+}
@@ -0,0 +1,94 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Class FestivalPipelineTest
+ * @author Shalini Israni
+ * Checks that loadAndMakeAssignments, which pairs the jugglers by ranking while a
+ * FestivalPipeline is still parsing them, writes the same assignments as loadFile followed by
+ * makeAssignments, and leaves the same jugglers remaining in the same order. The festivals have
+ * random float skills, and the big one is several of the pipeline's chunks long, with circuits
+ * filling up and bumping jugglers before the last chunk is handed over.
+ */
+class FestivalPipelineTest {
+
+	@Test
+	void smallFestivalsMatchTwoPhases(@TempDir Path directory) throws IOException {
+		for (int seed = 0; seed < 4; seed++)
+			assertMatchesTwoPhases(directory.resolve("small" + seed + ".txt"), new Random(seed), 12, 1000);
+	}
+
+	@Test
+	void chunkedFestivalMatchesTwoPhases(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("big.txt");
+		assertMatchesTwoPhases(file, new Random(11), 40, 150000);
+		assertTrue(Files.size(file) > 4 << 20, "the jugglers should make several chunks");
+	}
+
+	//writes the festival to file, and solves it both ways.
+	private static void assertMatchesTwoPhases(Path file, Random random, int circuitCount, int jugglerCount)
+			throws IOException {
+		Files.write(file, festival(random, circuitCount, jugglerCount).getBytes(StandardCharsets.US_ASCII));
+		assertTrue(new FestivalPipeline(new Festival(), file, FestivalPipeline.DEFAULT_QUEUE_LENGTH).scan(),
+				"the file should be loaded by the pipeline");
+
+		JuggleFest twoPhases = new JuggleFest();
+		assertTrue(twoPhases.loadFile(file.toString()));
+		twoPhases.makeAssignments();
+		JuggleFest pipelined = new JuggleFest();
+		assertTrue(pipelined.loadAndMakeAssignments(file.toString()));
+
+		assertArrayEquals(output(twoPhases), output(pipelined), file.getFileName().toString());
+		assertEquals(names(twoPhases.getRemainingJugglers()), names(pipelined.getRemainingJugglers()),
+				file.getFileName() + ", remaining");
+	}
+
+	private static byte[] output(JuggleFest juggleFest) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		juggleFest.outputAssignments(out, 1);
+		return out.toByteArray();
+	}
+
+	private static List<String> names(List<Juggler> jugglers) {
+		List<String> names = new ArrayList<String>();
+		for (Juggler juggler : jugglers)
+			names.add(juggler.getName());
+		return names;
+	}
+
+	//the circuits, then the jugglers, each listing one to four circuits, with float skills.
+	//Every juggler's first is in the first quarter of the circuits, so those fill up early and
+	//jugglers are bumped while later chunks are still being parsed.
+	private static String festival(Random random, int circuitCount, int jugglerCount) {
+		StringBuilder input = new StringBuilder();
+		for (int c = 0; c < circuitCount; c++)
+			input.append("C C").append(c).append(skills(random)).append('\n');
+		for (int j = 0; j < jugglerCount; j++) {
+			input.append("J J").append(j).append(skills(random)).append(' ');
+			int count = 1 + random.nextInt(4);
+			for (int k = 0; k < count; k++)
+				input.append(k == 0 ? "C" : ",C").append(random.nextInt(k == 0 ? circuitCount / 4 : circuitCount));
+			input.append('\n');
+		}
+		return input.toString();
+	}
+
+	private static String skills(Random random) {
+		return " H:" + random.nextFloat() * 10 + " E:" + random.nextFloat() * 10 + " P:" + random.nextFloat() * 10;
+	}
+}
@@ -0,0 +1,143 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Class FestivalSnapshotTest
+ * @author Shalini Israni
+ * Checks that a FestivalSnapshot loads back, with read and with map, as the festival it was
+ * written from, names that are not a letter and a number included and withdrawn jugglers left
+ * out; and that a snapshot that was cut short, had bytes added, is of another version or had a
+ * byte changed is turned down with an IOException, never with an unchecked exception or as a
+ * festival.
+ */
+class FestivalSnapshotTest {
+
+	@Test
+	void loadsBackWhatWasWritten(@TempDir Path directory) throws IOException {
+		Festival festival = festival(new Random(1));
+		Path file = directory.resolve("festival.snap");
+		FestivalSnapshot.write(festival, file);
+		assertTrue(FestivalSnapshot.isSnapshot(file));
+		assertSame(festival, FestivalSnapshot.read(file));
+		assertSame(festival, FestivalSnapshot.map(file));
+	}
+
+	@Test
+	void turnsDownDamagedSnapshots(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("festival.snap");
+		FestivalSnapshot.write(festival(new Random(2)), file);
+		byte[] bytes = Files.readAllBytes(file);
+		Path damaged = directory.resolve("damaged.snap");
+		for (int length = 0; length < bytes.length; length++) {
+			Files.write(damaged, Arrays.copyOf(bytes, length));
+			assertTurnedDown(damaged, "cut to " + length + " bytes");
+		}
+		for (int extra = 1; extra <= 8; extra++) {
+			Files.write(damaged, Arrays.copyOf(bytes, bytes.length + extra));
+			assertTurnedDown(damaged, extra + " bytes added");
+		}
+		for (int version : new int[] { 0, 1, FestivalSnapshot.VERSION + 1, -1 }) {
+			byte[] other = bytes.clone();
+			ByteBuffer.wrap(other).order(ByteOrder.LITTLE_ENDIAN).putInt(FestivalSnapshot.MAGIC.length, version);
+			Files.write(damaged, other);
+			String message = assertTurnedDown(damaged, "version " + version);
+			assertTrue(message.contains("version " + version), message);
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			byte[] flipped = bytes.clone();
+			flipped[i] ^= 1 << (i % 8);
+			Files.write(damaged, flipped);
+			assertTurnedDown(damaged, "byte " + i + " changed");
+		}
+	}
+
+	//read and map both throw an IOException for the file; returns read's message.
+	private static String assertTurnedDown(Path file, String what) {
+		String message = null;
+		try {
+			FestivalSnapshot.read(file);
+			fail("read loaded a snapshot with " + what);
+		} catch (IOException ioException) {
+			message = ioException.getMessage();
+		} catch (RuntimeException runtimeException) {
+			fail("read threw " + runtimeException + " on a snapshot with " + what);
+		}
+		try {
+			FestivalSnapshot.map(file);
+			fail("map loaded a snapshot with " + what);
+		} catch (IOException ioException) {
+			//as it should.
+		} catch (RuntimeException runtimeException) {
+			fail("map threw " + runtimeException + " on a snapshot with " + what);
+		}
+		return message;
+	}
+
+	//the loaded festival has the circuits of the written one, and its jugglers but the
+	//withdrawn ones, in the same order.
+	private static void assertSame(Festival written, Festival loaded) {
+		CircuitCatalog circuits = written.getCircuits(), loadedCircuits = loaded.getCircuits();
+		assertEquals(circuits.size(), loadedCircuits.size());
+		for (int c = 0; c < circuits.size(); c++) {
+			assertEquals(circuits.getName(c), loadedCircuits.getName(c));
+			assertEquals(circuits.getHandEyeCoord(c), loadedCircuits.getHandEyeCoord(c));
+			assertEquals(circuits.getEndurance(c), loadedCircuits.getEndurance(c));
+			assertEquals(circuits.getPizzazz(c), loadedCircuits.getPizzazz(c));
+		}
+		assertEquals(written.getActiveJugglerCount(), loaded.getJugglerCount());
+		int k = 0;
+		for (int j = 0; j < written.getJugglerCount(); j++) {
+			if (written.isWithdrawn(j))
+				continue;
+			assertFalse(loaded.isWithdrawn(k));
+			assertEquals(written.getJugglerName(j), loaded.getJugglerName(k));
+			assertEquals(k, loaded.indexOfJuggler(written.getJugglerName(j)));
+			assertEquals(written.getHandEyeCoord(j), loaded.getHandEyeCoord(k));
+			assertEquals(written.getEndurance(j), loaded.getEndurance(k));
+			assertEquals(written.getPizzazz(j), loaded.getPizzazz(k));
+			int start = written.getPreferenceStart(j), count = written.getPreferenceEnd(j) - start;
+			int loadedStart = loaded.getPreferenceStart(k);
+			assertEquals(count, loaded.getPreferenceEnd(k) - loadedStart, "juggler " + j);
+			for (int i = 0; i < count; i++) {
+				assertEquals(written.getPreferenceCircuit(start + i), loaded.getPreferenceCircuit(loadedStart + i));
+				assertEquals(written.getPreferenceScore(start + i), loaded.getPreferenceScore(loadedStart + i));
+			}
+			k++;
+		}
+	}
+
+	//circuits and jugglers, some with names that are not a letter and a number, and some
+	//jugglers withdrawn.
+	private static Festival festival(Random random) {
+		Festival festival = new Festival();
+		String[] circuitNames = { "C0", "C1", "C007", "C2", "CX", "C3" };
+		for (String name : circuitNames)
+			festival.getCircuits().add(name, random.nextInt(10), random.nextFloat() * 10, random.nextInt(10));
+		int[] preferences = new int[3];
+		for (int i = 0; i < 40; i++) {
+			String name = i % 7 == 3 ? "J0" + i : i % 11 == 5 ? "JUGGLER" + i : "J" + i;
+			for (int k = 0; k < preferences.length; k++)
+				preferences[k] = random.nextInt(circuitNames.length);
+			festival.addJuggler(name, random.nextInt(10), random.nextFloat() * 10, random.nextInt(10), preferences,
+					1 + random.nextInt(preferences.length));
+		}
+		for (int j : new int[] { 0, 3, 17, 39 })
+			festival.withdrawJuggler(j);
+		return festival;
+	}
+}
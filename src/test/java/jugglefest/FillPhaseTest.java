@@ -0,0 +1,231 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Class FillPhaseTest
+ * @author Shalini Israni
+ * Checks that the fill phase picks the same jugglers as the linear scan it replaced, which
+ * took the circuits in fill order and gave each the juggler with the highest match value on
+ * the remaining list, the first of them on a tie. The skills are small whole numbers, so
+ * most match values are shared by several jugglers and the ties decide the result.
+ * Also checks that a fill saved part way through in a SolverCheckpoint carries on to the same
+ * result.
+ */
+class FillPhaseTest {
+
+	@Test
+	void fillMatchesLinearScan() {
+		for (int seed = 0; seed < 20; seed++) {
+			Random random = new Random(seed);
+			Festival festival = tiedFestival(random, 40, 600);
+			int circuitCount = festival.getCircuitCount();
+			int[] capacities = new int[circuitCount];
+			for (int c = 0; c < circuitCount; c++)
+				capacities[c] = random.nextInt(8);
+			Matching matching = new Matching(festival, capacities);
+			matching.getUnassigned().clear();
+			CircuitRosters rosters = matching.getRosters();
+			//some jugglers already have a circuit, as after the pairing by ranking.
+			List<Integer> list = new ArrayList<Integer>();
+			for (int j = 0; j < festival.getJugglerCount(); j++) {
+				int c = random.nextInt(circuitCount);
+				if (random.nextInt(4) == 0 && !rosters.isFull(c)) {
+					rosters.add(c, j, festival.calculateMatch(j, c));
+					matching.setAssignedCircuit(j, c);
+				}
+				list.add(j);
+			}
+			//the remaining list in no particular order, with some jugglers twice.
+			Collections.shuffle(list, random);
+			for (int i = 0; i < 30; i++)
+				list.add(random.nextInt(list.size()), list.get(random.nextInt(list.size())));
+			for (int j : list)
+				matching.getRemaining().add(j);
+
+			int[] expected = scanFill(festival, matching, list);
+			new FillPhase(matching).fill();
+			for (int j = 0; j < festival.getJugglerCount(); j++)
+				assertEquals(expected[j], matching.getAssignedCircuit(j), "seed " + seed + ", juggler " + j);
+			List<Integer> left = new ArrayList<Integer>();
+			for (int j : list) {
+				if (expected[j] < 0 && !left.contains(j))
+					left.add(j);
+			}
+			assertArrayEquals(left.stream().mapToInt(Integer::intValue).toArray(), matching.getRemaining().toArray(),
+					"seed " + seed);
+		}
+	}
+
+	@Test
+	void resumesFromCheckpoint(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("fill.ckpt");
+		for (int seed = 0; seed < 10; seed++) {
+			Random random = new Random(seed);
+			Festival festival = tiedFestival(random, 40, 400);
+			int[] capacities = new int[festival.getCircuitCount()];
+			Arrays.fill(capacities, 10);
+			Matching matching = new Matching(festival, capacities);
+			matching.getUnassigned().clear();
+			for (int j = 0; j < festival.getJugglerCount(); j++)
+				matching.getRemaining().add(random.nextInt(festival.getJugglerCount()));
+			long fingerprint = SolverCheckpoint.fingerprint(festival);
+			Matching whole = matching.copy();
+			FillPhase wholeFill = new FillPhase(whole);
+			wholeFill.fill();
+			//saved after a few circuits, and again near the end.
+			for (int stop : new int[] { 3, 30 }) {
+				Matching run = matching.copy();
+				int[] filled = new int[1];
+				new FillPhase(run).fill(c -> {
+					if (++filled[0] == stop) {
+						try {
+							SolverCheckpoint.write(run.copy(), fingerprint, file);
+						} catch (IOException ioException) {
+							throw new UncheckedIOException(ioException);
+						}
+					}
+				}, null);
+				Matching resumed = SolverCheckpoint.read(festival, file);
+				FillPhase resumedFill = new FillPhase(resumed);
+				resumedFill.fill();
+				//the same assignment, and the same pool, for repairs to keep up to date.
+				for (int j = 0; j < festival.getJugglerCount(); j++) {
+					assertEquals(whole.getAssignedCircuit(j), resumed.getAssignedCircuit(j), "seed " + seed + ", juggler " + j);
+					assertEquals(wholeFill.contains(j), resumedFill.contains(j), "seed " + seed + ", juggler " + j);
+				}
+				for (int c = 0; c < festival.getCircuitCount(); c++)
+					assertEquals(wholeFill.getCount(c), resumedFill.getCount(c), "seed " + seed + ", circuit " + c);
+				assertArrayEquals(whole.getRemaining().toArray(), resumed.getRemaining().toArray(), "seed " + seed);
+			}
+		}
+	}
+
+	@Test
+	void searchMatchesLinearScan() {
+		Random random = new Random(5);
+		Festival festival = tiedFestival(random, 30, 400);
+		//jugglers in the index by rank, with their tags.
+		List<Integer> jugglers = new ArrayList<Integer>();
+		List<Integer> tags = new ArrayList<Integer>();
+		List<Integer> outside = new ArrayList<Integer>();
+		for (int j = 0; j < festival.getJugglerCount(); j++)
+			(j % 3 == 0 ? outside : jugglers).add(j);
+		Collections.shuffle(jugglers, random);
+		SkillIndex index = new SkillIndex(festival, jugglers.stream().mapToInt(Integer::intValue).toArray());
+		for (int i = 0; i < jugglers.size(); i++)
+			tags.add(SkillIndex.UNTAKEN);
+		for (int step = 0; step < 2000; step++) {
+			int operation = random.nextInt(4);
+			if (operation == 0 && !outside.isEmpty()) {
+				int j = outside.remove(random.nextInt(outside.size()));
+				int tag = random.nextBoolean() ? SkillIndex.UNTAKEN : random.nextInt(30);
+				index.add(j, tag);
+				jugglers.add(j);
+				tags.add(tag);
+			} else if (operation == 1 && !jugglers.isEmpty()) {
+				int i = random.nextInt(jugglers.size());
+				index.remove(jugglers.get(i));
+				outside.add(jugglers.remove(i));
+				tags.remove(i);
+			} else if (operation == 2 && !jugglers.isEmpty()) {
+				int i = random.nextInt(jugglers.size());
+				int tag = random.nextBoolean() ? SkillIndex.UNTAKEN : random.nextInt(30);
+				index.setTag(jugglers.get(i), tag);
+				tags.set(i, tag);
+			}
+			int c = random.nextInt(festival.getCircuitCount());
+			int after = random.nextInt(31) - 1;
+			int best = -1;
+			float bestScore = Float.NEGATIVE_INFINITY;
+			for (int i = 0; i < jugglers.size(); i++) {
+				float score = festival.calculateMatch(jugglers.get(i), c);
+				if (tags.get(i) > after && score > bestScore) {
+					best = jugglers.get(i);
+					bestScore = score;
+				}
+			}
+			assertEquals(best, index.search(c, after), "step " + step);
+		}
+	}
+
+	@Test
+	void componentsFillAsOnOneThread() {
+		for (int seed = 0; seed < 5; seed++) {
+			Assignment one = new JuggleFest(regionalFestival(new Random(seed))).makeAssignments(1);
+			Assignment four = new JuggleFest(regionalFestival(new Random(seed))).makeAssignments(4);
+			for (int j = 0; j < one.getJugglerCount(); j++)
+				assertEquals(one.getCircuit(j), four.getCircuit(j), "seed " + seed + ", juggler " + j);
+		}
+	}
+
+	//the fill phase by scanning the list, as it was first written. Returns the circuit of every
+	//juggler afterwards.
+	private static int[] scanFill(Festival festival, Matching matching, List<Integer> list) {
+		CircuitRosters rosters = matching.getRosters();
+		int[] circuits = new int[festival.getJugglerCount()];
+		int[] sizes = new int[festival.getCircuitCount()];
+		for (int j = 0; j < circuits.length; j++)
+			circuits[j] = matching.getAssignedCircuit(j);
+		for (int c = 0; c < sizes.length; c++)
+			sizes[c] = rosters.size(c);
+		List<Integer> remaining = new ArrayList<Integer>();
+		for (int j : list) {
+			if (circuits[j] < 0 && !remaining.contains(j))
+				remaining.add(j);
+		}
+		for (int c : FillPhase.fillOrder(festival.getCircuits())) {
+			while (sizes[c] < rosters.capacity(c) && !remaining.isEmpty()) {
+				int best = 0;
+				for (int i = 1; i < remaining.size(); i++) {
+					if (festival.calculateMatch(remaining.get(i), c) > festival.calculateMatch(remaining.get(best), c))
+						best = i;
+				}
+				circuits[remaining.remove(best)] = c;
+				sizes[c]++;
+			}
+		}
+		return circuits;
+	}
+
+	//circuits and jugglers with skills of 0 to 2, and no preferences.
+	private static Festival tiedFestival(Random random, int circuitCount, int jugglerCount) {
+		Festival festival = new Festival();
+		for (int i = 0; i < circuitCount; i++)
+			festival.getCircuits().add(i, random.nextInt(3), random.nextInt(3), random.nextInt(3));
+		for (int i = 0; i < jugglerCount; i++)
+			festival.addJuggler(i, random.nextInt(3), random.nextInt(3), random.nextInt(3), new int[0], 0);
+		return festival;
+	}
+
+	//ten regions of circuits, whose jugglers each list one or two circuits of their own region,
+	//so that many are left for the fill phase.
+	private static Festival regionalFestival(Random random) {
+		Festival festival = new Festival();
+		int regions = 10, circuitsPerRegion = 6;
+		for (int i = 0; i < regions * circuitsPerRegion; i++)
+			festival.getCircuits().add(i, random.nextInt(3), random.nextInt(3), random.nextInt(3));
+		int[] preferences = new int[2];
+		for (int i = 0; i < 600; i++) {
+			int region = random.nextInt(regions);
+			int count = 1 + random.nextInt(2);
+			for (int k = 0; k < count; k++)
+				preferences[k] = region * circuitsPerRegion + random.nextInt(circuitsPerRegion);
+			festival.addJuggler(i, random.nextInt(3), random.nextInt(3), random.nextInt(3), preferences, count);
+		}
+		return festival;
+	}
+}
@@ -0,0 +1,138 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class MatchingRepairTest
+ * @author Shalini Israni
+ * Checks that assignments brought up to date by a MatchingRepair, after jugglers and circuits
+ * are added, withdrawn and changed, come out the same as making them again from the start on
+ * the changed festival, with the same capacities. The skills are random floats, so no circuit
+ * has two jugglers with the same match value to choose from.
+ */
+class MatchingRepairTest {
+
+	@Test
+	void repairsMatchRerun() {
+		for (int seed = 0; seed < 20; seed++) {
+			Random random = new Random(seed);
+			Festival festival = new Festival();
+			int circuitCount = 8 + random.nextInt(8);
+			for (int i = 0; i < circuitCount; i++)
+				festival.getCircuits().add(i, skill(random), skill(random), skill(random));
+			List<String> jugglers = new ArrayList<String>();
+			int jugglerCount = 10 * circuitCount + random.nextInt(20);
+			for (int i = 0; i < jugglerCount; i++) {
+				int[] preferences = preferences(random, circuitCount);
+				festival.addJuggler(i, skill(random), skill(random), skill(random), preferences, preferences.length);
+				jugglers.add("J" + i);
+			}
+			JuggleFest juggleFest = new JuggleFest(festival);
+			juggleFest.makeAssignments(1);
+			int nextJuggler = jugglerCount, nextCircuit = circuitCount;
+			for (int step = 0; step < 60; step++) {
+				int circuits = festival.getCircuitCount();
+				int operation = random.nextInt(5);
+				String what;
+				if (operation == 0 || jugglers.isEmpty()) {
+					String name = "J" + nextJuggler++;
+					assertTrue(juggleFest.addJuggler(name, skill(random), skill(random), skill(random),
+							names(preferences(random, circuits))));
+					jugglers.add(name);
+					what = "add " + name;
+				} else if (operation == 1) {
+					String name = jugglers.remove(random.nextInt(jugglers.size()));
+					assertTrue(juggleFest.removeJuggler(name));
+					what = "remove " + name;
+				} else if (operation == 2) {
+					String name = jugglers.get(random.nextInt(jugglers.size()));
+					assertTrue(juggleFest.updatePreferences(name, names(preferences(random, circuits))));
+					what = "update " + name;
+				} else if (operation == 3) {
+					String name = "C" + nextCircuit++;
+					assertTrue(juggleFest.addCircuit(name, skill(random), skill(random), skill(random), random.nextInt(12)));
+					what = "add " + name;
+				} else {
+					String name = "C" + random.nextInt(circuits);
+					assertTrue(juggleFest.changeCapacity(name, random.nextInt(16)));
+					what = "capacity of " + name;
+				}
+				assertSameAsRerun(juggleFest, "seed " + seed + ", step " + step + " (" + what + ")");
+			}
+		}
+	}
+
+	//makes the assignments again on the festival juggleFest has, and compares the two.
+	private static void assertSameAsRerun(JuggleFest juggleFest, String message) {
+		Assignment repaired = juggleFest.getAssignment();
+		int[] capacities = new int[repaired.getCircuitCount()];
+		for (int c = 0; c < capacities.length; c++)
+			capacities[c] = repaired.getCapacity(c);
+		JuggleFest rerun = new JuggleFest(repaired.getFestival());
+		Assignment expected = rerun.makeAssignments(1, capacities);
+		for (int c = 0; c < capacities.length; c++)
+			assertEquals(roster(expected, c), roster(repaired, c), message + ", circuit " + c);
+		assertEquals(names(rerun.getRemainingJugglers()), names(juggleFest.getRemainingJugglers()), message + ", remaining");
+	}
+
+	//the jugglers on circuit c, by index. The order they joined in depends on how the
+	//assignments got there, so it is not compared.
+	private static List<Integer> roster(Assignment assignment, int c) {
+		List<Integer> roster = new ArrayList<Integer>();
+		for (int i = 0; i < assignment.getRosterSize(c); i++)
+			roster.add(assignment.getJuggler(c, i));
+		Collections.sort(roster);
+		return roster;
+	}
+
+	//the names of the jugglers, sorted. A full run lists the remaining jugglers in the order
+	//they ran out of circuits, and a repair in the order of the fill phase's pool.
+	private static List<String> names(List<Juggler> jugglers) {
+		List<String> names = new ArrayList<String>();
+		for (Juggler juggler : jugglers)
+			names.add(juggler.getName());
+		Collections.sort(names);
+		return names;
+	}
+
+	private static String[] names(int[] circuits) {
+		String[] names = new String[circuits.length];
+		for (int i = 0; i < circuits.length; i++)
+			names[i] = "C" + circuits[i];
+		return names;
+	}
+
+	//one to four circuits, none twice.
+	private static int[] preferences(Random random, int circuitCount) {
+		int count = 1 + random.nextInt(Math.min(4, circuitCount));
+		int[] preferences = new int[count];
+		for (int k = 0; k < count; k++) {
+			int c;
+			do {
+				c = random.nextInt(circuitCount);
+			} while (contains(preferences, k, c));
+			preferences[k] = c;
+		}
+		return preferences;
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value)
+				return true;
+		}
+		return false;
+	}
+
+	private static float skill(Random random) {
+		return random.nextFloat() * 10;
+	}
+}
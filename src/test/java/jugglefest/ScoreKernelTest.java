@@ -0,0 +1,108 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class ScoreKernelTest
+ * @author Shalini Israni
+ * Checks that the scalar ScoreKernel gives every match value bit for bit the same as
+ * Festival.calculateMatch. VectorScoreKernelTest runs the same checks on the vector kernel.
+ * Runs of every length up to a few vectors are scored, from different starting points, so that
+ * runs that don't fill the last vector are covered. Besides random skills, there are skills of
+ * 0, negative zero, the smallest and largest floats, and infinity.
+ */
+class ScoreKernelTest {
+	//longer than two vectors of the widest species, 512 bits, and then some.
+	private static final int MAX_LENGTH = 2 * 16 + 7;
+	private static final int COUNT = MAX_LENGTH + 5;
+	private static final float[] EDGE_SKILLS = { 0f, -0f, 1f, Float.MIN_VALUE, Float.MIN_NORMAL,
+			Float.MAX_VALUE, -Float.MAX_VALUE, Float.POSITIVE_INFINITY, 1e19f, 10f };
+
+	@Test
+	void scalarKernelMatchesCalculateMatch() {
+		check(new ScoreKernel(), randomFestival(new Random(11)));
+		check(new ScoreKernel(), edgeFestival());
+		check(new ScoreKernel(), zeroFestival());
+	}
+
+	//scores every run of jugglers against every circuit, and every run of circuits for every
+	//juggler, with the kernel, and compares each value with calculateMatch.
+	static void check(ScoreKernel kernel, Festival festival) {
+		CircuitCatalog circuits = festival.getCircuits();
+		int jugglerCount = festival.getJugglerCount();
+		float[] handEyeCoord = new float[jugglerCount];
+		float[] endurance = new float[jugglerCount];
+		float[] pizzazz = new float[jugglerCount];
+		for (int j = 0; j < jugglerCount; j++) {
+			handEyeCoord[j] = festival.getHandEyeCoord(j);
+			endurance[j] = festival.getEndurance(j);
+			pizzazz[j] = festival.getPizzazz(j);
+		}
+		int[] circuitList = new int[circuits.size()];
+		for (int i = 0; i < circuitList.length; i++)
+			circuitList[i] = circuitList.length - 1 - i;
+		float[] scores = new float[COUNT + 3];
+		for (int length = 0; length <= MAX_LENGTH; length++) {
+			for (int from = 0; from + length <= COUNT; from += 3) {
+				for (int c = 0; c < circuits.size(); c += 7) {
+					kernel.scoreJugglers(circuits.getHandEyeCoord(c), circuits.getEndurance(c), circuits.getPizzazz(c),
+							handEyeCoord, endurance, pizzazz, from, from + length, scores, 2);
+					for (int j = from; j < from + length; j++)
+						assertSame(festival.calculateMatch(j, c), scores[2 + j - from], kernel, j, c);
+				}
+				for (int j = 0; j < jugglerCount; j += 7) {
+					kernel.scoreCircuits(handEyeCoord[j], endurance[j], pizzazz[j], circuits.getHandEyeCoordColumn(),
+							circuits.getEnduranceColumn(), circuits.getPizzazzColumn(), circuitList, from, from + length,
+							scores, 1);
+					for (int i = from; i < from + length; i++)
+						assertSame(festival.calculateMatch(j, circuitList[i]), scores[1 + i - from], kernel, j, circuitList[i]);
+				}
+			}
+		}
+	}
+
+	private static void assertSame(float expected, float actual, ScoreKernel kernel, int j, int c) {
+		assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(actual),
+				() -> kernel.getName() + " kernel, juggler " + j + ", circuit " + c + ": " + actual + " instead of " + expected);
+	}
+
+	//skills from 0 to 10, some whole and some not, as in the input files.
+	static Festival randomFestival(Random random) {
+		Festival festival = new Festival();
+		for (int i = 0; i < COUNT; i++)
+			festival.getCircuits().add(i, skill(random), skill(random), skill(random));
+		for (int i = 0; i < COUNT; i++)
+			festival.addJuggler(i, skill(random), skill(random), skill(random), new int[0], 0);
+		return festival;
+	}
+
+	private static float skill(Random random) {
+		return random.nextBoolean() ? random.nextInt(11) : random.nextFloat() * 10;
+	}
+
+	//the edge skills, mixed so that there are zero products, products that overflow to
+	//infinity, infinity times zero, and infinities of both signs added together.
+	static Festival edgeFestival() {
+		Festival festival = new Festival();
+		int n = EDGE_SKILLS.length;
+		for (int i = 0; i < COUNT; i++) {
+			festival.getCircuits().add(i, EDGE_SKILLS[i % n], EDGE_SKILLS[(i / n) % n], EDGE_SKILLS[(i * 7 + 3) % n]);
+			festival.addJuggler(i, EDGE_SKILLS[(i * 3 + 1) % n], EDGE_SKILLS[(i * 5 + 2) % n], EDGE_SKILLS[(i / 2) % n],
+					new int[0], 0);
+		}
+		return festival;
+	}
+
+	static Festival zeroFestival() {
+		Festival festival = new Festival();
+		for (int i = 0; i < COUNT; i++) {
+			festival.getCircuits().add(i, 0f, 0f, 0f);
+			festival.addJuggler(i, 0f, 0f, 0f, new int[0], 0);
+		}
+		return festival;
+	}
+}
@@ -0,0 +1,77 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class StabilityVerifierTest
+ * @author Shalini Israni
+ * Checks that the StabilityVerifier finds nothing wrong with what the solver makes of the
+ * sample festivals, and that it catches an assignment made by hand with a blocking pair, and
+ * one with more jugglers on a circuit than it takes.
+ */
+class StabilityVerifierTest {
+
+	@Test
+	void acceptsSolverOutput() {
+		for (String file : new String[] { "tests/test1.txt", "tests/test2.txt", "tests/test3.txt" }) {
+			for (int threads : new int[] { 1, 4 }) {
+				JuggleFest juggleFest = new JuggleFest();
+				assertTrue(juggleFest.loadFile(file), file);
+				juggleFest.makeAssignments(threads);
+				StabilityVerifier verifier = juggleFest.verifyStability(threads);
+				assertEquals(0, verifier.getBlockingPairCount(), file);
+				assertEquals(0, verifier.getOverFilledCount(), file);
+			}
+		}
+	}
+
+	@Test
+	void rejectsBlockingPair() {
+		Festival festival = twoJugglers();
+		Matching matching = new Matching(festival, new int[] { 1, 1 });
+		//juggler 0 is a better match for circuit 0, and would rather be there, but juggler 1 has it.
+		place(festival, matching, 0, 1);
+		place(festival, matching, 1, 0);
+		StabilityVerifier verifier = new StabilityVerifier(new Assignment(matching), null);
+		assertEquals(1, verifier.verify());
+		assertEquals(1, verifier.getBlockingPairCount());
+		assertEquals(0, verifier.getBlockingJuggler(0));
+		assertEquals(0, verifier.getBlockingCircuit(0));
+		assertEquals(0, verifier.getOverFilledCount());
+	}
+
+	@Test
+	void rejectsOverFilledCircuit() {
+		Festival festival = twoJugglers();
+		Matching matching = new Matching(festival, new int[] { 2, 1 });
+		//both jugglers on the circuit they like best, which then takes only one.
+		place(festival, matching, 0, 0);
+		place(festival, matching, 1, 0);
+		matching.getRosters().setCapacity(0, 1);
+		StabilityVerifier verifier = new StabilityVerifier(new Assignment(matching), null);
+		assertEquals(1, verifier.verify());
+		assertEquals(0, verifier.getBlockingPairCount());
+		assertEquals(1, verifier.getOverFilledCount());
+		assertEquals(0, verifier.getOverFilledCircuit(0));
+	}
+
+	//puts juggler j on circuit c.
+	private static void place(Festival festival, Matching matching, int j, int c) {
+		matching.getRosters().add(c, j, festival.calculateMatch(j, c));
+		matching.setAssignedCircuit(j, c);
+	}
+
+	//two circuits and two jugglers, who both list circuit 0 first; juggler 0 is the better
+	//match for either.
+	private static Festival twoJugglers() {
+		Festival festival = new Festival();
+		festival.getCircuits().add(0, 1, 0, 0);
+		festival.getCircuits().add(1, 0, 1, 0);
+		festival.addJuggler(0, 5, 5, 0, new int[] { 0, 1 }, 2);
+		festival.addJuggler(1, 1, 1, 0, new int[] { 0, 1 }, 2);
+		return festival;
+	}
+}
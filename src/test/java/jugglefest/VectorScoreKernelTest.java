@@ -0,0 +1,31 @@
+package jugglefest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class VectorScoreKernelTest
+ * @author Shalini Israni
+ * The checks of ScoreKernelTest, on the VectorScoreKernel, and a check that ScoreKernel.get()
+ * picks it. Only the vector profile compiles and runs it, mvn -P vector test, since it needs
+ * the incubator module.
+ */
+class VectorScoreKernelTest {
+
+	@Test
+	void vectorKernelMatchesCalculateMatch() {
+		ScoreKernel kernel = new VectorScoreKernel();
+		ScoreKernelTest.check(kernel, ScoreKernelTest.randomFestival(new Random(11)));
+		ScoreKernelTest.check(kernel, ScoreKernelTest.randomFestival(new Random(12)));
+		ScoreKernelTest.check(kernel, ScoreKernelTest.edgeFestival());
+		ScoreKernelTest.check(kernel, ScoreKernelTest.zeroFestival());
+	}
+
+	@Test
+	void getPicksVectorKernel() {
+		assertEquals(VectorScoreKernel.class, ScoreKernel.get().getClass());
+	}
+}